@@ -27,11 +27,39 @@ dependencies {
 
     implementation(platform("software.amazon.awssdk:bom:2.21.1"))
 
+    // https://mvnrepository.com/artifact/software.amazon.awssdk/s3
+    implementation("software.amazon.awssdk:s3")
+
     // https://mvnrepository.com/artifact/com.amazonaws/aws-java-sdk-s3
     implementation("com.amazonaws:aws-java-sdk-s3:1.12.665")
 
+    // https://mvnrepository.com/artifact/org.junit.jupiter/junit-jupiter
+    testImplementation(platform("org.junit:junit-bom:5.10.0"))
+    testImplementation("org.junit.jupiter:junit-jupiter")
+    testRuntimeOnly("org.junit.platform:junit-platform-launcher")
+}
+
+// benchmark drivers and the fake S3 clients they run against, kept out of the jar
+val benchmark: SourceSet by sourceSets.creating {
+    compileClasspath += sourceSets.main.get().output
+    runtimeClasspath += sourceSets.main.get().output
 }
 
+configurations[benchmark.implementationConfigurationName].extendsFrom(configurations.implementation.get())
+configurations[benchmark.runtimeOnlyConfigurationName].extendsFrom(configurations.runtimeOnly.get())
+
 tasks.test {
     useJUnitPlatform()
+}
+
+tasks.check {
+    dependsOn(tasks.named(benchmark.classesTaskName))
+}
+
+// gradle benchmark -Pbenchmark=SpillBenchmark --args="512"
+tasks.register<JavaExec>("benchmark") {
+    group = "verification"
+    description = "Runs the benchmark driver given by -Pbenchmark"
+    classpath = benchmark.runtimeClasspath
+    mainClass.set(providers.gradleProperty("benchmark").map { "org.example.benchmark.$it" })
 }
\ No newline at end of file
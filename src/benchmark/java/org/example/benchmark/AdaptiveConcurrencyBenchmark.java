@@ -0,0 +1,88 @@
+package org.example.benchmark;
+
+import org.example.service.AdaptiveConcurrencyLimit;
+import org.example.service.AmazonS3Sink;
+import org.example.service.PartBufferPool;
+import org.example.service.S3MultipartOutputStream;
+import org.example.service.S3MultipartUpload;
+import org.example.service.S3MultipartUploadConfig;
+import org.example.service.UploadExecutionMode;
+import org.example.service.UploadScheduler;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+
+/**
+ * Uploads the same object with a fixed low concurrency, a fixed high concurrency and an adaptive one starting low
+ * then high, against a stand-in whose host bandwidth is shared by the requests in flight and which throttles
+ * past a number of requests in flight.
+ * <p>
+ * Usage: {@code AdaptiveConcurrencyBenchmark [sizeInMb] [latencyMillis] [connectionMbPerSecond]
+ * [hostMbPerSecond] [maxRequestsInFlight]}
+ */
+public class AdaptiveConcurrencyBenchmark {
+    private static final int MB = 1024 * 1024;
+    private static final int MAX_CONCURRENCY = 64;
+
+    public static void main(String... args) {
+        long size = (args.length > 0 ? Long.parseLong(args[0]) : 1024) * MB;
+        long latencyMillis = args.length > 1 ? Long.parseLong(args[1]) : 100;
+        long connectionBandwidth = (args.length > 2 ? Long.parseLong(args[2]) : 20) * MB;
+        long hostBandwidth = (args.length > 3 ? Long.parseLong(args[3]) : 200) * MB;
+        int maxRequestsInFlight = args.length > 4 ? Integer.parseInt(args[4]) : 32;
+
+        System.out.println(String.format("object: %d MB, latency: %d ms, connection: %d MB/s, host: %d MB/s, "
+                        + "throttled above %d requests", size / MB, latencyMillis, connectionBandwidth / MB,
+                hostBandwidth / MB, maxRequestsInFlight));
+
+        PartBufferPool partBufferPool = new PartBufferPool(5 * MB, 2 * MAX_CONCURRENCY + 2);
+        LocalS3StandIn s3Client = new LocalS3StandIn();
+        s3Client.setRequestLatencyMillis(latencyMillis);
+        s3Client.setConnectionBandwidth(connectionBandwidth);
+        s3Client.setHostBandwidth(hostBandwidth);
+        s3Client.setMaxRequestsInFlight(maxRequestsInFlight);
+
+        run("fixed, 4 requests", new UploadScheduler(4, UploadExecutionMode.PLATFORM_THREADS),
+                size, partBufferPool, s3Client);
+        run("fixed, " + MAX_CONCURRENCY + " requests",
+                new UploadScheduler(MAX_CONCURRENCY, UploadExecutionMode.PLATFORM_THREADS), size, partBufferPool, s3Client);
+        run("adaptive, from 4 requests", new UploadScheduler(new AdaptiveConcurrencyLimit(4, 1, MAX_CONCURRENCY),
+                UploadExecutionMode.PLATFORM_THREADS), size, partBufferPool, s3Client);
+        run("adaptive, from " + MAX_CONCURRENCY + " requests", new UploadScheduler(
+                new AdaptiveConcurrencyLimit(MAX_CONCURRENCY, 1, MAX_CONCURRENCY), UploadExecutionMode.PLATFORM_THREADS),
+                size, partBufferPool, s3Client);
+    }
+
+    private static void run(String name, UploadScheduler uploadScheduler, long size, PartBufferPool partBufferPool,
+                            LocalS3StandIn s3Client) {
+        S3MultipartUploadConfig config = new S3MultipartUploadConfig();
+        config.setUploadScheduler(uploadScheduler);
+        config.setPartBufferPool(partBufferPool);
+        config.setPartSize(5L * MB);
+        config.setAdaptivePartSize(false);
+        config.setMaxInFlightParts(MAX_CONCURRENCY);
+        S3MultipartUpload multipartUpload = new S3MultipartUpload("benchmark", name, new AmazonS3Sink(s3Client), config);
+
+        long bytesBefore = s3Client.getBytesReceived();
+        long throttledBefore = s3Client.getRequestsThrottled();
+        long start = System.nanoTime();
+        String outcome = "done";
+        try (OutputStream outputStream = new S3MultipartOutputStream(multipartUpload)) {
+            byte[] chunk = new byte[64 * 1024];
+            new Random(42).nextBytes(chunk);
+            for (long written = 0; written < size; written += chunk.length) {
+                outputStream.write(chunk, 0, (int) Math.min(chunk.length, size - written));
+            }
+        } catch (IOException | RuntimeException e) {
+            outcome = "failed: " + e;
+        }
+        long elapsedNanos = System.nanoTime() - start;
+        uploadScheduler.shutdown();
+
+        System.out.println(String.format("%-26s time: %6d ms  throughput: %6.1f MB/s  throttled: %4d  "
+                        + "final concurrency: %2d  %s", name, elapsedNanos / 1_000_000,
+                (s3Client.getBytesReceived() - bytesBefore) / (double) MB / (elapsedNanos / 1e9),
+                s3Client.getRequestsThrottled() - throttledBefore, uploadScheduler.getConcurrency(), outcome));
+    }
+}
@@ -0,0 +1,87 @@
+package org.example.benchmark;
+
+import org.example.service.AmazonS3Sink;
+import org.example.service.BandwidthLimiter;
+import org.example.service.PartBufferPool;
+import org.example.service.S3MultipartOutputStream;
+import org.example.service.S3MultipartUpload;
+import org.example.service.S3MultipartUploadConfig;
+import org.example.service.UploadExecutionMode;
+import org.example.service.UploadScheduler;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Measures the rate uploads actually reach with no limit, with a per upload limit, and with several uploads under
+ * a per upload limit and a lower shared one.
+ * <p>
+ * Usage: {@code BandwidthLimitBenchmark [sizeInMb] [perUploadMbPerSecond] [sharedMbPerSecond] [uploads]}
+ */
+public class BandwidthLimitBenchmark {
+    private static final int MB = 1024 * 1024;
+
+    public static void main(String... args) throws InterruptedException {
+        long size = (args.length > 0 ? Long.parseLong(args[0]) : 256) * MB;
+        long perUploadRate = (args.length > 1 ? Long.parseLong(args[1]) : 40) * MB;
+        long sharedRate = (args.length > 2 ? Long.parseLong(args[2]) : 60) * MB;
+        int uploads = args.length > 3 ? Integer.parseInt(args[3]) : 3;
+
+        LocalS3StandIn s3Client = new LocalS3StandIn();
+        s3Client.setRequestLatencyMillis(20);
+        UploadScheduler uploadScheduler = new UploadScheduler(16, UploadExecutionMode.PLATFORM_THREADS);
+        PartBufferPool partBufferPool = new PartBufferPool(5 * MB, 64);
+
+        run("unlimited", 1, size, 0, new BandwidthLimiter(0), s3Client, uploadScheduler, partBufferPool);
+        run(String.format("%d MB/s per upload", perUploadRate / MB), 1, size, perUploadRate, new BandwidthLimiter(0),
+                s3Client, uploadScheduler, partBufferPool);
+        run(String.format("%d x %d MB/s, %d MB/s shared", uploads, perUploadRate / MB, sharedRate / MB), uploads,
+                size, perUploadRate, new BandwidthLimiter(sharedRate), s3Client, uploadScheduler, partBufferPool);
+        uploadScheduler.shutdown();
+    }
+
+    private static void run(String name, int uploads, long size, long perUploadRate, BandwidthLimiter sharedLimiter,
+                            LocalS3StandIn s3Client, UploadScheduler uploadScheduler, PartBufferPool partBufferPool)
+            throws InterruptedException {
+        long bytesBefore = s3Client.getBytesReceived();
+        long start = System.nanoTime();
+        List<Thread> producers = new ArrayList<>();
+        for (int i = 0; i < uploads; i++) {
+            S3MultipartUploadConfig config = new S3MultipartUploadConfig();
+            config.setUploadScheduler(uploadScheduler);
+            config.setPartBufferPool(partBufferPool);
+            config.setPartSize(5L * MB);
+            config.setAdaptivePartSize(false);
+            config.setBandwidthLimiter(sharedLimiter);
+            config.setMaxBytesPerSecond(perUploadRate);
+            S3MultipartUpload multipartUpload = new S3MultipartUpload("benchmark", name + " " + i,
+                    new AmazonS3Sink(s3Client), config);
+            Thread producer = new Thread(() -> upload(multipartUpload, size));
+            producer.start();
+            producers.add(producer);
+        }
+        for (Thread producer : producers) {
+            producer.join();
+        }
+        long elapsedNanos = System.nanoTime() - start;
+
+        System.out.println(String.format("%-32s time: %6d ms  throughput: %7.1f MB/s", name, elapsedNanos / 1_000_000,
+                (s3Client.getBytesReceived() - bytesBefore) / (double) MB / (elapsedNanos / 1e9)));
+    }
+
+    private static void upload(S3MultipartUpload multipartUpload, long size) {
+        try (OutputStream outputStream = new S3MultipartOutputStream(multipartUpload)) {
+            byte[] chunk = new byte[64 * 1024];
+            new Random(42).nextBytes(chunk);
+            for (long written = 0; written < size; written += chunk.length) {
+                outputStream.write(chunk, 0, (int) Math.min(chunk.length, size - written));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
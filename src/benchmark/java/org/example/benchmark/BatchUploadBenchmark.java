@@ -0,0 +1,63 @@
+package org.example.benchmark;
+
+import org.example.service.AmazonS3Sink;
+import org.example.service.PartBufferPool;
+import org.example.service.ReportBatchUploader;
+import org.example.service.S3MultipartUploadConfig;
+import org.example.service.UploadExecutionMode;
+import org.example.service.UploadScheduler;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Uploads a batch of small reports with one generator thread, like the reports used to be written one after the
+ * other, then with several, against a stand-in simulating a per request latency.
+ * <p>
+ * Usage: {@code BatchUploadBenchmark [reports] [reportSizeInKb] [latencyMillis] [generatorThreads]}
+ */
+public class BatchUploadBenchmark {
+    private static final int MB = 1024 * 1024;
+
+    public static void main(String... args) {
+        int reportCount = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+        int reportSize = (args.length > 1 ? Integer.parseInt(args[1]) : 256) * 1024;
+        long latencyMillis = args.length > 2 ? Long.parseLong(args[2]) : 50;
+        int generatorThreads = args.length > 3 ? Integer.parseInt(args[3]) : 32;
+
+        System.out.println(String.format("reports: %d, report size: %d KB, latency: %d ms",
+                reportCount, reportSize / 1024, latencyMillis));
+
+        Map<String, byte[]> reports = new LinkedHashMap<>();
+        Random random = new Random(42);
+        for (int i = 0; i < reportCount; i++) {
+            byte[] report = new byte[reportSize];
+            random.nextBytes(report);
+            reports.put(String.format("report-%05d.xlsx", i), report);
+        }
+
+        run(1, reports, latencyMillis);
+        run(generatorThreads, reports, latencyMillis);
+    }
+
+    private static void run(int generatorThreads, Map<String, byte[]> reports, long latencyMillis) {
+        LocalS3StandIn s3Client = new LocalS3StandIn();
+        s3Client.setRequestLatencyMillis(latencyMillis);
+        UploadScheduler uploadScheduler = new UploadScheduler(64, UploadExecutionMode.PLATFORM_THREADS);
+        S3MultipartUploadConfig config = new S3MultipartUploadConfig();
+        config.setUploadScheduler(uploadScheduler);
+        config.setPartBufferPool(new PartBufferPool(5 * MB, 2 * generatorThreads + 2));
+        config.setPartSize(5L * MB);
+
+        ReportBatchUploader batchUploader = new ReportBatchUploader(new AmazonS3Sink(s3Client), "benchmark",
+                config, generatorThreads);
+        long start = System.nanoTime();
+        batchUploader.uploadAll(reports, (key, report, outputStream) -> outputStream.write(report));
+        long elapsedNanos = System.nanoTime() - start;
+        uploadScheduler.shutdown();
+
+        System.out.println(String.format("generator threads: %3d  time: %6d ms  reports/s: %7.1f",
+                generatorThreads, elapsedNanos / 1_000_000, reports.size() / (elapsedNanos / 1e9)));
+    }
+}
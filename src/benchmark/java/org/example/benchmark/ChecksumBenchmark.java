@@ -0,0 +1,96 @@
+package org.example.benchmark;
+
+import org.example.service.InMemorySink;
+import org.example.service.PartBufferPool;
+import org.example.service.PartChecksum;
+import org.example.service.S3AsyncSink;
+import org.example.service.S3MultipartOutputStream;
+import org.example.service.S3MultipartUpload;
+import org.example.service.S3MultipartUploadConfig;
+import org.example.service.UploadExecutionMode;
+import org.example.service.UploadResult;
+import org.example.service.UploadScheduler;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Random;
+
+/**
+ * Throughput of an upload without checksum, with an MD5 of the whole object computed on the producer thread, and
+ * with MD5 or CRC32C part checksums computed by the part requests. An object is uploaded with part checksums to
+ * an {@link InMemorySink} as well, which checks every part against its checksum.
+ * <p>
+ * Usage: {@code ChecksumBenchmark [sizeInMb] [connectionMbPerSecond]}
+ */
+public class ChecksumBenchmark {
+    private static final int MB = 1024 * 1024;
+
+    public static void main(String... args) throws IOException, NoSuchAlgorithmException {
+        long size = (args.length > 0 ? Long.parseLong(args[0]) : 512) * MB;
+        long connectionBandwidth = (args.length > 1 ? Long.parseLong(args[1]) : 100) * MB;
+
+        S3MultipartUploadConfig checkConfig = new S3MultipartUploadConfig();
+        checkConfig.setPartBufferPool(new PartBufferPool(5 * MB, 16));
+        checkConfig.setPartSize(5L * MB);
+        checkConfig.setChecksumAlgorithm(PartChecksum.Algorithm.CRC32C);
+        UploadResult checked = upload(new S3MultipartUpload("benchmark", "checked", new InMemorySink(), checkConfig),
+                32L * MB, false);
+        System.out.println(String.format("parts checked by the sink, object checksum: %s", checked.getChecksum()));
+
+        System.out.println(String.format("object: %d MB, 5 MB parts, connections of %d MB/s, %d processors",
+                size / MB, connectionBandwidth / MB, Runtime.getRuntime().availableProcessors()));
+        try (LocalS3AsyncStandIn s3AsyncClient = new LocalS3AsyncStandIn()) {
+            s3AsyncClient.setRequestLatencyMillis(20);
+            s3AsyncClient.setConnectionBandwidth(connectionBandwidth);
+            UploadScheduler uploadScheduler = new UploadScheduler(16, UploadExecutionMode.PLATFORM_THREADS);
+            PartBufferPool partBufferPool = new PartBufferPool(5 * MB, 64);
+
+            // warms up the JIT, not reported
+            upload(new S3MultipartUpload("benchmark", "warm-up", new S3AsyncSink(s3AsyncClient), checkConfig), size, false);
+            run("no checksum", null, false, size, s3AsyncClient, uploadScheduler, partBufferPool);
+            run("MD5 on the producer", null, true, size, s3AsyncClient, uploadScheduler, partBufferPool);
+            run("MD5 per part", PartChecksum.Algorithm.MD5, false, size, s3AsyncClient, uploadScheduler, partBufferPool);
+            run("CRC32C per part", PartChecksum.Algorithm.CRC32C, false, size, s3AsyncClient, uploadScheduler,
+                    partBufferPool);
+            uploadScheduler.shutdown();
+        }
+    }
+
+    private static void run(String name, PartChecksum.Algorithm checksumAlgorithm, boolean producerMd5, long size,
+                            LocalS3AsyncStandIn s3AsyncClient, UploadScheduler uploadScheduler,
+                            PartBufferPool partBufferPool) throws IOException, NoSuchAlgorithmException {
+        S3MultipartUploadConfig config = new S3MultipartUploadConfig();
+        config.setUploadScheduler(uploadScheduler);
+        config.setPartBufferPool(partBufferPool);
+        config.setPartSize(5L * MB);
+        config.setAdaptivePartSize(false);
+        config.setMaxInFlightParts(32);
+        config.setChecksumAlgorithm(checksumAlgorithm);
+        S3MultipartUpload multipartUpload = new S3MultipartUpload("benchmark", name, new S3AsyncSink(s3AsyncClient), config);
+
+        long start = System.nanoTime();
+        UploadResult result = upload(multipartUpload, size, producerMd5);
+        long elapsedNanos = System.nanoTime() - start;
+
+        System.out.println(String.format("%-22s time: %6d ms  throughput: %7.1f MB/s%s", name, elapsedNanos / 1_000_000,
+                size / (double) MB / (elapsedNanos / 1e9),
+                result.getChecksum() == null ? "" : "  object checksum: " + result.getChecksum()));
+    }
+
+    private static UploadResult upload(S3MultipartUpload multipartUpload, long size, boolean producerMd5)
+            throws IOException, NoSuchAlgorithmException {
+        byte[] chunk = new byte[64 * 1024];
+        new Random(42).nextBytes(chunk);
+        S3MultipartOutputStream uploadStream = new S3MultipartOutputStream(multipartUpload);
+        OutputStream outputStream = producerMd5
+                ? new DigestOutputStream(uploadStream, MessageDigest.getInstance("MD5")) : uploadStream;
+        for (long written = 0; written < size; written += chunk.length) {
+            outputStream.write(chunk, 0, (int) Math.min(chunk.length, size - written));
+        }
+        outputStream.flush();
+        return uploadStream.closeAsync().join();
+    }
+}
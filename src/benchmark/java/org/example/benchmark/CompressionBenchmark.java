@@ -0,0 +1,117 @@
+package org.example.benchmark;
+
+import org.example.service.AmazonS3Sink;
+import org.example.service.InMemorySink;
+import org.example.service.ObjectSink;
+import org.example.service.ParallelGzipOutputStream;
+import org.example.service.PartBufferPool;
+import org.example.service.S3MultipartOutputStream;
+import org.example.service.S3MultipartUpload;
+import org.example.service.S3MultipartUploadConfig;
+import org.example.service.UploadExecutionMode;
+import org.example.service.UploadScheduler;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.function.Function;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Throughput of a CSV export uploaded without compression, gzipped by a single {@link GZIPOutputStream} on the
+ * producer thread, and gzipped by a {@link ParallelGzipOutputStream}. A smaller export is uploaded to an
+ * {@link InMemorySink} as well, to check the concatenated members read back as the original bytes.
+ * <p>
+ * Usage: {@code CompressionBenchmark [sizeInMb]}
+ */
+public class CompressionBenchmark {
+    private static final int MB = 1024 * 1024;
+
+    public static void main(String... args) throws IOException {
+        long size = (args.length > 0 ? Long.parseLong(args[0]) : 128) * MB;
+        byte[] csv = csv(32 * MB);
+
+        InMemorySink inMemorySink = new InMemorySink();
+        S3MultipartUploadConfig checkConfig = new S3MultipartUploadConfig();
+        checkConfig.setPartBufferPool(new PartBufferPool(5 * MB, 16));
+        checkConfig.setPartSize(5L * MB);
+        try (OutputStream outputStream = new ParallelGzipOutputStream(new S3MultipartOutputStream(
+                new S3MultipartUpload("benchmark", "check.csv.gz", inMemorySink, checkConfig)))) {
+            outputStream.write(csv);
+        }
+        try (InputStream inputStream = new GZIPInputStream(new ByteArrayInputStream(
+                inMemorySink.getObject("benchmark", "check.csv.gz")))) {
+            System.out.println(String.format("gunzipped object matches the export: %b",
+                    Arrays.equals(csv, inputStream.readAllBytes())));
+        }
+
+        System.out.println(String.format("export: %d MB of CSV, %d processors", size / MB,
+                Runtime.getRuntime().availableProcessors()));
+        LocalS3StandIn s3Client = new LocalS3StandIn();
+        s3Client.setRequestLatencyMillis(20);
+        UploadScheduler uploadScheduler = new UploadScheduler(16, UploadExecutionMode.PLATFORM_THREADS);
+        PartBufferPool partBufferPool = new PartBufferPool(5 * MB, 64);
+
+        run("uncompressed", outputStream -> outputStream, csv, size, s3Client, uploadScheduler, partBufferPool);
+        run("GZIPOutputStream", outputStream -> {
+            try {
+                return new GZIPOutputStream(outputStream, 64 * 1024);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }, csv, size, s3Client, uploadScheduler, partBufferPool);
+        run("ParallelGzip", ParallelGzipOutputStream::new, csv, size, s3Client, uploadScheduler, partBufferPool);
+        uploadScheduler.shutdown();
+    }
+
+    private static void run(String name, Function<OutputStream, OutputStream> compression, byte[] csv, long size,
+                            LocalS3StandIn s3Client, UploadScheduler uploadScheduler, PartBufferPool partBufferPool)
+            throws IOException {
+        S3MultipartUploadConfig config = new S3MultipartUploadConfig();
+        config.setUploadScheduler(uploadScheduler);
+        config.setPartBufferPool(partBufferPool);
+        config.setPartSize(5L * MB);
+        config.setAdaptivePartSize(false);
+        ObjectSink objectSink = new AmazonS3Sink(s3Client);
+        S3MultipartUpload multipartUpload = new S3MultipartUpload("benchmark", name, objectSink, config);
+
+        long bytesBefore = s3Client.getBytesReceived();
+        long start = System.nanoTime();
+        try (OutputStream outputStream = compression.apply(new S3MultipartOutputStream(multipartUpload))) {
+            for (long written = 0; written < size; written += csv.length) {
+                outputStream.write(csv, 0, (int) Math.min(csv.length, size - written));
+            }
+        }
+        long elapsedNanos = System.nanoTime() - start;
+        long sentBytes = s3Client.getBytesReceived() - bytesBefore;
+
+        System.out.println(String.format("%-18s time: %6d ms  throughput: %7.1f MB/s of CSV  sent: %6.1f MB  ratio: %4.1f",
+                name, elapsedNanos / 1_000_000, size / (double) MB / (elapsedNanos / 1e9), sentBytes / (double) MB,
+                size / (double) sentBytes));
+    }
+
+    /**
+     * Rows of an offer export, random enough to compress like the real ones.
+     */
+    private static byte[] csv(int size) {
+        String[] statuses = {"ACTIVE", "EXPIRED", "PENDING", "WITHDRAWN"};
+        String[] currencies = {"EUR", "USD", "GBP"};
+        Random random = new Random(42);
+        ByteArrayOutputStream csv = new ByteArrayOutputStream(size + 256);
+        csv.writeBytes("offer_id,created_at,customer_id,product,currency,amount,status\n".getBytes(StandardCharsets.UTF_8));
+        for (long offerId = 1_000_000; csv.size() < size; offerId++) {
+            String row = String.format("%d,2026-10-%02dT%02d:%02d:00Z,customer-%d,product-%d,%s,%d.99,%s\n",
+                    offerId, 1 + random.nextInt(28), random.nextInt(24), random.nextInt(4) * 15,
+                    random.nextInt(5_000), random.nextInt(100), currencies[random.nextInt(currencies.length)],
+                    random.nextInt(200), statuses[random.nextInt(statuses.length)]);
+            csv.writeBytes(row.getBytes(StandardCharsets.UTF_8));
+        }
+        return Arrays.copyOf(csv.toByteArray(), size);
+    }
+}
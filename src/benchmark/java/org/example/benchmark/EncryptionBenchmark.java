@@ -0,0 +1,106 @@
+package org.example.benchmark;
+
+import org.example.service.AmazonS3Sink;
+import org.example.service.InMemorySink;
+import org.example.service.PartBufferPool;
+import org.example.service.PartEncryption;
+import org.example.service.S3MultipartOutputStream;
+import org.example.service.S3MultipartUpload;
+import org.example.service.S3MultipartUploadConfig;
+import org.example.service.UploadExecutionMode;
+import org.example.service.UploadScheduler;
+
+import javax.crypto.Cipher;
+import javax.crypto.CipherOutputStream;
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.IvParameterSpec;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Throughput of an upload in clear, encrypted by a single {@link CipherOutputStream} on the producer thread, and
+ * encrypted part by part by {@link PartEncryption}. A smaller object is uploaded encrypted to an
+ * {@link InMemorySink} as well, to check it decrypts back to the original bytes.
+ * <p>
+ * Usage: {@code EncryptionBenchmark [sizeInMb]}
+ */
+public class EncryptionBenchmark {
+    private static final int MB = 1024 * 1024;
+
+    public static void main(String... args) throws IOException, GeneralSecurityException {
+        long size = (args.length > 0 ? Long.parseLong(args[0]) : 512) * MB;
+        SecretKey key = KeyGenerator.getInstance("AES").generateKey();
+        PartEncryption partEncryption = new PartEncryption(key);
+
+        InMemorySink inMemorySink = new InMemorySink();
+        S3MultipartUploadConfig checkConfig = new S3MultipartUploadConfig();
+        checkConfig.setPartBufferPool(new PartBufferPool(5 * MB, 16));
+        checkConfig.setPartSize(5L * MB);
+        checkConfig.setPartEncryption(partEncryption);
+        byte[] object = new byte[32 * MB + 12345];
+        new Random(42).nextBytes(object);
+        try (OutputStream outputStream = new S3MultipartOutputStream(
+                new S3MultipartUpload("benchmark", "checked", inMemorySink, checkConfig))) {
+            outputStream.write(object);
+        }
+        try (InputStream inputStream = partEncryption.decrypt(new ByteArrayInputStream(
+                inMemorySink.getObject("benchmark", "checked")))) {
+            System.out.println(String.format("decrypted object matches: %b", Arrays.equals(object, inputStream.readAllBytes())));
+        }
+
+        System.out.println(String.format("object: %d MB, 5 MB parts, %d processors", size / MB,
+                Runtime.getRuntime().availableProcessors()));
+        LocalS3StandIn s3Client = new LocalS3StandIn();
+        s3Client.setRequestLatencyMillis(20);
+        UploadScheduler uploadScheduler = new UploadScheduler(16, UploadExecutionMode.PLATFORM_THREADS);
+        PartBufferPool partBufferPool = new PartBufferPool(5 * MB, 64);
+
+        // warms up the JIT, not reported
+        run(null, null, partEncryption, size, s3Client, uploadScheduler, partBufferPool);
+        run("in clear", null, null, size, s3Client, uploadScheduler, partBufferPool);
+        run("CipherOutputStream", key, null, size, s3Client, uploadScheduler, partBufferPool);
+        run("PartEncryption", null, partEncryption, size, s3Client, uploadScheduler, partBufferPool);
+        uploadScheduler.shutdown();
+    }
+
+    private static void run(String name, SecretKey producerKey, PartEncryption partEncryption, long size,
+                            LocalS3StandIn s3Client, UploadScheduler uploadScheduler, PartBufferPool partBufferPool)
+            throws IOException, GeneralSecurityException {
+        S3MultipartUploadConfig config = new S3MultipartUploadConfig();
+        config.setUploadScheduler(uploadScheduler);
+        config.setPartBufferPool(partBufferPool);
+        config.setPartSize(5L * MB);
+        config.setAdaptivePartSize(false);
+        config.setMaxInFlightParts(32);
+        config.setPartEncryption(partEncryption);
+        S3MultipartUpload multipartUpload = new S3MultipartUpload("benchmark", String.valueOf(name),
+                new AmazonS3Sink(s3Client), config);
+
+        byte[] chunk = new byte[64 * 1024];
+        new Random(42).nextBytes(chunk);
+        long start = System.nanoTime();
+        OutputStream uploadStream = new S3MultipartOutputStream(multipartUpload);
+        if (producerKey != null) {
+            Cipher cipher = Cipher.getInstance("AES/CTR/NoPadding");
+            cipher.init(Cipher.ENCRYPT_MODE, producerKey, new IvParameterSpec(new byte[16]));
+            uploadStream = new CipherOutputStream(uploadStream, cipher);
+        }
+        try (OutputStream outputStream = uploadStream) {
+            for (long written = 0; written < size; written += chunk.length) {
+                outputStream.write(chunk, 0, (int) Math.min(chunk.length, size - written));
+            }
+        }
+        long elapsedNanos = System.nanoTime() - start;
+
+        if (name != null) {
+            System.out.println(String.format("%-20s time: %6d ms  throughput: %7.1f MB/s", name,
+                    elapsedNanos / 1_000_000, size / (double) MB / (elapsedNanos / 1e9)));
+        }
+    }
+}
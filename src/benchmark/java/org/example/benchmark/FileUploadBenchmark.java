@@ -0,0 +1,103 @@
+package org.example.benchmark;
+
+import org.example.service.AmazonS3Sink;
+import org.example.service.InMemorySink;
+import org.example.service.PartBufferPool;
+import org.example.service.S3MultipartOutputStream;
+import org.example.service.S3MultipartUpload;
+import org.example.service.S3MultipartUploadConfig;
+import org.example.service.UploadExecutionMode;
+import org.example.service.UploadScheduler;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Uploads a local file read through an InputStream into pooled part buffers, then through
+ * {@link S3MultipartUpload#uploadFileAsync(Path)} from mapped ranges of the file, to a stand-in without latency
+ * so the cost of reading the file shows. Heap allocated by every thread during each upload is reported too. A
+ * smaller file is uploaded to an {@link InMemorySink} first, to check the object matches the file.
+ * <p>
+ * Usage: {@code FileUploadBenchmark [sizeInMb]}
+ */
+public class FileUploadBenchmark {
+    private static final int MB = 1024 * 1024;
+
+    public static void main(String... args) throws IOException {
+        long size = (args.length > 0 ? Long.parseLong(args[0]) : 1024) * MB;
+
+        UploadScheduler uploadScheduler = new UploadScheduler(8, UploadExecutionMode.PLATFORM_THREADS);
+        S3MultipartUploadConfig config = new S3MultipartUploadConfig();
+        config.setUploadScheduler(uploadScheduler);
+        config.setPartBufferPool(new PartBufferPool(5 * MB, 40));
+        config.setPartSize(10L * MB);
+        config.setAdaptivePartSize(false);
+
+        Path file = Files.createTempFile("upload", ".bin");
+        try {
+            byte[] smallFile = new byte[33 * MB + 777];
+            new Random(42).nextBytes(smallFile);
+            Files.write(file, smallFile);
+            InMemorySink inMemorySink = new InMemorySink();
+            new S3MultipartUpload("benchmark", "small", inMemorySink, config).uploadFileAsync(file).join();
+            System.out.println(String.format("uploaded object matches the file: %b",
+                    Arrays.equals(smallFile, inMemorySink.getObject("benchmark", "small"))));
+
+            writeFile(file, size);
+            LocalS3StandIn s3Client = new LocalS3StandIn();
+            // once to warm up, then measured
+            for (int run = 0; run < 2; run++) {
+                long allocatedBefore = allocatedBytes();
+                long start = System.nanoTime();
+                S3MultipartUpload streamed = new S3MultipartUpload("benchmark", "streamed", new AmazonS3Sink(s3Client), config);
+                try (InputStream inputStream = Files.newInputStream(file);
+                     OutputStream outputStream = new S3MultipartOutputStream(streamed)) {
+                    inputStream.transferTo(outputStream);
+                }
+                report(run, "InputStream into parts", size, start, allocatedBefore);
+
+                allocatedBefore = allocatedBytes();
+                start = System.nanoTime();
+                new S3MultipartUpload("benchmark", "mapped", new AmazonS3Sink(s3Client), config).uploadFileAsync(file).join();
+                report(run, "mapped file", size, start, allocatedBefore);
+            }
+        } finally {
+            Files.deleteIfExists(file);
+            uploadScheduler.shutdown();
+        }
+    }
+
+    private static void writeFile(Path file, long size) throws IOException {
+        byte[] chunk = new byte[MB];
+        new Random(42).nextBytes(chunk);
+        try (OutputStream outputStream = Files.newOutputStream(file)) {
+            for (long written = 0; written < size; written += chunk.length) {
+                outputStream.write(chunk, 0, (int) Math.min(chunk.length, size - written));
+            }
+        }
+    }
+
+    private static void report(int run, String name, long size, long start, long allocatedBefore) {
+        long elapsedNanos = System.nanoTime() - start;
+        if (run > 0) {
+            System.out.println(String.format("%-24s time: %5d ms  throughput: %7.1f MB/s  heap allocated: %6.1f MB",
+                    name, elapsedNanos / 1_000_000, size / (double) MB / (elapsedNanos / 1e9),
+                    (allocatedBytes() - allocatedBefore) / (double) MB));
+        }
+    }
+
+    private static long allocatedBytes() {
+        com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long allocated = 0;
+        for (long allocatedByThread : threadMXBean.getThreadAllocatedBytes(threadMXBean.getAllThreadIds())) {
+            allocated += Math.max(0, allocatedByThread);
+        }
+        return allocated;
+    }
+}
@@ -0,0 +1,84 @@
+package org.example.benchmark;
+
+import org.example.service.AmazonS3Sink;
+import org.example.service.HedgingPolicy;
+import org.example.service.PartBufferPool;
+import org.example.service.S3MultipartOutputStream;
+import org.example.service.S3MultipartUpload;
+import org.example.service.S3MultipartUploadConfig;
+import org.example.service.UploadExecutionMode;
+import org.example.service.UploadScheduler;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Completion time percentiles of objects uploaded one after the other, without and with hedging, against a
+ * stand-in where a share of the requests land on a slow front-end.
+ * <p>
+ * Usage: {@code HedgingBenchmark [objects] [sizeInMb] [slowRequestPercent] [slowDelayMillis]}
+ */
+public class HedgingBenchmark {
+    private static final int MB = 1024 * 1024;
+
+    public static void main(String... args) throws IOException {
+        int objects = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        long size = (args.length > 1 ? Long.parseLong(args[1]) : 25) * MB;
+        double slowRequestRatio = (args.length > 2 ? Double.parseDouble(args[2]) : 2) / 100;
+        long slowDelayMillis = args.length > 3 ? Long.parseLong(args[3]) : 2000;
+
+        System.out.println(String.format("objects: %d x %d MB, 5 MB parts, slow requests: %.1f%% + %d ms",
+                objects, size / MB, slowRequestRatio * 100, slowDelayMillis));
+
+        LocalS3StandIn s3Client = new LocalS3StandIn();
+        s3Client.setRequestLatencyMillis(50);
+        s3Client.setConnectionBandwidth(50L * MB);
+        s3Client.setSlowRequests(slowRequestRatio, slowDelayMillis);
+        UploadScheduler uploadScheduler = new UploadScheduler(16, UploadExecutionMode.PLATFORM_THREADS);
+        PartBufferPool partBufferPool = new PartBufferPool(5 * MB, 32);
+
+        run("without hedging", null, objects, size, s3Client, uploadScheduler, partBufferPool);
+        run("with hedging at p95", new HedgingPolicy(), objects, size, s3Client, uploadScheduler, partBufferPool);
+        uploadScheduler.shutdown();
+    }
+
+    private static void run(String name, HedgingPolicy hedgingPolicy, int objects, long size, LocalS3StandIn s3Client,
+                            UploadScheduler uploadScheduler, PartBufferPool partBufferPool) throws IOException {
+        byte[] chunk = new byte[64 * 1024];
+        new Random(42).nextBytes(chunk);
+        long partsBefore = s3Client.getPartsReceived();
+        long[] completionMillis = new long[objects];
+        for (int i = 0; i < objects; i++) {
+            S3MultipartUploadConfig config = new S3MultipartUploadConfig();
+            config.setUploadScheduler(uploadScheduler);
+            config.setPartBufferPool(partBufferPool);
+            config.setPartSize(5L * MB);
+            config.setAdaptivePartSize(false);
+            config.setHedgingPolicy(hedgingPolicy);
+            S3MultipartUpload multipartUpload = new S3MultipartUpload("benchmark", name + " " + i,
+                    new AmazonS3Sink(s3Client), config);
+
+            long start = System.nanoTime();
+            try (OutputStream outputStream = new S3MultipartOutputStream(multipartUpload)) {
+                for (long written = 0; written < size; written += chunk.length) {
+                    outputStream.write(chunk, 0, (int) Math.min(chunk.length, size - written));
+                }
+            }
+            completionMillis[i] = (System.nanoTime() - start) / 1_000_000;
+        }
+        Arrays.sort(completionMillis);
+
+        System.out.println(String.format("%-20s p50: %5d ms  p90: %5d ms  p99: %5d ms  max: %5d ms  part requests: %d%s",
+                name, percentile(completionMillis, 0.50), percentile(completionMillis, 0.90),
+                percentile(completionMillis, 0.99), completionMillis[objects - 1],
+                s3Client.getPartsReceived() - partsBefore,
+                hedgingPolicy == null ? "" : String.format("  hedged: %d, won: %d",
+                        hedgingPolicy.getHedgedParts(), hedgingPolicy.getHedgeWins())));
+    }
+
+    private static long percentile(long[] sorted, double percentile) {
+        return sorted[(int) Math.ceil(percentile * sorted.length) - 1];
+    }
+}
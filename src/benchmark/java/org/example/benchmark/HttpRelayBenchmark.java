@@ -0,0 +1,167 @@
+package org.example.benchmark;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.example.service.AmazonS3Sink;
+import org.example.service.HttpRangeRelay;
+import org.example.service.InMemorySink;
+import org.example.service.PartBufferPool;
+import org.example.service.S3MultipartOutputStream;
+import org.example.service.S3MultipartUpload;
+import org.example.service.S3MultipartUploadConfig;
+import org.example.service.UploadExecutionMode;
+import org.example.service.UploadScheduler;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Copies a file served by a local HTTP server, limited per connection like a remote partner server, to the S3
+ * stand-in: first downloaded to a temporary file then uploaded, then relayed by {@link HttpRangeRelay}. A smaller
+ * file is relayed to an {@link InMemorySink} as well, to check the object matches the file byte for byte.
+ * <p>
+ * Usage: {@code HttpRelayBenchmark [sizeInMb] [serverConnectionMbPerSecond]}
+ */
+public class HttpRelayBenchmark {
+    private static final int MB = 1024 * 1024;
+    private static final int BLOCK_SIZE = 64 * 1024;
+
+    private static final byte[] BLOCK = new byte[BLOCK_SIZE];
+
+    static {
+        new Random(42).nextBytes(BLOCK);
+    }
+
+    public static void main(String... args) throws IOException {
+        long size = (args.length > 0 ? Long.parseLong(args[0]) : 512) * MB;
+        long connectionBandwidth = (args.length > 1 ? Long.parseLong(args[1]) : 20) * MB;
+
+        ExecutorService serverThreads = Executors.newFixedThreadPool(32);
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 64);
+        server.createContext("/file", exchange -> serve(exchange, size, connectionBandwidth));
+        server.createContext("/small", exchange -> serve(exchange, 64L * MB + 12345, 0));
+        server.setExecutor(serverThreads);
+        server.start();
+        String baseUrl = "http://localhost:" + server.getAddress().getPort();
+
+        try {
+            UploadScheduler uploadScheduler = new UploadScheduler(16, UploadExecutionMode.PLATFORM_THREADS);
+            S3MultipartUploadConfig config = new S3MultipartUploadConfig();
+            config.setUploadScheduler(uploadScheduler);
+            config.setPartBufferPool(new PartBufferPool(5 * MB, 40));
+            config.setPartSize(8L * MB);
+            config.setMaxInFlightParts(16);
+
+            InMemorySink inMemorySink = new InMemorySink();
+            new HttpRangeRelay(inMemorySink, config).relay(new URL(baseUrl + "/small"), "benchmark", "small");
+            byte[] object = inMemorySink.getObject("benchmark", "small");
+            byte[] expected = new byte[64 * MB + 12345];
+            fill(0, expected, expected.length);
+            System.out.println(String.format("relayed object matches the file: %b", Arrays.equals(expected, object)));
+
+            System.out.println(String.format("file: %d MB, server connection: %d MB/s", size / MB, connectionBandwidth / MB));
+            LocalS3StandIn s3Client = new LocalS3StandIn();
+            s3Client.setRequestLatencyMillis(50);
+            s3Client.setConnectionBandwidth(50L * MB);
+
+            long start = System.nanoTime();
+            Path downloaded = Files.createTempFile("relay", ".download");
+            try {
+                try (InputStream inputStream = new URL(baseUrl + "/file").openStream()) {
+                    Files.copy(inputStream, downloaded, StandardCopyOption.REPLACE_EXISTING);
+                }
+                S3MultipartUpload multipartUpload = new S3MultipartUpload("benchmark", "downloaded",
+                        new AmazonS3Sink(s3Client), config);
+                try (InputStream inputStream = Files.newInputStream(downloaded);
+                     OutputStream outputStream = new S3MultipartOutputStream(multipartUpload)) {
+                    inputStream.transferTo(outputStream);
+                }
+            } finally {
+                Files.deleteIfExists(downloaded);
+            }
+            report("download then upload", size, start);
+
+            start = System.nanoTime();
+            new HttpRangeRelay(new AmazonS3Sink(s3Client), config).relay(new URL(baseUrl + "/file"), "benchmark", "relayed");
+            report("ranged relay", size, start);
+            uploadScheduler.shutdown();
+        } finally {
+            server.stop(0);
+            serverThreads.shutdownNow();
+        }
+    }
+
+    private static void report(String name, long size, long start) {
+        long elapsedNanos = System.nanoTime() - start;
+        System.out.println(String.format("%-22s time: %6d ms  throughput: %6.1f MB/s", name, elapsedNanos / 1_000_000,
+                size / (double) MB / (elapsedNanos / 1e9)));
+    }
+
+    /**
+     * Serves a generated file of the given size, whole or a single range of it, at most at the given bandwidth.
+     */
+    private static void serve(HttpExchange exchange, long size, long connectionBandwidth) throws IOException {
+        long first = 0;
+        long last = size - 1;
+        int status = 200;
+        String range = exchange.getRequestHeaders().getFirst("Range");
+        String ifRange = exchange.getRequestHeaders().getFirst("If-Range");
+        if (range != null && range.startsWith("bytes=") && (ifRange == null || ifRange.equals("\"v1\""))) {
+            String[] bounds = range.substring("bytes=".length()).split("-");
+            first = Long.parseLong(bounds[0]);
+            last = Math.min(last, Long.parseLong(bounds[1]));
+            status = 206;
+            exchange.getResponseHeaders().set("Content-Range", String.format("bytes %d-%d/%d", first, last, size));
+        }
+        exchange.getResponseHeaders().set("Accept-Ranges", "bytes");
+        exchange.getResponseHeaders().set("ETag", "\"v1\"");
+        long length = last - first + 1;
+        if ("HEAD".equals(exchange.getRequestMethod())) {
+            exchange.getResponseHeaders().set("Content-Length", Long.toString(size));
+            exchange.sendResponseHeaders(status, -1);
+            exchange.close();
+            return;
+        }
+        exchange.sendResponseHeaders(status, length);
+        long start = System.nanoTime();
+        byte[] chunk = new byte[BLOCK_SIZE];
+        try (OutputStream body = exchange.getResponseBody()) {
+            for (long sent = 0; sent < length; ) {
+                int chunkLength = (int) Math.min(chunk.length, length - sent);
+                fill(first + sent, chunk, chunkLength);
+                body.write(chunk, 0, chunkLength);
+                sent += chunkLength;
+                if (connectionBandwidth > 0) {
+                    long aheadNanos = sent * 1_000_000_000L / connectionBandwidth - (System.nanoTime() - start);
+                    if (aheadNanos > 0) {
+                        TimeUnit.NANOSECONDS.sleep(aheadNanos);
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Bytes of the generated file from the given position, which differ from one block to the next so a
+     * misplaced range shows.
+     */
+    private static void fill(long position, byte[] bytes, int length) {
+        for (int i = 0; i < length; i++) {
+            long p = position + i;
+            bytes[i] = (byte) (BLOCK[(int) (p % BLOCK_SIZE)] + (p / BLOCK_SIZE));
+        }
+    }
+}
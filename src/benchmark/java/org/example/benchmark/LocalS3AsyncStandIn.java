@@ -0,0 +1,140 @@
+package org.example.benchmark;
+
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import software.amazon.awssdk.core.async.AsyncRequestBody;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.model.AbortMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.AbortMultipartUploadResponse;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadResponse;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadResponse;
+import software.amazon.awssdk.services.s3.model.UploadPartRequest;
+import software.amazon.awssdk.services.s3.model.UploadPartResponse;
+
+import java.nio.ByteBuffer;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Non-blocking counterpart of {@link LocalS3StandIn} for the SDK v2 {@link S3AsyncClient}.
+ * <p>
+ * Part bodies are consumed as they are published and the request completes after the simulated latency and
+ * transfer time from a single timer thread, the way an event loop would, so no thread waits on a part.
+ */
+public class LocalS3AsyncStandIn implements S3AsyncClient {
+    private final ScheduledExecutorService eventLoop = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "s3-async-stand-in");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final AtomicLong bytesReceived = new AtomicLong();
+    private final AtomicLong partsReceived = new AtomicLong();
+
+    private volatile long requestLatencyMillis;
+    private volatile long connectionBandwidth; // bytes per second, 0 for unlimited
+
+    @Override
+    public CompletableFuture<CreateMultipartUploadResponse> createMultipartUpload(CreateMultipartUploadRequest request) {
+        return CompletableFuture.completedFuture(CreateMultipartUploadResponse.builder()
+                .bucket(request.bucket())
+                .key(request.key())
+                .uploadId(UUID.randomUUID().toString())
+                .build());
+    }
+
+    @Override
+    public CompletableFuture<UploadPartResponse> uploadPart(UploadPartRequest request, AsyncRequestBody requestBody) {
+        long start = System.nanoTime();
+        CompletableFuture<UploadPartResponse> response = new CompletableFuture<>();
+        requestBody.subscribe(new Subscriber<ByteBuffer>() {
+            private long received;
+
+            @Override
+            public void onSubscribe(Subscription subscription) {
+                subscription.request(Long.MAX_VALUE);
+            }
+
+            @Override
+            public void onNext(ByteBuffer byteBuffer) {
+                received += byteBuffer.remaining();
+                byteBuffer.position(byteBuffer.limit());
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                response.completeExceptionally(throwable);
+            }
+
+            @Override
+            public void onComplete() {
+                if (received != request.contentLength()) {
+                    response.completeExceptionally(new IllegalStateException(String.format(
+                            "Part %d declared %d bytes but sent %d", request.partNumber(), request.contentLength(), received)));
+                    return;
+                }
+                long transferNanos = connectionBandwidth > 0 ? received * 1_000_000_000L / connectionBandwidth : 0;
+                long remainingNanos = TimeUnit.MILLISECONDS.toNanos(requestLatencyMillis) + transferNanos
+                        - (System.nanoTime() - start);
+                eventLoop.schedule(() -> {
+                    bytesReceived.addAndGet(received);
+                    partsReceived.incrementAndGet();
+                    response.complete(UploadPartResponse.builder().eTag(Integer.toHexString(request.partNumber())).build());
+                }, Math.max(0, remainingNanos), TimeUnit.NANOSECONDS);
+            }
+        });
+        return response;
+    }
+
+    @Override
+    public CompletableFuture<CompleteMultipartUploadResponse> completeMultipartUpload(CompleteMultipartUploadRequest request) {
+        return CompletableFuture.completedFuture(CompleteMultipartUploadResponse.builder()
+                .bucket(request.bucket())
+                .key(request.key())
+                .eTag(request.uploadId() + "-" + request.multipartUpload().parts().size())
+                .build());
+    }
+
+    @Override
+    public CompletableFuture<AbortMultipartUploadResponse> abortMultipartUpload(AbortMultipartUploadRequest request) {
+        return CompletableFuture.completedFuture(AbortMultipartUploadResponse.builder().build());
+    }
+
+    /**
+     * Time every part request waits on top of its transfer time, like a round-trip to S3 would.
+     */
+    public void setRequestLatencyMillis(long requestLatencyMillis) {
+        this.requestLatencyMillis = requestLatencyMillis;
+    }
+
+    /**
+     * Bytes per second a single part request can transfer, 0 for unlimited.
+     */
+    public void setConnectionBandwidth(long connectionBandwidth) {
+        this.connectionBandwidth = connectionBandwidth;
+    }
+
+    public long getBytesReceived() {
+        return bytesReceived.get();
+    }
+
+    public long getPartsReceived() {
+        return partsReceived.get();
+    }
+
+    @Override
+    public String serviceName() {
+        return SERVICE_NAME;
+    }
+
+    @Override
+    public void close() {
+        eventLoop.shutdownNow();
+    }
+}
@@ -0,0 +1,205 @@
+package org.example.benchmark;
+
+import com.amazonaws.services.s3.AbstractAmazonS3;
+import com.amazonaws.services.s3.model.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In process stand-in for the multipart and put object APIs of S3, used by the benchmarks.
+ * <p>
+ * Part bodies are read to the end like a HTTP client sending them would, but nothing is kept, so arbitrarily
+ * large uploads can be benchmarked without network or storage. A fixed per request latency and a per connection
+ * bandwidth can be simulated to approach the behaviour of the real service, as well as a host bandwidth shared by
+ * the requests in flight, a request rate above which S3 answers 503 SlowDown, and requests landing on a slow
+ * front-end.
+ */
+public class LocalS3StandIn extends AbstractAmazonS3 {
+    private static final int SEND_BUFFER_SIZE = 64 * 1024;
+
+    private static final ThreadLocal<byte[]> SEND_BUFFER = ThreadLocal.withInitial(() -> new byte[SEND_BUFFER_SIZE]);
+
+    private final AtomicLong bytesReceived = new AtomicLong();
+    private final AtomicLong partsReceived = new AtomicLong();
+    private final AtomicLong objectsReceived = new AtomicLong();
+    private final AtomicLong requestsThrottled = new AtomicLong();
+    private final AtomicInteger requestsInFlight = new AtomicInteger();
+
+    private volatile long requestLatencyMillis;
+    private volatile long connectionBandwidth; // bytes per second, 0 for unlimited
+    private volatile long hostBandwidth; // bytes per second shared by all requests, 0 for unlimited
+    private volatile int maxRequestsInFlight; // 0 for unlimited
+    private volatile double slowRequestRatio;
+    private volatile long slowRequestDelayMillis;
+
+    @Override
+    public InitiateMultipartUploadResult initiateMultipartUpload(InitiateMultipartUploadRequest request) {
+        InitiateMultipartUploadResult result = new InitiateMultipartUploadResult();
+        result.setBucketName(request.getBucketName());
+        result.setKey(request.getKey());
+        result.setUploadId(UUID.randomUUID().toString());
+        return result;
+    }
+
+    @Override
+    public UploadPartResult uploadPart(UploadPartRequest request) {
+        long start = System.nanoTime();
+        long received = receive(request.getInputStream(), start);
+        if (received != request.getPartSize()) {
+            throw new IllegalStateException(String.format("Part %d declared %d bytes but sent %d",
+                    request.getPartNumber(), request.getPartSize(), received));
+        }
+        bytesReceived.addAndGet(received);
+        partsReceived.incrementAndGet();
+
+        UploadPartResult result = new UploadPartResult();
+        result.setPartNumber(request.getPartNumber());
+        result.setETag(Integer.toHexString(request.getPartNumber()));
+        return result;
+    }
+
+    @Override
+    public PutObjectResult putObject(PutObjectRequest request) {
+        long start = System.nanoTime();
+        long received = receive(request.getInputStream(), start);
+        bytesReceived.addAndGet(received);
+        objectsReceived.incrementAndGet();
+
+        PutObjectResult result = new PutObjectResult();
+        result.setETag(Long.toHexString(received));
+        return result;
+    }
+
+    @Override
+    public CompleteMultipartUploadResult completeMultipartUpload(CompleteMultipartUploadRequest request) {
+        CompleteMultipartUploadResult result = new CompleteMultipartUploadResult();
+        result.setBucketName(request.getBucketName());
+        result.setKey(request.getKey());
+        result.setETag(request.getUploadId() + "-" + request.getPartETags().size());
+        return result;
+    }
+
+    @Override
+    public void abortMultipartUpload(AbortMultipartUploadRequest request) {
+    }
+
+    /**
+     * Time every part or put object request waits on top of its transfer time, like a round-trip to S3 would.
+     */
+    public void setRequestLatencyMillis(long requestLatencyMillis) {
+        this.requestLatencyMillis = requestLatencyMillis;
+    }
+
+    /**
+     * Bytes per second a single part request can transfer, 0 for unlimited.
+     */
+    public void setConnectionBandwidth(long connectionBandwidth) {
+        this.connectionBandwidth = connectionBandwidth;
+    }
+
+    /**
+     * Bytes per second shared by all the requests in flight, like the network interface of the host, 0 for
+     * unlimited. Past it, more requests in flight only make each of them slower.
+     */
+    public void setHostBandwidth(long hostBandwidth) {
+        this.hostBandwidth = hostBandwidth;
+    }
+
+    /**
+     * Number of part or put object requests above which the next ones are throttled, 0 for unlimited.
+     */
+    public void setMaxRequestsInFlight(int maxRequestsInFlight) {
+        this.maxRequestsInFlight = maxRequestsInFlight;
+    }
+
+    /**
+     * Share of the part or put object requests which answer after an extra delay, like a request landing on a
+     * slow front-end would.
+     */
+    public void setSlowRequests(double slowRequestRatio, long slowRequestDelayMillis) {
+        this.slowRequestRatio = slowRequestRatio;
+        this.slowRequestDelayMillis = slowRequestDelayMillis;
+    }
+
+    public long getRequestsThrottled() {
+        return requestsThrottled.get();
+    }
+
+    public long getBytesReceived() {
+        return bytesReceived.get();
+    }
+
+    public long getPartsReceived() {
+        return partsReceived.get();
+    }
+
+    /**
+     * Number of objects sent by a single request.
+     */
+    public long getObjectsReceived() {
+        return objectsReceived.get();
+    }
+
+    private long receive(InputStream inputStream, long start) {
+        int inFlight = requestsInFlight.incrementAndGet();
+        try {
+            if (maxRequestsInFlight > 0 && inFlight > maxRequestsInFlight) {
+                requestsThrottled.incrementAndGet();
+                AmazonS3Exception slowDown = new AmazonS3Exception("Please reduce your request rate.");
+                slowDown.setStatusCode(503);
+                slowDown.setErrorCode("SlowDown");
+                throw slowDown;
+            }
+            long received = drain(inputStream);
+            simulateTransfer(start, received);
+            return received;
+        } finally {
+            requestsInFlight.decrementAndGet();
+        }
+    }
+
+    private void simulateTransfer(long start, long bytes) {
+        long bandwidth = connectionBandwidth;
+        if (hostBandwidth > 0) {
+            long sharedBandwidth = hostBandwidth / Math.max(1, requestsInFlight.get());
+            bandwidth = bandwidth > 0 ? Math.min(bandwidth, sharedBandwidth) : sharedBandwidth;
+        }
+        long transferNanos = bandwidth > 0 ? bytes * 1_000_000_000L / bandwidth : 0;
+        long latencyMillis = requestLatencyMillis;
+        if (slowRequestRatio > 0 && ThreadLocalRandom.current().nextDouble() < slowRequestRatio) {
+            latencyMillis += slowRequestDelayMillis;
+        }
+        long remainingNanos = TimeUnit.MILLISECONDS.toNanos(latencyMillis) + transferNanos
+                - (System.nanoTime() - start);
+        if (remainingNanos > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(remainingNanos);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while simulating a part transfer", e);
+            }
+        }
+    }
+
+    private static long drain(InputStream inputStream) {
+        byte[] sendBuffer = SEND_BUFFER.get();
+        long received = 0;
+        // the SDK closes the request stream once it has been sent
+        try (inputStream) {
+            int bytesRead;
+            while ((bytesRead = inputStream.read(sendBuffer, 0, sendBuffer.length)) != -1) {
+                received += bytesRead;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return received;
+    }
+}
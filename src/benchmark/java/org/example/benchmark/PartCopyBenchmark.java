@@ -0,0 +1,137 @@
+package org.example.benchmark;
+
+import org.example.service.PartBufferPool;
+import org.example.service.S3MultipartOutputStream;
+import org.example.service.S3MultipartUpload;
+import org.example.service.S3MultipartUploadConfig;
+
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+/**
+ * Compares how many times every uploaded byte is copied on its way from the producer to the part request,
+ * for the original workbook-to-byte-array chunking and for {@link S3MultipartOutputStream}.
+ * <p>
+ * Copies are counted where they really happen (producer writes, array growth, toByteArray, chunk reads), the
+ * final read of the part body by the S3 client is the send itself and is not counted.
+ * <p>
+ * Usage: {@code PartCopyBenchmark [sizeInMb]}
+ */
+public class PartCopyBenchmark {
+    private static final int MB = 1024 * 1024;
+    private static final int UPLOAD_PART_SIZE = 10 * MB;
+    private static final int PRODUCER_CHUNK_SIZE = 8 * 1024; // POI writes its zip entries in small chunks
+
+    public static void main(String... args) throws IOException {
+        long size = (args.length > 0 ? Long.parseLong(args[0]) : 256) * MB;
+
+        // warm up both paths once before measuring
+        runLegacy(64L * MB);
+        runStreaming(64L * MB);
+
+        report("byte[] chunking (original)", size, () -> runLegacy(size));
+        report("S3MultipartOutputStream", size, () -> runStreaming(size));
+    }
+
+    private static long runLegacy(long size) throws IOException {
+        LocalS3StandIn s3Client = new LocalS3StandIn();
+        S3MultipartUpload multipartUpload = new S3MultipartUpload("benchmark", "legacy", s3Client);
+        multipartUpload.initializeUpload();
+
+        // the whole workbook is first written to memory, as workBookToByteArray did
+        CountingByteArrayOutputStream workbookBytes = new CountingByteArrayOutputStream();
+        produce(workbookBytes, size);
+        byte[] workbook = workbookBytes.toByteArray();
+        long copies = workbookBytes.copiedBytes + workbook.length;
+
+        InputStream inputStream = new ByteArrayInputStream(workbook);
+        int bytesRead, bytesAdded = 0;
+        byte[] data = new byte[UPLOAD_PART_SIZE];
+        CountingByteArrayOutputStream bufferOutputStream = new CountingByteArrayOutputStream();
+        while ((bytesRead = inputStream.read(data, 0, data.length)) != -1) {
+            copies += bytesRead;
+            bufferOutputStream.write(data, 0, bytesRead);
+            if (bytesAdded < UPLOAD_PART_SIZE) {
+                bytesAdded += bytesRead;
+                continue;
+            }
+            byte[] part = bufferOutputStream.toByteArray();
+            copies += part.length;
+            multipartUpload.uploadPartAsync(new ByteArrayInputStream(part));
+            bufferOutputStream.reset();
+            bytesAdded = 0;
+        }
+        byte[] finalPart = bufferOutputStream.toByteArray();
+        copies += finalPart.length + bufferOutputStream.copiedBytes;
+        multipartUpload.uploadFinalPartAsync(new ByteArrayInputStream(finalPart)).join();
+        return copies;
+    }
+
+    private static long runStreaming(long size) throws IOException {
+        LocalS3StandIn s3Client = new LocalS3StandIn();
+        S3MultipartUploadConfig config = new S3MultipartUploadConfig();
+        config.setPartBufferPool(new PartBufferPool(UPLOAD_PART_SIZE, config.getMaxInFlightParts() + 1));
+        S3MultipartUpload multipartUpload = new S3MultipartUpload("benchmark", "streaming", s3Client, config);
+
+        // every byte the producer writes lands directly in a pooled part buffer, and nowhere else
+        CountingOutputStream outputStream = new CountingOutputStream(new S3MultipartOutputStream(multipartUpload));
+        produce(outputStream, size);
+        outputStream.close();
+        return outputStream.count;
+    }
+
+    private static void produce(OutputStream outputStream, long size) throws IOException {
+        byte[] chunk = new byte[PRODUCER_CHUNK_SIZE];
+        new Random(42).nextBytes(chunk);
+        for (long written = 0; written < size; written += chunk.length) {
+            outputStream.write(chunk, 0, (int) Math.min(chunk.length, size - written));
+        }
+    }
+
+    private static void report(String name, long size, Run run) throws IOException {
+        com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long allocatedBefore = threadMXBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+        long start = System.nanoTime();
+        long copies = run.run();
+        long elapsedNanos = System.nanoTime() - start;
+        long allocated = threadMXBean.getThreadAllocatedBytes(Thread.currentThread().getId()) - allocatedBefore;
+
+        System.out.println(String.format("%-28s copied/uploaded: %.2f  producer heap allocated: %d MB  time: %d ms  (%.1f MB/s)",
+                name, (double) copies / size, allocated / MB, elapsedNanos / 1_000_000,
+                size / (double) MB / (elapsedNanos / 1e9)));
+    }
+
+    private interface Run {
+        long run() throws IOException;
+    }
+
+    /**
+     * Counts bytes written into it and bytes moved when its array grows.
+     */
+    private static final class CountingByteArrayOutputStream extends ByteArrayOutputStream {
+        private long copiedBytes;
+
+        @Override
+        public synchronized void write(byte[] b, int off, int len) {
+            int capacity = buf.length;
+            int existing = count;
+            super.write(b, off, len);
+            copiedBytes += len + (buf.length != capacity ? existing : 0);
+        }
+    }
+
+    private static final class CountingOutputStream extends FilterOutputStream {
+        private long count;
+
+        private CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package org.example.benchmark;
+
+import org.example.service.PartBufferPool;
+import org.example.service.S3MultipartOutputStream;
+import org.example.service.S3MultipartUpload;
+import org.example.service.S3MultipartUploadConfig;
+import org.example.service.UploadExecutionMode;
+import org.example.service.UploadScheduler;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+
+/**
+ * Compares fixed part sizes with the adaptive {@link org.example.service.PartSizePolicy} against a
+ * {@link LocalS3StandIn} simulating a per request latency and a per connection bandwidth.
+ * <p>
+ * Usage: {@code PartSizeBenchmark [sizeInMb] [latencyMillis] [connectionMbPerSecond]}
+ */
+public class PartSizeBenchmark {
+    private static final int MB = 1024 * 1024;
+    private static final int UPLOAD_THREADS = 4;
+
+    public static void main(String... args) throws IOException {
+        long size = (args.length > 0 ? Long.parseLong(args[0]) : 1024) * MB;
+        long latencyMillis = args.length > 1 ? Long.parseLong(args[1]) : 80;
+        long connectionBandwidth = (args.length > 2 ? Long.parseLong(args[2]) : 50) * MB;
+
+        // 1 MB buffers so every part size is possible, and enough of them for 4 threads of 128 MB parts
+        PartBufferPool partBufferPool = new PartBufferPool(MB, 1024);
+        UploadScheduler uploadScheduler = new UploadScheduler(UPLOAD_THREADS, UploadExecutionMode.PLATFORM_THREADS);
+
+        System.out.println(String.format("object: %d MB, latency: %d ms, connection: %d MB/s, threads: %d",
+                size / MB, latencyMillis, connectionBandwidth / MB, UPLOAD_THREADS));
+        run("fixed 5 MB", size, latencyMillis, connectionBandwidth, partBufferPool, uploadScheduler, 5L * MB, false);
+        run("fixed 10 MB", size, latencyMillis, connectionBandwidth, partBufferPool, uploadScheduler, 10L * MB, false);
+        run("fixed 64 MB", size, latencyMillis, connectionBandwidth, partBufferPool, uploadScheduler, 64L * MB, false);
+        run("adaptive from 5 MB", size, latencyMillis, connectionBandwidth, partBufferPool, uploadScheduler, 5L * MB, true);
+        run("adaptive from 10 MB", size, latencyMillis, connectionBandwidth, partBufferPool, uploadScheduler, 10L * MB, true);
+        uploadScheduler.shutdown();
+    }
+
+    private static void run(String name, long size, long latencyMillis, long connectionBandwidth, PartBufferPool partBufferPool,
+                            UploadScheduler uploadScheduler, long partSize, boolean adaptive) throws IOException {
+        LocalS3StandIn s3Client = new LocalS3StandIn();
+        s3Client.setRequestLatencyMillis(latencyMillis);
+        s3Client.setConnectionBandwidth(connectionBandwidth);
+
+        S3MultipartUploadConfig config = new S3MultipartUploadConfig();
+        config.setUploadScheduler(uploadScheduler);
+        config.setPartBufferPool(partBufferPool);
+        config.setPartSize(partSize);
+        config.setAdaptivePartSize(adaptive);
+        S3MultipartUpload multipartUpload = new S3MultipartUpload("benchmark", name, s3Client, config);
+
+        long start = System.nanoTime();
+        try (OutputStream outputStream = new S3MultipartOutputStream(multipartUpload)) {
+            byte[] chunk = new byte[64 * 1024];
+            new Random(42).nextBytes(chunk);
+            for (long written = 0; written < size; written += chunk.length) {
+                outputStream.write(chunk, 0, (int) Math.min(chunk.length, size - written));
+            }
+        }
+        long elapsedNanos = System.nanoTime() - start;
+
+        System.out.println(String.format("%-22s parts: %5d  time: %6d ms  throughput: %7.1f MB/s",
+                name, s3Client.getPartsReceived(), elapsedNanos / 1_000_000,
+                s3Client.getBytesReceived() / (double) MB / (elapsedNanos / 1e9)));
+    }
+}
@@ -0,0 +1,79 @@
+package org.example.benchmark;
+
+import org.example.service.AmazonS3Sink;
+import org.example.service.PartBufferPool;
+import org.example.service.PartSpiller;
+import org.example.service.S3MultipartOutputStream;
+import org.example.service.S3MultipartUpload;
+import org.example.service.S3MultipartUploadConfig;
+import org.example.service.UploadExecutionMode;
+import org.example.service.UploadScheduler;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+/**
+ * How long a producer faster than the network takes to hand over its object, and how long the upload takes,
+ * with parts blocking the producer under a small memory budget and with parts spilled to disk instead.
+ * <p>
+ * Usage: {@code SpillBenchmark [sizeInMb] [connectionMbPerSecond] [maxInFlightParts]}
+ */
+public class SpillBenchmark {
+    private static final int MB = 1024 * 1024;
+
+    public static void main(String... args) throws IOException {
+        long size = (args.length > 0 ? Long.parseLong(args[0]) : 512) * MB;
+        long connectionBandwidth = (args.length > 1 ? Long.parseLong(args[1]) : 25) * MB;
+        int maxInFlightParts = args.length > 2 ? Integer.parseInt(args[2]) : 4;
+
+        System.out.println(String.format("object: %d MB, 5 MB parts, 4 connections of %d MB/s, %d parts in memory",
+                size / MB, connectionBandwidth / MB, maxInFlightParts));
+
+        LocalS3StandIn s3Client = new LocalS3StandIn();
+        s3Client.setRequestLatencyMillis(20);
+        s3Client.setConnectionBandwidth(connectionBandwidth);
+        UploadScheduler uploadScheduler = new UploadScheduler(4, UploadExecutionMode.PLATFORM_THREADS);
+        PartBufferPool partBufferPool = new PartBufferPool(5 * MB, maxInFlightParts + 2);
+        Path spillDirectory = Files.createTempDirectory("spill-benchmark");
+
+        run("blocking producer", null, size, maxInFlightParts, s3Client, uploadScheduler, partBufferPool);
+        run("spilling to disk", new PartSpiller(spillDirectory, size), size, maxInFlightParts, s3Client,
+                uploadScheduler, partBufferPool);
+        uploadScheduler.shutdown();
+        Files.delete(spillDirectory);
+    }
+
+    private static void run(String name, PartSpiller partSpiller, long size, int maxInFlightParts,
+                            LocalS3StandIn s3Client, UploadScheduler uploadScheduler, PartBufferPool partBufferPool)
+            throws IOException {
+        S3MultipartUploadConfig config = new S3MultipartUploadConfig();
+        config.setUploadScheduler(uploadScheduler);
+        config.setPartBufferPool(partBufferPool);
+        config.setPartSize(5L * MB);
+        config.setAdaptivePartSize(false);
+        config.setMaxInFlightParts(maxInFlightParts);
+        config.setPartSpiller(partSpiller);
+        S3MultipartUpload multipartUpload = new S3MultipartUpload("benchmark", name, new AmazonS3Sink(s3Client), config);
+
+        byte[] chunk = new byte[64 * 1024];
+        new Random(42).nextBytes(chunk);
+        long start = System.nanoTime();
+        long producerNanos;
+        try (OutputStream outputStream = new S3MultipartOutputStream(multipartUpload)) {
+            for (long written = 0; written < size; written += chunk.length) {
+                outputStream.write(chunk, 0, (int) Math.min(chunk.length, size - written));
+            }
+            producerNanos = System.nanoTime() - start;
+        }
+        long elapsedNanos = System.nanoTime() - start;
+
+        System.out.println(String.format("%-18s producer: %6d ms  upload: %6d ms%s", name, producerNanos / 1_000_000,
+                elapsedNanos / 1_000_000, partSpiller == null ? "" : String.format(
+                        "  spilled: %d MB in %d parts, spill writes: %d ms, left on disk: %d bytes",
+                        partSpiller.getSpilledBytes() / MB, partSpiller.getSpilledParts(),
+                        partSpiller.getSpillWriteNanos() / 1_000_000, partSpiller.getBytesOnDisk())));
+    }
+}
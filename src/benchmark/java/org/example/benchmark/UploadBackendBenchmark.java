@@ -0,0 +1,86 @@
+package org.example.benchmark;
+
+import org.example.service.AmazonS3Sink;
+import org.example.service.ObjectSink;
+import org.example.service.PartBufferPool;
+import org.example.service.S3AsyncSink;
+import org.example.service.S3MultipartOutputStream;
+import org.example.service.S3MultipartUpload;
+import org.example.service.S3MultipartUploadConfig;
+import org.example.service.UploadExecutionMode;
+import org.example.service.UploadScheduler;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Random;
+import java.util.function.LongSupplier;
+
+/**
+ * Compares the blocking v1 backend ({@link AmazonS3Sink}) with the non-blocking v2 one ({@link S3AsyncSink}),
+ * both uploading with the same number of parts in flight against stand-ins simulating a per request latency
+ * and a per connection bandwidth.
+ * <p>
+ * Usage: {@code UploadBackendBenchmark [sizeInMb] [latencyMillis] [connectionMbPerSecond] [partsInFlight]}
+ */
+public class UploadBackendBenchmark {
+    private static final int MB = 1024 * 1024;
+
+    public static void main(String... args) throws IOException {
+        long size = (args.length > 0 ? Long.parseLong(args[0]) : 1024) * MB;
+        long latencyMillis = args.length > 1 ? Long.parseLong(args[1]) : 200;
+        long connectionBandwidth = (args.length > 2 ? Long.parseLong(args[2]) : 10) * MB;
+        int partsInFlight = args.length > 3 ? Integer.parseInt(args[3]) : 48;
+
+        // 5 MB parts, with room for the parts in flight and the ones being filled
+        PartBufferPool partBufferPool = new PartBufferPool(5 * MB, 2 * partsInFlight + 2);
+
+        System.out.println(String.format("object: %d MB, latency: %d ms, connection: %d MB/s, parts in flight: %d",
+                size / MB, latencyMillis, connectionBandwidth / MB, partsInFlight));
+
+        LocalS3StandIn s3Client = new LocalS3StandIn();
+        s3Client.setRequestLatencyMillis(latencyMillis);
+        s3Client.setConnectionBandwidth(connectionBandwidth);
+        UploadScheduler blockingScheduler = new UploadScheduler(partsInFlight, UploadExecutionMode.PLATFORM_THREADS);
+        run("v1 AmazonS3, platform threads", size, partBufferPool, blockingScheduler, partsInFlight,
+                new AmazonS3Sink(s3Client), s3Client::getBytesReceived);
+        blockingScheduler.shutdown();
+
+        try (LocalS3AsyncStandIn s3AsyncClient = new LocalS3AsyncStandIn()) {
+            s3AsyncClient.setRequestLatencyMillis(latencyMillis);
+            s3AsyncClient.setConnectionBandwidth(connectionBandwidth);
+            UploadScheduler nonBlockingScheduler = new UploadScheduler(partsInFlight, UploadExecutionMode.NON_BLOCKING);
+            run("v2 S3AsyncClient, non-blocking", size, partBufferPool, nonBlockingScheduler, partsInFlight,
+                    new S3AsyncSink(s3AsyncClient), s3AsyncClient::getBytesReceived);
+            nonBlockingScheduler.shutdown();
+        }
+    }
+
+    private static void run(String name, long size, PartBufferPool partBufferPool, UploadScheduler uploadScheduler,
+                            int partsInFlight, ObjectSink objectSink, LongSupplier bytesReceived) throws IOException {
+        S3MultipartUploadConfig config = new S3MultipartUploadConfig();
+        config.setUploadScheduler(uploadScheduler);
+        config.setPartBufferPool(partBufferPool);
+        config.setPartSize(5L * MB);
+        config.setAdaptivePartSize(false);
+        config.setMaxInFlightParts(partsInFlight);
+        S3MultipartUpload multipartUpload = new S3MultipartUpload("benchmark", name, objectSink, config);
+
+        ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        threadMXBean.resetPeakThreadCount();
+        long start = System.nanoTime();
+        try (OutputStream outputStream = new S3MultipartOutputStream(multipartUpload)) {
+            byte[] chunk = new byte[64 * 1024];
+            new Random(42).nextBytes(chunk);
+            for (long written = 0; written < size; written += chunk.length) {
+                outputStream.write(chunk, 0, (int) Math.min(chunk.length, size - written));
+            }
+        }
+        long elapsedNanos = System.nanoTime() - start;
+
+        System.out.println(String.format("%-32s time: %6d ms  throughput: %7.1f MB/s  peak threads: %d",
+                name, elapsedNanos / 1_000_000, bytesReceived.getAsLong() / (double) MB / (elapsedNanos / 1e9),
+                threadMXBean.getPeakThreadCount()));
+    }
+}
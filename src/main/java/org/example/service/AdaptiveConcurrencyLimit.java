@@ -0,0 +1,145 @@
+package org.example.service;
+
+/**
+ * Number of part requests an {@link UploadScheduler} lets run at the same time, adapted to what S3 and the
+ * network sustain (additive increase, multiplicative decrease).
+ * <p>
+ * Requests are measured over windows of about one request per allowed slot. After a window where every slot
+ * was busy and the throughput rose, the limit grows by one. It is cut:
+ * <ul>
+ *     <li>by half when S3 throttles a request (503 SlowDown), at most once per window since a burst of
+ *     throttled requests is a single signal</li>
+ *     <li>by a quarter when the time per byte of the requests doubles over the best one seen lately, the
+ *     requests then wait on each other instead of adding throughput</li>
+ * </ul>
+ * The best time per byte slowly drifts up towards the measured one, so a lasting change of the network does not
+ * keep the limit at its minimum.
+ */
+public class AdaptiveConcurrencyLimit {
+    // a window needs a few requests even at a low limit, to average out single slow requests
+    private static final int MIN_WINDOW_REQUESTS = 4;
+    // the limit grows only if the last window improved the throughput by at least 5%
+    private static final double MIN_THROUGHPUT_GAIN = 1.05;
+    private static final double LATENCY_TOLERANCE = 2.0;
+    private static final double BASELINE_DRIFT = 1.05;
+    private static final double THROTTLED_DECREASE = 0.5;
+    private static final double LATENCY_DECREASE = 0.75;
+
+    private final int minConcurrency;
+    private final int maxConcurrency;
+
+    private int limit;
+    private double previousThroughput;
+    private double baselineNanosPerByte;
+    private long windowStartNanos = System.nanoTime();
+    private long windowBytes;
+    private long windowNanos;
+    private int windowRequests;
+    private boolean windowSaturated;
+    private boolean decreasedInWindow;
+
+    /**
+     * @param initialConcurrency limit to start from
+     * @param minConcurrency     the limit never goes below it
+     * @param maxConcurrency     the limit never goes above it
+     */
+    public AdaptiveConcurrencyLimit(int initialConcurrency, int minConcurrency, int maxConcurrency) {
+        if (minConcurrency < 1 || maxConcurrency < minConcurrency) {
+            throw new IllegalArgumentException("concurrency limits should satisfy 1 <= min <= max");
+        }
+        this.minConcurrency = minConcurrency;
+        this.maxConcurrency = maxConcurrency;
+        this.limit = clamp(initialConcurrency);
+    }
+
+    public int getMinConcurrency() {
+        return minConcurrency;
+    }
+
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    /**
+     * Current number of requests allowed to run at the same time.
+     */
+    public synchronized int getLimit() {
+        return limit;
+    }
+
+    /**
+     * Moves the limit to the given value, within the bounds, adaptation goes on from there.
+     */
+    public synchronized void setLimit(int limit) {
+        this.limit = clamp(limit);
+        resetWindow();
+    }
+
+    /**
+     * Feeds a successful request into the current window.
+     *
+     * @param saturated whether requests were waiting for a slot when this one completed
+     */
+    public synchronized void recordRequest(long bytes, long elapsedNanos, boolean saturated) {
+        if (bytes <= 0 || elapsedNanos <= 0) {
+            return;
+        }
+        windowBytes += bytes;
+        windowNanos += elapsedNanos;
+        windowSaturated |= saturated;
+        if (++windowRequests < Math.max(MIN_WINDOW_REQUESTS, limit)) {
+            return;
+        }
+
+        double throughput = (double) windowBytes / (System.nanoTime() - windowStartNanos);
+        double nanosPerByte = (double) windowNanos / windowBytes;
+        baselineNanosPerByte = baselineNanosPerByte == 0
+                ? nanosPerByte : Math.min(nanosPerByte, baselineNanosPerByte * BASELINE_DRIFT);
+
+        if (nanosPerByte > baselineNanosPerByte * LATENCY_TOLERANCE) {
+            decrease(LATENCY_DECREASE, String.format("latency rose to %.1f ms per MB", nanosPerByte * 1024 * 1024 / 1e6));
+            return;
+        }
+        if (windowSaturated && throughput > previousThroughput * MIN_THROUGHPUT_GAIN && limit < maxConcurrency) {
+            limit++;
+            System.out.println(String.format("Raising upload concurrency to %d, throughput %.1f MB/s",
+                    limit, throughput * 1e9 / (1024 * 1024)));
+        }
+        previousThroughput = throughput;
+        resetWindow();
+    }
+
+    /**
+     * Records a request S3 has throttled.
+     */
+    public synchronized void recordThrottled() {
+        if (!decreasedInWindow) {
+            decrease(THROTTLED_DECREASE, "throttling");
+        }
+    }
+
+    private void decrease(double factor, String reason) {
+        int decreased = clamp((int) (limit * factor));
+        if (decreased < limit) {
+            System.out.println(String.format("Lowering upload concurrency to %d after %s", decreased, reason));
+        }
+        limit = decreased;
+        // the next window is measured at the new limit, and compared to nothing so the limit can grow again
+        previousThroughput = 0;
+        resetWindow();
+        decreasedInWindow = true;
+    }
+
+    private void resetWindow() {
+        windowStartNanos = System.nanoTime();
+        windowBytes = 0;
+        windowNanos = 0;
+        windowRequests = 0;
+        windowSaturated = false;
+        decreasedInWindow = false;
+    }
+
+    private int clamp(int concurrency) {
+        return Math.max(minConcurrency, Math.min(maxConcurrency, concurrency));
+    }
+}
@@ -0,0 +1,132 @@
+package org.example.service;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * {@link ObjectSink} on the blocking SDK v1 client, every part request holds its scheduler thread until
+ * S3 has answered.
+ * <p>
+ * The v1 client only sends MD5 checksums, as {@code Content-MD5}. The additional checksums such as CRC32C need
+ * the v2 client, see {@link S3AsyncSink}.
+ */
+public class AmazonS3Sink implements ObjectSink {
+    private final AmazonS3 s3Client;
+
+    public AmazonS3Sink(AmazonS3 s3Client) {
+        this.s3Client = s3Client;
+    }
+
+    @Override
+    public String initiateUpload(String bucketName, String key, PartChecksum.Algorithm checksumAlgorithm) {
+        requireMd5(checksumAlgorithm);
+        InitiateMultipartUploadRequest initRequest = new InitiateMultipartUploadRequest(bucketName, key);
+        initRequest.setObjectMetadata(getObjectMetadata()); // if we want to set object metadata in S3 bucket
+        initRequest.setTagging(getObjectTagging()); // if we want to set object tags in S3 bucket
+
+        return s3Client.initiateMultipartUpload(initRequest).getUploadId();
+    }
+
+    @Override
+    public CompletableFuture<UploadedPart> uploadPart(String bucketName, String key, String uploadId, int partNumber,
+                                                      long offset, PartPayload payload, PartChecksum checksum,
+                                                      boolean isLastPart) {
+        UploadPartRequest uploadRequest = new UploadPartRequest()
+                .withBucketName(bucketName)
+                .withKey(key)
+                .withUploadId(uploadId)
+                .withPartNumber(partNumber) // partNumber should be between 1 and 10000 inclusively
+                .withPartSize(payload.size())
+                .withInputStream(payload.newInputStream());
+
+        if (checksum != null) {
+            requireMd5(checksum.getAlgorithm());
+            uploadRequest.withMD5Digest(checksum.getValue());
+        }
+        if (isLastPart) {
+            uploadRequest.withLastPart(true);
+        }
+
+        try {
+            PartETag partETag = s3Client.uploadPart(uploadRequest).getPartETag();
+            return CompletableFuture.completedFuture(new UploadedPart(partETag.getPartNumber(), partETag.getETag()));
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    @Override
+    public String completeUpload(String bucketName, String key, String uploadId, List<UploadedPart> uploadedParts,
+                                 List<PartChecksum> partChecksums) {
+        // MD5 checksums are part of the ETags already
+        List<PartETag> partETags = new ArrayList<>(uploadedParts.size());
+        for (UploadedPart uploadedPart : uploadedParts) {
+            partETags.add(new PartETag(uploadedPart.getPartNumber(), uploadedPart.getETag()));
+        }
+        return s3Client.completeMultipartUpload(new CompleteMultipartUploadRequest(bucketName, key, uploadId, partETags)).getETag();
+    }
+
+    @Override
+    public void abortUpload(String bucketName, String key, String uploadId) {
+        s3Client.abortMultipartUpload(new AbortMultipartUploadRequest(bucketName, key, uploadId));
+    }
+
+    @Override
+    public List<ListedPart> listParts(String bucketName, String key, String uploadId) {
+        List<ListedPart> parts = new ArrayList<>();
+        ListPartsRequest listPartsRequest = new ListPartsRequest(bucketName, key, uploadId);
+        PartListing partListing;
+        try {
+            do {
+                partListing = s3Client.listParts(listPartsRequest);
+                for (PartSummary part : partListing.getParts()) {
+                    parts.add(new ListedPart(part.getPartNumber(), part.getSize(), part.getETag()));
+                }
+                listPartsRequest.setPartNumberMarker(partListing.getNextPartNumberMarker());
+            } while (partListing.isTruncated());
+        } catch (AmazonServiceException e) {
+            if (e.getStatusCode() == 404) {
+                return null;
+            }
+            throw e;
+        }
+        return parts;
+    }
+
+    @Override
+    public String putObject(String bucketName, String key, PartPayload payload, PartChecksum checksum) {
+        ObjectMetadata objectMetadata = getObjectMetadata();
+        objectMetadata.setContentLength(payload.size());
+        if (checksum != null) {
+            requireMd5(checksum.getAlgorithm());
+            objectMetadata.setContentMD5(checksum.getValue());
+        }
+        PutObjectRequest putRequest = new PutObjectRequest(bucketName, key, payload.newInputStream(), objectMetadata)
+                .withTagging(getObjectTagging());
+        return s3Client.putObject(putRequest).getETag();
+    }
+
+    private static void requireMd5(PartChecksum.Algorithm checksumAlgorithm) {
+        if (checksumAlgorithm != null && checksumAlgorithm != PartChecksum.Algorithm.MD5) {
+            throw new IllegalArgumentException(String.format(
+                    "The SDK v1 client can't send %s checksums, use MD5 or the SDK v2 client", checksumAlgorithm));
+        }
+    }
+
+    private ObjectTagging getObjectTagging() {
+        // create tags list for uploading file
+        return new ObjectTagging(new ArrayList<>());
+    }
+
+    private ObjectMetadata getObjectMetadata() {
+        // create metadata for uploading file
+        ObjectMetadata objectMetadata = new ObjectMetadata();
+        objectMetadata.setContentType("application/zip");
+        return objectMetadata;
+    }
+}
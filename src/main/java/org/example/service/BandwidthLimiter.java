@@ -0,0 +1,92 @@
+package org.example.service;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Token bucket capping the bytes per second sent by the uploads sharing it.
+ * <p>
+ * The bucket is kept as the time at which it would be full again (generic cell rate algorithm): taking tokens
+ * moves that time forward by one compare-and-set, and a caller running ahead of the rate by more than the burst
+ * sleeps off the difference, or is told how long to wait when it can't block. Nothing is locked, and the bytes are
+ * accounted in chunks by {@link RateLimitedPayload}, never one by one.
+ */
+public class BandwidthLimiter {
+    // allow bursts of a tenth of a second of traffic, but never less than a chunk of a part stream
+    private static final long MIN_BURST_BYTES = 256 * 1024;
+
+    private static final BandwidthLimiter SHARED = new BandwidthLimiter(0);
+
+    private final AtomicLong theoreticalArrivalNanos = new AtomicLong(System.nanoTime());
+
+    private volatile long bytesPerSecond;
+    private volatile long burstBytes;
+
+    /**
+     * @param bytesPerSecond sustained rate, 0 for unlimited
+     */
+    public BandwidthLimiter(long bytesPerSecond) {
+        setBytesPerSecond(bytesPerSecond);
+    }
+
+    /**
+     * Process wide limiter, used by uploads which are not given one of their own. It is unlimited until
+     * {@link #setBytesPerSecond(long)} is called.
+     */
+    public static BandwidthLimiter shared() {
+        return SHARED;
+    }
+
+    public long getBytesPerSecond() {
+        return bytesPerSecond;
+    }
+
+    /**
+     * Changes the sustained rate, 0 for unlimited. Bursts of a tenth of a second are let through.
+     */
+    public void setBytesPerSecond(long bytesPerSecond) {
+        if (bytesPerSecond < 0) {
+            throw new IllegalArgumentException("bytesPerSecond should not be negative");
+        }
+        this.burstBytes = Math.max(MIN_BURST_BYTES, bytesPerSecond / 10);
+        this.bytesPerSecond = bytesPerSecond;
+    }
+
+    public boolean isUnlimited() {
+        return bytesPerSecond == 0;
+    }
+
+    /**
+     * Takes tokens for the given bytes, waiting as long as the rate requires.
+     */
+    public void acquire(long bytes) throws InterruptedException {
+        long waitNanos = reserve(bytes);
+        if (waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+
+    /**
+     * Takes tokens for the given bytes without waiting, for callers which can't block a thread.
+     *
+     * @return nanoseconds to wait before sending the bytes, 0 if they can be sent right away
+     */
+    long reserve(long bytes) {
+        long rate = bytesPerSecond;
+        if (rate == 0 || bytes <= 0) {
+            return 0;
+        }
+        long costNanos = (long) (bytes * 1e9 / rate);
+        long toleranceNanos = (long) (burstBytes * 1e9 / rate);
+        long now = System.nanoTime();
+        long previous;
+        long next;
+        do {
+            previous = theoreticalArrivalNanos.get();
+            // an idle bucket refills up to the burst, not beyond
+            next = (previous - now < 0 ? now : previous) + costNanos;
+        } while (!theoreticalArrivalNanos.compareAndSet(previous, next));
+
+        return Math.max(0, next - toleranceNanos - now);
+    }
+}
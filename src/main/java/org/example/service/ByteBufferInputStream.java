@@ -0,0 +1,115 @@
+package org.example.service;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * InputStream reading the remaining bytes of a sequence of ByteBuffers without copying them to the heap first.
+ * <p>
+ * Like {@link java.io.ByteArrayInputStream} the mark never becomes invalid, whatever read limit is given,
+ * so the S3 client can always reset the stream to retry a failed part request.
+ */
+public class ByteBufferInputStream extends InputStream {
+    private final ByteBuffer[] buffers;
+    private final int[] startPositions;
+    private int current;
+    private int markBuffer;
+    private int markPosition;
+
+    /**
+     * The stream works on a duplicate, position and limit of the given buffer are left untouched.
+     */
+    public ByteBufferInputStream(ByteBuffer buffer) {
+        this(List.of(buffer));
+    }
+
+    /**
+     * Reads the buffers one after the other, working on duplicates of them.
+     */
+    public ByteBufferInputStream(List<ByteBuffer> buffers) {
+        this.buffers = new ByteBuffer[buffers.size()];
+        this.startPositions = new int[buffers.size()];
+        for (int i = 0; i < this.buffers.length; i++) {
+            this.buffers[i] = buffers.get(i).duplicate();
+            this.startPositions[i] = this.buffers[i].position();
+        }
+        this.markPosition = this.buffers.length > 0 ? this.buffers[0].position() : 0;
+    }
+
+    @Override
+    public int read() {
+        ByteBuffer buffer = currentBuffer();
+        return buffer != null ? buffer.get() & 0xFF : -1;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) {
+        if ((off | len) < 0 || len > b.length - off) {
+            throw new IndexOutOfBoundsException();
+        }
+        if (len == 0) {
+            return 0;
+        }
+        ByteBuffer buffer = currentBuffer();
+        if (buffer == null) {
+            return -1;
+        }
+        int count = Math.min(len, buffer.remaining());
+        buffer.get(b, off, count);
+        return count;
+    }
+
+    @Override
+    public long skip(long n) {
+        long skipped = 0;
+        ByteBuffer buffer;
+        while (skipped < n && (buffer = currentBuffer()) != null) {
+            int count = (int) Math.min(n - skipped, buffer.remaining());
+            buffer.position(buffer.position() + count);
+            skipped += count;
+        }
+        return skipped;
+    }
+
+    @Override
+    public int available() {
+        long available = 0;
+        for (int i = current; i < buffers.length; i++) {
+            available += buffers[i].remaining();
+        }
+        return (int) Math.min(Integer.MAX_VALUE, available);
+    }
+
+    @Override
+    public boolean markSupported() {
+        return true;
+    }
+
+    @Override
+    public synchronized void mark(int readLimit) {
+        markBuffer = current;
+        markPosition = current < buffers.length ? buffers[current].position() : 0;
+    }
+
+    @Override
+    public synchronized void reset() {
+        for (int i = markBuffer + 1; i < buffers.length && i <= current; i++) {
+            buffers[i].position(startPositions[i]);
+        }
+        current = markBuffer;
+        if (current < buffers.length) {
+            buffers[current].position(markPosition);
+        }
+    }
+
+    /**
+     * Buffer holding the next byte, null at the end of the stream.
+     */
+    private ByteBuffer currentBuffer() {
+        while (current < buffers.length && !buffers[current].hasRemaining()) {
+            current++;
+        }
+        return current < buffers.length ? buffers[current] : null;
+    }
+}
@@ -0,0 +1,202 @@
+package org.example.service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32C;
+
+/**
+ * {@link ObjectSink} storing objects as files under a local directory, {@code root/bucket/key}.
+ * <p>
+ * Every part is written in place at its offset of a temporary file through a shared {@link FileChannel}, so parts
+ * are written concurrently in any order and completing the upload only checks the parts and renames the file.
+ * Meant for benchmarking the whole pipeline without network, and as a fallback to local disks when S3 is degraded.
+ * Uploads in progress are only known to this instance, they can't be resumed after a restart. Checksums are not
+ * checked, the bytes never leave the process.
+ */
+public class FileSystemSink implements ObjectSink {
+    private final Path rootDirectory;
+
+    private final Map<String, LocalUpload> uploads = new ConcurrentHashMap<>();
+
+    public FileSystemSink(Path rootDirectory) {
+        this.rootDirectory = rootDirectory;
+    }
+
+    /**
+     * File the object is stored in once its upload is complete.
+     */
+    public Path getObjectPath(String bucketName, String key) {
+        return rootDirectory.resolve(bucketName).resolve(key);
+    }
+
+    @Override
+    public String initiateUpload(String bucketName, String key, PartChecksum.Algorithm checksumAlgorithm) {
+        String uploadId = UUID.randomUUID().toString();
+        Path objectPath = getObjectPath(bucketName, key);
+        Path uploadPath = objectPath.resolveSibling(objectPath.getFileName() + "." + uploadId + ".upload");
+        try {
+            Files.createDirectories(uploadPath.getParent());
+            FileChannel channel = FileChannel.open(uploadPath, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+            uploads.put(uploadId, new LocalUpload(objectPath, uploadPath, channel));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return uploadId;
+    }
+
+    @Override
+    public CompletableFuture<UploadedPart> uploadPart(String bucketName, String key, String uploadId, int partNumber,
+                                                      long offset, PartPayload payload, PartChecksum checksum,
+                                                      boolean isLastPart) {
+        try {
+            return CompletableFuture.completedFuture(storePart(getUpload(uploadId), partNumber, offset, payload));
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(new UncheckedIOException(e));
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    @Override
+    public String completeUpload(String bucketName, String key, String uploadId, List<UploadedPart> uploadedParts,
+                                 List<PartChecksum> partChecksums) {
+        LocalUpload upload = getUpload(uploadId);
+        // the parts must follow each other without gap, as S3 would assemble them
+        long objectSize = 0;
+        CRC32C partsChecksum = new CRC32C();
+        for (UploadedPart uploadedPart : uploadedParts) {
+            StoredPart storedPart = upload.parts.get(uploadedPart.getPartNumber());
+            if (storedPart == null || !storedPart.part.getETag().equals(uploadedPart.getETag())) {
+                throw new IllegalStateException(String.format("Part %d of upload %s has not been stored", uploadedPart.getPartNumber(), uploadId));
+            }
+            if (storedPart.offset != objectSize) {
+                throw new IllegalStateException(String.format("Part %d of upload %s starts at %d instead of %d",
+                        uploadedPart.getPartNumber(), uploadId, storedPart.offset, objectSize));
+            }
+            objectSize += storedPart.part.getSize();
+            partsChecksum.update(uploadedPart.getETag().getBytes(StandardCharsets.US_ASCII));
+        }
+        try {
+            upload.channel.truncate(objectSize);
+            upload.channel.force(true);
+            upload.channel.close();
+            Files.move(upload.uploadPath, upload.objectPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        uploads.remove(uploadId);
+        // same shape as the ETag S3 gives a multipart object
+        return Long.toHexString(partsChecksum.getValue()) + "-" + uploadedParts.size();
+    }
+
+    @Override
+    public void abortUpload(String bucketName, String key, String uploadId) {
+        LocalUpload upload = uploads.remove(uploadId);
+        if (upload == null) {
+            return;
+        }
+        try {
+            upload.channel.close();
+            Files.deleteIfExists(upload.uploadPath);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public List<ListedPart> listParts(String bucketName, String key, String uploadId) {
+        LocalUpload upload = uploads.get(uploadId);
+        if (upload == null) {
+            return null;
+        }
+        List<ListedPart> parts = new ArrayList<>();
+        for (StoredPart storedPart : upload.parts.values()) {
+            parts.add(storedPart.part);
+        }
+        parts.sort(Comparator.comparingInt(ListedPart::getPartNumber));
+        return parts;
+    }
+
+    @Override
+    public String putObject(String bucketName, String key, PartPayload payload, PartChecksum checksum) {
+        String uploadId = initiateUpload(bucketName, key, null);
+        try {
+            UploadedPart uploadedPart = storePart(getUpload(uploadId), 1, 0, payload);
+            completeUpload(bucketName, key, uploadId, List.of(uploadedPart), null);
+            return uploadedPart.getETag();
+        } catch (IOException e) {
+            abortAfterFailure(bucketName, key, uploadId, e);
+            throw new UncheckedIOException(e);
+        } catch (RuntimeException e) {
+            // a payload failing to be read, or a failed completion, must not leave the temp file behind either
+            abortAfterFailure(bucketName, key, uploadId, e);
+            throw e;
+        }
+    }
+
+    private void abortAfterFailure(String bucketName, String key, String uploadId, Exception failure) {
+        try {
+            abortUpload(bucketName, key, uploadId);
+        } catch (RuntimeException e) {
+            failure.addSuppressed(e);
+        }
+    }
+
+    private static UploadedPart storePart(LocalUpload upload, int partNumber, long offset, PartPayload payload) throws IOException {
+        long position = offset;
+        for (ByteBuffer buffer : payload.byteBuffers()) {
+            while (buffer.hasRemaining()) {
+                position += upload.channel.write(buffer, position);
+            }
+        }
+
+        ListedPart part = new ListedPart(partNumber, payload.size(), Long.toHexString(PartJournal.crc32c(payload)));
+        upload.parts.put(partNumber, new StoredPart(part, offset));
+        return new UploadedPart(partNumber, part.getETag());
+    }
+
+    private LocalUpload getUpload(String uploadId) {
+        LocalUpload upload = uploads.get(uploadId);
+        if (upload == null) {
+            throw new IllegalStateException(String.format("Upload %s does not exist", uploadId));
+        }
+        return upload;
+    }
+
+    private static final class LocalUpload {
+        private final Path objectPath;
+        private final Path uploadPath;
+        private final FileChannel channel;
+        private final Map<Integer, StoredPart> parts = new ConcurrentHashMap<>();
+
+        private LocalUpload(Path objectPath, Path uploadPath, FileChannel channel) {
+            this.objectPath = objectPath;
+            this.uploadPath = uploadPath;
+            this.channel = channel;
+        }
+    }
+
+    private static final class StoredPart {
+        private final ListedPart part;
+        private final long offset;
+
+        private StoredPart(ListedPart part, long offset) {
+            this.part = part;
+            this.offset = offset;
+        }
+    }
+}
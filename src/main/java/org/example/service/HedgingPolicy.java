@@ -0,0 +1,122 @@
+package org.example.service;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * When a part request is slow enough to be sent a second time (hedged).
+ * <p>
+ * A slow S3 front-end holds up the completion of the whole object on one straggling part. Once a part has been
+ * in flight for longer than a percentile of the recent part latencies, it is sent again from its retained payload
+ * on another slot, and whichever request answers first is kept. Both requests carry the same bytes under the same
+ * part number, so S3 stores the same part whichever of them lands last.
+ * <p>
+ * Latencies are kept from the last {@value #SAMPLES} parts uploaded with the policy, it can be shared by uploads
+ * whose parts are alike. Parts larger than the typical one wait proportionally longer before being hedged.
+ */
+public class HedgingPolicy {
+    private static final int SAMPLES = 256;
+
+    private double percentile = 0.95;
+
+    private int minSamples = 20;
+
+    private long minDelayMillis = 50;
+
+    // ring buffers of the last latencies and the size of their part
+    private final long[] latencyNanos = new long[SAMPLES];
+    private final long[] partBytes = new long[SAMPLES];
+    private int sampleCount;
+    private int nextSample;
+
+    private final AtomicLong hedgedParts = new AtomicLong();
+    private final AtomicLong hedgeWins = new AtomicLong();
+
+    public double getPercentile() {
+        return percentile;
+    }
+
+    /**
+     * Percentile of the recent part latencies after which a part is hedged, 0.95 by default. The higher it is,
+     * the fewer extra requests, and the longer a straggler holds up its object.
+     */
+    public void setPercentile(double percentile) {
+        if (percentile <= 0 || percentile > 1) {
+            throw new IllegalArgumentException("percentile should be within (0, 1]");
+        }
+        this.percentile = percentile;
+    }
+
+    public int getMinSamples() {
+        return minSamples;
+    }
+
+    /**
+     * Number of latencies measured before any part is hedged.
+     */
+    public void setMinSamples(int minSamples) {
+        this.minSamples = Math.max(1, Math.min(SAMPLES, minSamples));
+    }
+
+    public long getMinDelayMillis() {
+        return minDelayMillis;
+    }
+
+    /**
+     * A part is never hedged before it has been in flight for this long, however fast the parts usually are.
+     */
+    public void setMinDelayMillis(long minDelayMillis) {
+        this.minDelayMillis = minDelayMillis;
+    }
+
+    /**
+     * Number of parts which have been sent a second time.
+     */
+    public long getHedgedParts() {
+        return hedgedParts.get();
+    }
+
+    /**
+     * Number of hedged parts whose second request answered first.
+     */
+    public long getHedgeWins() {
+        return hedgeWins.get();
+    }
+
+    /**
+     * Records the latency of a successful part request.
+     */
+    public synchronized void recordPart(long bytes, long elapsedNanos) {
+        latencyNanos[nextSample] = elapsedNanos;
+        partBytes[nextSample] = bytes;
+        nextSample = (nextSample + 1) % SAMPLES;
+        sampleCount = Math.min(SAMPLES, sampleCount + 1);
+    }
+
+    /**
+     * Time after which a part of the given size still in flight is hedged, -1 while too few latencies are known.
+     */
+    public synchronized long hedgeDelayNanos(long bytes) {
+        if (sampleCount < minSamples) {
+            return -1;
+        }
+        long[] latencies = Arrays.copyOf(latencyNanos, sampleCount);
+        long[] sizes = Arrays.copyOf(partBytes, sampleCount);
+        Arrays.sort(latencies);
+        Arrays.sort(sizes);
+        long delayNanos = latencies[(int) Math.ceil(percentile * sampleCount) - 1];
+        long typicalBytes = sizes[sampleCount / 2];
+        if (bytes > typicalBytes && typicalBytes > 0) {
+            delayNanos = (long) (delayNanos * ((double) bytes / typicalBytes));
+        }
+        return Math.max(delayNanos, minDelayMillis * 1_000_000);
+    }
+
+    void recordHedge() {
+        hedgedParts.incrementAndGet();
+    }
+
+    void recordHedgeWin() {
+        hedgeWins.incrementAndGet();
+    }
+}
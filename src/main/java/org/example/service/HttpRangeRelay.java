@@ -0,0 +1,303 @@
+package org.example.service;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Copies a file served over HTTP to an {@link ObjectSink} in a single pass, without downloading it first.
+ * <p>
+ * When the server announces the length of the file and accepts range requests, every part of the upload is
+ * a range of the file: the part request reads its range straight from a {@code Range} GET of its own, so the
+ * ranges are fetched in parallel by the scheduler, as many at once as there are part requests in flight, and
+ * nothing is buffered beyond what the sink needs to send a part. A failed part request fetches its range again.
+ * The ranges are tied to the version of the file first seen with {@code If-Range}, a file changing during the
+ * copy fails the upload instead of mixing two versions.
+ * <p>
+ * A part checksum is sent ahead of its part, so with a checksum algorithm every range is fetched twice: once to
+ * compute its checksum, once to send it. A relay can't be journaled, a journal would fetch every range once
+ * more to match it with the stored parts.
+ * <p>
+ * Other servers are read as one stream, cut into parts as it arrives.
+ */
+public class HttpRangeRelay {
+    private final ObjectSink objectSink;
+    private final S3MultipartUploadConfig uploadConfig;
+
+    private int connectTimeoutMillis = 10_000;
+
+    private int readTimeoutMillis = 60_000;
+
+    public HttpRangeRelay(ObjectSink objectSink, S3MultipartUploadConfig uploadConfig) {
+        this.objectSink = objectSink;
+        this.uploadConfig = uploadConfig;
+    }
+
+    public int getConnectTimeoutMillis() {
+        return connectTimeoutMillis;
+    }
+
+    public void setConnectTimeoutMillis(int connectTimeoutMillis) {
+        this.connectTimeoutMillis = connectTimeoutMillis;
+    }
+
+    public int getReadTimeoutMillis() {
+        return readTimeoutMillis;
+    }
+
+    /**
+     * Longest wait for the next bytes of the source, after which the part request fails and is retried.
+     */
+    public void setReadTimeoutMillis(int readTimeoutMillis) {
+        this.readTimeoutMillis = readTimeoutMillis;
+    }
+
+    /**
+     * Copies the file at the given URL to the given object, and waits for the upload to complete.
+     *
+     * @throws IOException if the file can't be reached
+     * @throws IllegalArgumentException if the upload config has a journal path
+     */
+    public UploadResult relay(URL source, String destBucketName, String key) throws IOException {
+        if (uploadConfig.getJournalPath() != null) {
+            throw new IllegalArgumentException("A relay can't be journaled, the journal would fetch every range once more");
+        }
+        HttpURLConnection connection = openConnection(source);
+        long contentLength;
+        String validator;
+        boolean acceptsRanges;
+        try {
+            connection.setRequestMethod("HEAD");
+            int status = connection.getResponseCode();
+            if (status != HttpURLConnection.HTTP_OK) {
+                throw new IOException(String.format("HEAD %s answered %d", source, status));
+            }
+            contentLength = connection.getContentLengthLong();
+            acceptsRanges = "bytes".equalsIgnoreCase(connection.getHeaderField("Accept-Ranges"));
+            // a strong ETag identifies the version of the file best, the date of its last change does otherwise
+            String eTag = connection.getHeaderField("ETag");
+            validator = eTag != null && !eTag.startsWith("W/") ? eTag : connection.getHeaderField("Last-Modified");
+        } finally {
+            connection.disconnect();
+        }
+
+        S3MultipartUpload multipartUpload = new S3MultipartUpload(destBucketName, key, objectSink, uploadConfig);
+        if (contentLength < 0 || !acceptsRanges) {
+            System.out.println(String.format("%s does not serve ranges of a known length, relaying it as a stream", source));
+            return relayStream(source, multipartUpload);
+        }
+        if (multipartUpload.isSingleRequestEnabled() && multipartUpload.isSingleRequestSize(contentLength)) {
+            return multipartUpload.uploadSingleRequest(new RangePayload(source, 0, contentLength, validator));
+        }
+
+        multipartUpload.initializeUpload();
+        long partSize = PartSizePolicy.fixedPartSize(contentLength, uploadConfig.getPartSize());
+        System.out.println(String.format("Relaying %d bytes of %s in ranges of %d bytes", contentLength, source, partSize));
+        try {
+            long offset = 0;
+            for (; contentLength - offset > partSize; offset += partSize) {
+                multipartUpload.uploadPartAsync(new RangePayload(source, offset, partSize, validator));
+            }
+            return multipartUpload.uploadFinalPartAsync(new RangePayload(source, offset, contentLength - offset, validator))
+                    .join();
+        } catch (CompletionException e) {
+            // the upload has already been aborted by its failed part
+            throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+        } catch (RuntimeException e) {
+            multipartUpload.abortUpload();
+            throw e;
+        }
+    }
+
+    private UploadResult relayStream(URL source, S3MultipartUpload multipartUpload) throws IOException {
+        HttpURLConnection connection = openConnection(source);
+        S3MultipartOutputStream outputStream = new S3MultipartOutputStream(multipartUpload);
+        try (InputStream inputStream = connection.getInputStream()) {
+            inputStream.transferTo(outputStream);
+            return outputStream.closeAsync().join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+        } catch (IOException | RuntimeException e) {
+            outputStream.abort();
+            throw e;
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    private HttpURLConnection openConnection(URL source) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) source.openConnection();
+        connection.setConnectTimeout(connectTimeoutMillis);
+        connection.setReadTimeout(readTimeoutMillis);
+        return connection;
+    }
+
+    /**
+     * Range of the source file, read by a new range request every time the part is read. Rewinding its stream
+     * fetches the range again from the mark, so the part can be read again whichever way a client retries it.
+     * <p>
+     * Its checksum and buffers are read from a range request of their own as well, nothing is kept between reads.
+     */
+    private final class RangePayload implements PartPayload {
+        private final URL source;
+        private final long offset;
+        private final long size;
+        private final String validator;
+
+        private RangePayload(URL source, long offset, long size, String validator) {
+            this.source = source;
+            this.offset = offset;
+            this.size = size;
+            this.validator = validator;
+        }
+
+        @Override
+        public long size() {
+            return size;
+        }
+
+        @Override
+        public InputStream newInputStream() {
+            try {
+                return new RangeInputStream(this);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public void release() {
+            // nothing is held between two reads of the range
+        }
+
+        /**
+         * Fetches the range from the given position within it to its end.
+         */
+        private InputStream fetch(long position) throws IOException {
+            if (position >= size) {
+                return new ByteArrayInputStream(new byte[0]);
+            }
+            long firstByte = offset + position;
+            long lastByte = offset + size - 1;
+            HttpURLConnection connection = openConnection(source);
+            connection.setRequestProperty("Range", String.format("bytes=%d-%d", firstByte, lastByte));
+            if (validator != null) {
+                connection.setRequestProperty("If-Range", validator);
+            }
+            int status = connection.getResponseCode();
+            String contentRange = connection.getHeaderField("Content-Range");
+            if (status == HttpURLConnection.HTTP_OK) {
+                connection.disconnect();
+                throw new IllegalStateException(String.format("%s has changed during the relay", source));
+            }
+            if (status != HttpURLConnection.HTTP_PARTIAL || contentRange == null
+                    || !contentRange.startsWith(String.format("bytes %d-%d/", firstByte, lastByte))) {
+                connection.disconnect();
+                throw new IOException(String.format("Range %d-%d of %s answered %d %s", firstByte, lastByte, source,
+                        status, contentRange));
+            }
+            return connection.getInputStream();
+        }
+    }
+
+    /**
+     * Stream over a range, whose mark never becomes invalid: a reset drops the response being read and the next
+     * read fetches the rest of the range from the mark.
+     */
+    private static final class RangeInputStream extends InputStream {
+        private final RangePayload range;
+        // response of the range from the position on, null once it has been dropped by a reset
+        private InputStream body;
+        private long position;
+        private long markPosition;
+
+        private RangeInputStream(RangePayload range) throws IOException {
+            this.range = range;
+            this.body = range.fetch(0);
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            int bytesRead;
+            do {
+                bytesRead = read(b, 0, 1);
+            } while (bytesRead == 0);
+            return bytesRead == -1 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if ((off | len) < 0 || len > b.length - off) {
+                throw new IndexOutOfBoundsException();
+            }
+            if (len == 0) {
+                return 0;
+            }
+            if (position >= range.size) {
+                return -1;
+            }
+            if (body == null) {
+                body = range.fetch(position);
+            }
+            int bytesRead = body.read(b, off, (int) Math.min(len, range.size - position));
+            if (bytesRead < 0) {
+                throw new EOFException(String.format("Range of %s ended %d bytes early", range.source,
+                        range.size - position));
+            }
+            position += bytesRead;
+            return bytesRead;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long count = Math.max(0, Math.min(n, range.size - position));
+            if (body != null) {
+                count = body.skip(count);
+            }
+            position += count;
+            return count;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return body != null ? body.available() : 0;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return true;
+        }
+
+        @Override
+        public void mark(int readlimit) {
+            markPosition = position;
+        }
+
+        @Override
+        public void reset() throws IOException {
+            if (position != markPosition) {
+                closeBody();
+                position = markPosition;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            closeBody();
+        }
+
+        private void closeBody() throws IOException {
+            if (body != null) {
+                InputStream droppedBody = body;
+                body = null;
+                droppedBody.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package org.example.service;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Caps the number of parts and the number of bytes which have been handed to the uploader but not yet
+ * acknowledged by S3. Producers block in {@link #acquire(long)} until enough earlier parts have finished.
+ */
+final class InFlightLimiter {
+    private final int maxParts;
+    private final long maxBytes;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition released = lock.newCondition();
+
+    private int parts;
+    private long bytes;
+
+    InFlightLimiter(int maxParts, long maxBytes) {
+        if (maxParts < 1) {
+            throw new IllegalArgumentException("maxInFlightParts should be at least 1");
+        }
+        if (maxBytes < 1) {
+            throw new IllegalArgumentException("maxInFlightBytes should be at least 1");
+        }
+        this.maxParts = maxParts;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Blocks until a part of {@code partBytes} bytes fits into the limits.
+     */
+    void acquire(long partBytes) throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (!fits(partBytes)) {
+                released.await();
+            }
+            take(partBytes);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Waits at most {@code timeout} for a part of {@code partBytes} bytes to fit into the limits.
+     *
+     * @return false if no slot was freed in time, nothing has been acquired in that case
+     */
+    boolean tryAcquire(long partBytes, long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            while (!fits(partBytes)) {
+                if (nanos <= 0) {
+                    return false;
+                }
+                nanos = released.awaitNanos(nanos);
+            }
+            take(partBytes);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void release(long partBytes) {
+        lock.lock();
+        try {
+            parts--;
+            bytes -= partBytes;
+            released.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean fits(long partBytes) {
+        // a single part larger than maxBytes is still let through once nothing else is in flight
+        return parts < maxParts && (parts == 0 || bytes + partBytes <= maxBytes);
+    }
+
+    private void take(long partBytes) {
+        parts++;
+        bytes += partBytes;
+    }
+}
@@ -0,0 +1,133 @@
+package org.example.service;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32C;
+
+/**
+ * {@link ObjectSink} keeping objects in memory, for load tests and checks of what an upload produced.
+ * Parts and objects are copied to heap arrays, so an object can't be larger than 2 GB. Parts and objects sent
+ * with a checksum are checked against it, like S3 does.
+ */
+public class InMemorySink implements ObjectSink {
+    private final Map<String, Map<Integer, byte[]>> uploads = new ConcurrentHashMap<>();
+    private final Map<String, byte[]> objects = new ConcurrentHashMap<>();
+
+    /**
+     * Bytes of a completed object, null if there is none.
+     */
+    public byte[] getObject(String bucketName, String key) {
+        return objects.get(objectKey(bucketName, key));
+    }
+
+    @Override
+    public String initiateUpload(String bucketName, String key, PartChecksum.Algorithm checksumAlgorithm) {
+        String uploadId = UUID.randomUUID().toString();
+        uploads.put(uploadId, new ConcurrentHashMap<>());
+        return uploadId;
+    }
+
+    @Override
+    public CompletableFuture<UploadedPart> uploadPart(String bucketName, String key, String uploadId, int partNumber,
+                                                      long offset, PartPayload payload, PartChecksum checksum,
+                                                      boolean isLastPart) {
+        try {
+            checkIntegrity(payload, checksum);
+            byte[] part = toByteArray(payload);
+            getUpload(uploadId).put(partNumber, part);
+            return CompletableFuture.completedFuture(new UploadedPart(partNumber, eTag(part)));
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    @Override
+    public String completeUpload(String bucketName, String key, String uploadId, List<UploadedPart> uploadedParts,
+                                 List<PartChecksum> partChecksums) {
+        Map<Integer, byte[]> parts = getUpload(uploadId);
+        ByteArrayOutputStream object = new ByteArrayOutputStream();
+        for (UploadedPart uploadedPart : uploadedParts) {
+            byte[] part = parts.get(uploadedPart.getPartNumber());
+            if (part == null) {
+                throw new IllegalStateException(String.format("Part %d of upload %s has not been stored", uploadedPart.getPartNumber(), uploadId));
+            }
+            object.write(part, 0, part.length);
+        }
+        byte[] objectBytes = object.toByteArray();
+        objects.put(objectKey(bucketName, key), objectBytes);
+        uploads.remove(uploadId);
+        return eTag(objectBytes);
+    }
+
+    @Override
+    public void abortUpload(String bucketName, String key, String uploadId) {
+        uploads.remove(uploadId);
+    }
+
+    @Override
+    public List<ListedPart> listParts(String bucketName, String key, String uploadId) {
+        Map<Integer, byte[]> parts = uploads.get(uploadId);
+        if (parts == null) {
+            return null;
+        }
+        List<ListedPart> listedParts = new ArrayList<>();
+        for (Map.Entry<Integer, byte[]> part : parts.entrySet()) {
+            listedParts.add(new ListedPart(part.getKey(), part.getValue().length, eTag(part.getValue())));
+        }
+        listedParts.sort(Comparator.comparingInt(ListedPart::getPartNumber));
+        return listedParts;
+    }
+
+    @Override
+    public String putObject(String bucketName, String key, PartPayload payload, PartChecksum checksum) {
+        checkIntegrity(payload, checksum);
+        byte[] objectBytes = toByteArray(payload);
+        objects.put(objectKey(bucketName, key), objectBytes);
+        return eTag(objectBytes);
+    }
+
+    private static void checkIntegrity(PartPayload payload, PartChecksum checksum) {
+        if (checksum != null && !checksum.matches(payload)) {
+            throw new IllegalArgumentException(String.format("BadDigest: the bytes received don't match %s", checksum));
+        }
+    }
+
+    private Map<Integer, byte[]> getUpload(String uploadId) {
+        Map<Integer, byte[]> parts = uploads.get(uploadId);
+        if (parts == null) {
+            throw new IllegalStateException(String.format("Upload %s does not exist", uploadId));
+        }
+        return parts;
+    }
+
+    private static byte[] toByteArray(PartPayload payload) {
+        if (payload.size() > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Part is too large to be kept in memory: " + payload.size());
+        }
+        byte[] bytes = new byte[(int) payload.size()];
+        int position = 0;
+        for (ByteBuffer buffer : payload.byteBuffers()) {
+            int length = buffer.remaining();
+            buffer.get(bytes, position, length);
+            position += length;
+        }
+        return bytes;
+    }
+
+    private static String eTag(byte[] part) {
+        CRC32C crc32c = new CRC32C();
+        crc32c.update(part);
+        return Long.toHexString(crc32c.getValue());
+    }
+
+    private static String objectKey(String bucketName, String key) {
+        return bucketName + "/" + key;
+    }
+}
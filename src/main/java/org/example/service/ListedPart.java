@@ -0,0 +1,36 @@
+package org.example.service;
+
+/**
+ * A part stored for an upload, as {@link ObjectSink#listParts} lists it.
+ */
+public final class ListedPart {
+    private final int partNumber;
+    private final long size;
+    private final String eTag;
+
+    public ListedPart(int partNumber, long size, String eTag) {
+        this.partNumber = partNumber;
+        this.size = size;
+        this.eTag = eTag;
+    }
+
+    public int getPartNumber() {
+        return partNumber;
+    }
+
+    /**
+     * Number of bytes of the part.
+     */
+    public long getSize() {
+        return size;
+    }
+
+    public String getETag() {
+        return eTag;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("part %d (%d bytes, ETag %s)", partNumber, size, eTag);
+    }
+}
@@ -0,0 +1,72 @@
+package org.example.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.Checksum;
+
+/**
+ * Part read straight from a memory-mapped range of a local file, nothing is copied to the heap.
+ * <p>
+ * A single mapping can't exceed 2 GB, so larger parts span several mappings. Mappings stay valid once the channel
+ * is closed, they go away with the payload. The file must neither change nor shrink while it is uploaded.
+ */
+final class MappedFilePayload implements PartPayload {
+    private static final long MAX_MAPPING_SIZE = 1L << 30;
+
+    private final long size;
+    private final List<MappedByteBuffer> mappings;
+
+    MappedFilePayload(FileChannel channel, long offset, long size) throws IOException {
+        this.size = size;
+        this.mappings = new ArrayList<>();
+        for (long mapped = 0; mapped < size; ) {
+            long mappingSize = Math.min(MAX_MAPPING_SIZE, size - mapped);
+            mappings.add(channel.map(FileChannel.MapMode.READ_ONLY, offset + mapped, mappingSize));
+            mapped += mappingSize;
+        }
+    }
+
+    @Override
+    public long size() {
+        return size;
+    }
+
+    @Override
+    public InputStream newInputStream() {
+        return new ByteBufferInputStream(new ArrayList<ByteBuffer>(mappings));
+    }
+
+    @Override
+    public ByteBuffer[] byteBuffers() {
+        ByteBuffer[] buffers = new ByteBuffer[mappings.size()];
+        for (int i = 0; i < buffers.length; i++) {
+            buffers[i] = mappings.get(i).asReadOnlyBuffer();
+        }
+        return buffers;
+    }
+
+    @Override
+    public void updateChecksum(Checksum checksum) {
+        for (ByteBuffer mapping : mappings) {
+            checksum.update(mapping.duplicate());
+        }
+    }
+
+    @Override
+    public void updateDigest(MessageDigest digest) {
+        for (ByteBuffer mapping : mappings) {
+            digest.update(mapping.duplicate());
+        }
+    }
+
+    @Override
+    public void release() {
+        // unmapped once unreachable
+    }
+}
@@ -0,0 +1,67 @@
+package org.example.service;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Where a {@link S3MultipartUpload} stores its object: the multipart API it drives, whatever client or storage
+ * is behind it.
+ * <p>
+ * Parts are sent through {@link #uploadPart}, which returns as soon as the request has been started. A blocking
+ * client sends the part on the calling scheduler thread and returns a completed future, a non-blocking client
+ * returns right away and completes the future from its own I/O threads. The other requests are made once per
+ * upload and are blocking, the upload never makes them from a thread which has completed a part, so a client may
+ * deliver their answers on its I/O threads.
+ */
+public interface ObjectSink {
+
+    /**
+     * Starts a multipart upload of the object.
+     *
+     * @param checksumAlgorithm checksum every part of the upload is sent with, null for none
+     * @return the id of the upload
+     */
+    String initiateUpload(String bucketName, String key, PartChecksum.Algorithm checksumAlgorithm);
+
+    /**
+     * Sends one part of an upload. The payload stays readable until the returned future is done.
+     *
+     * @param offset   position of the first byte of the part within the object, S3 has no use for it but a sink
+     *                 writing the object in place does
+     * @param checksum checksum of the part, which the storage checks the part against, null for none
+     * @return the stored part, or the failure of the request. A non-blocking client aborts the request
+     * when the future is cancelled, a blocking one gives up as soon as a read of the payload fails with a
+     * {@link java.util.concurrent.CancellationException}.
+     */
+    CompletableFuture<UploadedPart> uploadPart(String bucketName, String key, String uploadId, int partNumber, long offset,
+                                               PartPayload payload, PartChecksum checksum, boolean isLastPart);
+
+    /**
+     * Assembles the parts, given in ascending part number order, into the object.
+     *
+     * @param partChecksums checksums the parts were sent with, in the same order, null for none
+     * @return the ETag of the object
+     */
+    String completeUpload(String bucketName, String key, String uploadId, List<UploadedPart> uploadedParts,
+                          List<PartChecksum> partChecksums);
+
+    /**
+     * Discards an upload and the parts stored for it.
+     */
+    void abortUpload(String bucketName, String key, String uploadId);
+
+    /**
+     * Parts stored so far for an upload.
+     *
+     * @return the stored parts, or null if the upload no longer exists
+     */
+    List<ListedPart> listParts(String bucketName, String key, String uploadId);
+
+    /**
+     * Stores a whole object with a single request.
+     *
+     * @param checksum checksum of the object, which the storage checks the object against, null for none
+     * @return the ETag of the object
+     */
+    String putObject(String bucketName, String key, PartPayload payload, PartChecksum checksum);
+}
@@ -0,0 +1,163 @@
+package org.example.service;
+
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import software.amazon.awssdk.core.async.AsyncRequestBody;
+
+import java.nio.ByteBuffer;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Request body of a rate limited part for the non-blocking client: the part is published in chunks of
+ * {@value RateLimitedPayload#CHUNK_SIZE} bytes as the client asks for them, each chunk paid for when it is due. A
+ * chunk running ahead of the rate is published later from a timer, so neither the scheduler threads nor the
+ * client threads ever sleep, and the client never gets more than a burst of the part at line rate.
+ * <p>
+ * The buffers of the part are published without copying. Every subscription starts from the first byte and pays
+ * again, like every read of a {@link RateLimitedPayload}.
+ */
+final class PacedRequestBody implements AsyncRequestBody {
+    private static final ScheduledExecutorService PACER = Executors.newSingleThreadScheduledExecutor(new PacerThreadFactory());
+
+    private final RateLimitedPayload payload;
+
+    PacedRequestBody(RateLimitedPayload payload) {
+        this.payload = payload;
+    }
+
+    @Override
+    public Optional<Long> contentLength() {
+        return Optional.of(payload.size());
+    }
+
+    @Override
+    public void subscribe(Subscriber<? super ByteBuffer> subscriber) {
+        ByteBuffer[] buffers;
+        try {
+            buffers = payload.unpaidByteBuffers();
+        } catch (RuntimeException e) {
+            subscriber.onSubscribe(new CancelledSubscription());
+            subscriber.onError(e);
+            return;
+        }
+        PacedSubscription subscription = new PacedSubscription(subscriber, buffers);
+        subscriber.onSubscribe(subscription);
+        subscription.drain();
+    }
+
+    /**
+     * Publishes the chunks one at a time. Only the thread which got the drain counter from zero publishes, or the
+     * timer once a delayed chunk is due, so the subscriber is never called concurrently.
+     */
+    private final class PacedSubscription implements Subscription {
+        private final Subscriber<? super ByteBuffer> subscriber;
+        private final ByteBuffer[] buffers;
+        private final AtomicLong demand = new AtomicLong();
+        private final AtomicInteger drainRequests = new AtomicInteger();
+
+        // buffer the next chunk is cut from, only touched while draining
+        private int bufferIndex;
+        private boolean completed;
+        // a chunk waits for its turn on the timer, nothing else is published meanwhile
+        private volatile boolean delayed;
+        private volatile boolean cancelled;
+
+        private PacedSubscription(Subscriber<? super ByteBuffer> subscriber, ByteBuffer[] buffers) {
+            this.subscriber = subscriber;
+            this.buffers = buffers;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                cancelled = true;
+                subscriber.onError(new IllegalArgumentException("A subscriber should request a positive number of chunks, not " + n));
+                return;
+            }
+            demand.getAndUpdate(current -> current + n < 0 ? Long.MAX_VALUE : current + n);
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+        }
+
+        private void drain() {
+            if (drainRequests.getAndIncrement() != 0) {
+                return;
+            }
+            int missed = 1;
+            do {
+                while (!cancelled && !delayed && demand.get() > 0 && hasNextChunk()) {
+                    ByteBuffer chunk = nextChunk();
+                    long waitNanos = payload.reserve(chunk.remaining());
+                    if (waitNanos > 0) {
+                        delayed = true;
+                        PACER.schedule(() -> publishDelayed(chunk), waitNanos, TimeUnit.NANOSECONDS);
+                        break;
+                    }
+                    publish(chunk);
+                }
+                if (!cancelled && !delayed && !completed && !hasNextChunk()) {
+                    completed = true;
+                    subscriber.onComplete();
+                }
+                missed = drainRequests.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        private void publishDelayed(ByteBuffer chunk) {
+            if (!cancelled) {
+                publish(chunk);
+            }
+            delayed = false;
+            drain();
+        }
+
+        private void publish(ByteBuffer chunk) {
+            demand.decrementAndGet();
+            subscriber.onNext(chunk);
+        }
+
+        private boolean hasNextChunk() {
+            while (bufferIndex < buffers.length && !buffers[bufferIndex].hasRemaining()) {
+                bufferIndex++;
+            }
+            return bufferIndex < buffers.length;
+        }
+
+        private ByteBuffer nextChunk() {
+            ByteBuffer buffer = buffers[bufferIndex];
+            ByteBuffer chunk = buffer.slice();
+            chunk.limit(Math.min(chunk.remaining(), RateLimitedPayload.CHUNK_SIZE));
+            buffer.position(buffer.position() + chunk.remaining());
+            return chunk;
+        }
+    }
+
+    private static final class CancelledSubscription implements Subscription {
+        @Override
+        public void request(long n) {
+        }
+
+        @Override
+        public void cancel() {
+        }
+    }
+
+    private static final class PacerThreadFactory implements ThreadFactory {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "s3-upload-pacer");
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,282 @@
+package org.example.service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * OutputStream which gzips everything written to it on a pool of compressor threads before handing it to the
+ * next stream, typically a {@link S3MultipartOutputStream}.
+ * <p>
+ * The producer fills blocks of raw bytes, every full block is compressed on its own by a compressor thread into a
+ * complete gzip member, and the members are written downstream in order as they are done. Concatenated members
+ * make one valid gzip file, which {@code gunzip} and {@code GZIPInputStream} read whole, so the producer only ever
+ * copies bytes into a block while the blocks are compressed in parallel. Each block starts with an empty
+ * dictionary, so the output is a little larger than one single-threaded gzip stream; with blocks of a megabyte
+ * the difference is well under a percent on CSV or JSON.
+ * <p>
+ * At most a few blocks per processor wait for their compression, past that the producer waits for the oldest one.
+ * Like the stream it wraps, this stream is meant to be written by a single producer.
+ */
+public class ParallelGzipOutputStream extends OutputStream {
+    private static final int DEFAULT_BLOCK_SIZE = 1024 * 1024;
+
+    private static final ExecutorService SHARED_COMPRESSORS = Executors.newFixedThreadPool(
+            Runtime.getRuntime().availableProcessors(), new CompressorThreadFactory());
+
+    // gzip header: magic, deflate, no flags, no modification time, no extra flags, unknown OS
+    private static final byte[] MEMBER_HEADER = {0x1f, (byte) 0x8b, 8, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+
+    private final OutputStream out;
+    private final ExecutorService compressors;
+    private final int blockSize;
+    private final int level;
+    private final int maxPendingBlocks;
+
+    // members being compressed, in the order of their blocks
+    private final Deque<Future<Member>> pendingMembers = new ArrayDeque<>();
+    // raw blocks whose member has been written, reused for the next blocks
+    private final Deque<byte[]> freeBlocks = new ArrayDeque<>();
+    private byte[] block;
+    private int blockLength;
+    private boolean anyBlock;
+    private boolean closed;
+
+    private long rawBytes;
+    private long compressedBytes;
+
+    /**
+     * Compresses blocks of 1 MB at the default level on the compressor threads shared by the process, one per
+     * processor.
+     */
+    public ParallelGzipOutputStream(OutputStream out) {
+        this(out, SHARED_COMPRESSORS, DEFAULT_BLOCK_SIZE, Deflater.DEFAULT_COMPRESSION);
+    }
+
+    /**
+     * @param compressors runs the compression of the blocks
+     * @param blockSize   raw bytes compressed into one gzip member
+     * @param level       deflate level, from 1 (fastest) to 9 (smallest), 0 to store, or -1 for the default
+     */
+    public ParallelGzipOutputStream(OutputStream out, ExecutorService compressors, int blockSize, int level) {
+        if (blockSize < 1) {
+            throw new IllegalArgumentException("blockSize should be at least 1");
+        }
+        if ((level < 0 || level > 9) && level != Deflater.DEFAULT_COMPRESSION) {
+            throw new IllegalArgumentException("level should be within [0, 9], or -1 for the default");
+        }
+        this.out = out;
+        this.compressors = compressors;
+        this.blockSize = blockSize;
+        this.level = level;
+        this.maxPendingBlocks = 2 * Runtime.getRuntime().availableProcessors() + 1;
+    }
+
+    /**
+     * Number of bytes written to this stream.
+     */
+    public long getRawBytes() {
+        return rawBytes;
+    }
+
+    /**
+     * Number of gzip bytes written to the next stream so far.
+     */
+    public long getCompressedBytes() {
+        return compressedBytes;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        ensureOpen();
+        if (block == null) {
+            block = newBlock();
+        }
+        block[blockLength++] = (byte) b;
+        rawBytes++;
+        if (blockLength == blockSize) {
+            submitBlock();
+        }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        ensureOpen();
+        if ((off | len) < 0 || len > b.length - off) {
+            throw new IndexOutOfBoundsException();
+        }
+        while (len > 0) {
+            if (block == null) {
+                block = newBlock();
+            }
+            int count = Math.min(len, blockSize - blockLength);
+            System.arraycopy(b, off, block, blockLength, count);
+            blockLength += count;
+            rawBytes += count;
+            off += count;
+            len -= count;
+            if (blockLength == blockSize) {
+                submitBlock();
+            }
+        }
+    }
+
+    /**
+     * Writes the members which are compressed already. The block being filled is not cut short, a member per
+     * flush would compress poorly with producers flushing often.
+     */
+    @Override
+    public void flush() throws IOException {
+        ensureOpen();
+        writeMembers(false);
+        out.flush();
+    }
+
+    /**
+     * Compresses the last block, writes every member and closes the next stream. If a block fails to compress,
+     * a {@link S3MultipartOutputStream} is aborted rather than completed with a truncated object.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            if (blockLength > 0 || !anyBlock) {
+                // an empty gzip file still needs one member
+                submitBlock();
+            }
+            writeMembers(true);
+        } catch (IOException | RuntimeException e) {
+            abort();
+            throw e;
+        }
+        out.close();
+    }
+
+    /**
+     * Drops the blocks not written yet, and aborts the next stream if it is a {@link S3MultipartOutputStream}.
+     */
+    public void abort() {
+        closed = true;
+        for (Future<Member> pendingMember : pendingMembers) {
+            pendingMember.cancel(true);
+        }
+        pendingMembers.clear();
+        if (out instanceof S3MultipartOutputStream) {
+            ((S3MultipartOutputStream) out).abort();
+        }
+    }
+
+    private void submitBlock() throws IOException {
+        byte[] rawBlock = block != null ? block : newBlock();
+        int rawLength = blockLength;
+        block = null;
+        blockLength = 0;
+        anyBlock = true;
+        pendingMembers.add(compressors.submit(() -> compress(rawBlock, rawLength)));
+        writeMembers(false);
+    }
+
+    /**
+     * Writes the members done at the head of the queue, every one of them when {@code all} is set, and else at
+     * least enough of them to get back under the number of pending blocks.
+     */
+    private void writeMembers(boolean all) throws IOException {
+        while (!pendingMembers.isEmpty()
+                && (all || pendingMembers.size() > maxPendingBlocks || pendingMembers.peek().isDone())) {
+            Member member;
+            try {
+                member = pendingMembers.peek().get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                InterruptedIOException interruptedIOException = new InterruptedIOException("Interrupted while waiting for a block to be compressed");
+                interruptedIOException.initCause(e);
+                throw interruptedIOException;
+            } catch (ExecutionException e) {
+                throw new IOException("Compression of a block has failed", e.getCause());
+            }
+            pendingMembers.poll();
+            member.compressed.writeTo(out);
+            compressedBytes += member.compressed.size();
+            freeBlocks.push(member.rawBlock);
+        }
+    }
+
+    private byte[] newBlock() {
+        return freeBlocks.isEmpty() ? new byte[blockSize] : freeBlocks.pop();
+    }
+
+    /**
+     * Runs on a compressor thread: deflates the block into a gzip member of its own.
+     */
+    private Member compress(byte[] rawBlock, int rawLength) {
+        // incompressible data grows by a few bytes per 16 KB
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(rawLength / 4 + 64);
+        compressed.write(MEMBER_HEADER, 0, MEMBER_HEADER.length);
+        Deflater deflater = new Deflater(level, true);
+        try {
+            deflater.setInput(rawBlock, 0, rawLength);
+            deflater.finish();
+            byte[] chunk = new byte[64 * 1024];
+            while (!deflater.finished()) {
+                int count = deflater.deflate(chunk);
+                compressed.write(chunk, 0, count);
+            }
+        } finally {
+            deflater.end();
+        }
+        CRC32 crc = new CRC32();
+        crc.update(rawBlock, 0, rawLength);
+        writeIntLittleEndian(compressed, (int) crc.getValue());
+        writeIntLittleEndian(compressed, rawLength);
+        return new Member(rawBlock, compressed);
+    }
+
+    private static void writeIntLittleEndian(ByteArrayOutputStream out, int value) {
+        out.write(value);
+        out.write(value >>> 8);
+        out.write(value >>> 16);
+        out.write(value >>> 24);
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+    }
+
+    private static final class Member {
+        private final byte[] rawBlock;
+        private final ByteArrayOutputStream compressed;
+
+        private Member(byte[] rawBlock, ByteArrayOutputStream compressed) {
+            this.rawBlock = rawBlock;
+            this.compressed = compressed;
+        }
+    }
+
+    private static final class CompressorThreadFactory implements ThreadFactory {
+        private static final AtomicInteger THREAD_NUMBER = new AtomicInteger(0);
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "gzip-compressor-" + THREAD_NUMBER.incrementAndGet());
+            // the shared compressors must not keep the JVM alive once the uploads are done
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
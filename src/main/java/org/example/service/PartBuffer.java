@@ -0,0 +1,139 @@
+package org.example.service;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.Checksum;
+
+/**
+ * Part payload backed by buffers of a {@link PartBufferPool}.
+ * <p>
+ * The producer writes the part in place, then the very same buffers are handed to the uploader, which reads them
+ * through a {@link ByteBufferInputStream} over the written slices. Producer bytes are therefore copied exactly
+ * once, into the pooled buffers. A part larger than the pool buffer size spans several buffers, all reserved when
+ * the part is created and taken from the pool as the part fills up, so filling a part never waits for another
+ * one. Every buffer goes back to the pool when the part is released, with the reserved ones never taken.
+ */
+public class PartBuffer implements PartPayload {
+    private final PartBufferPool pool;
+    private final long partSize;
+    // buffers reserved for the part, taken or not
+    private final int reservedBuffers;
+    private final List<ByteBuffer> buffers = new ArrayList<>();
+    private final AtomicBoolean released = new AtomicBoolean(false);
+
+    private long size;
+
+    /**
+     * Reserves every buffer of the part and takes the first one, blocking until the pool has that many buffers
+     * which are neither in use nor reserved.
+     */
+    PartBuffer(PartBufferPool pool, long partSize) throws InterruptedException {
+        this.pool = pool;
+        this.partSize = partSize;
+        this.reservedBuffers = (int) Math.max(1, (partSize + pool.getBufferSize() - 1) / pool.getBufferSize());
+        pool.reserve(reservedBuffers);
+        try {
+            this.buffers.add(pool.acquireReserved());
+        } catch (InterruptedException e) {
+            pool.cancelReservation(reservedBuffers);
+            throw e;
+        }
+    }
+
+    /**
+     * Writes as many bytes as fit into the part.
+     *
+     * @return the number of bytes written, less than {@code len} once the part is full
+     */
+    public int write(byte[] b, int off, int len) throws InterruptedException {
+        int count = (int) Math.min(len, partSize - size);
+        int written = 0;
+        while (written < count) {
+            ByteBuffer buffer = writableBuffer();
+            int chunk = Math.min(count - written, buffer.remaining());
+            buffer.put(b, off + written, chunk);
+            written += chunk;
+        }
+        size += count;
+        return count;
+    }
+
+    /**
+     * Writes a single byte, the part must not be full.
+     */
+    public void write(int b) throws InterruptedException {
+        writableBuffer().put((byte) b);
+        size++;
+    }
+
+    public boolean isFull() {
+        return size == partSize;
+    }
+
+    /**
+     * Size the part is cut at.
+     */
+    public long capacity() {
+        return partSize;
+    }
+
+    @Override
+    public long size() {
+        return size;
+    }
+
+    @Override
+    public InputStream newInputStream() {
+        List<ByteBuffer> written = new ArrayList<>(buffers.size());
+        for (ByteBuffer buffer : buffers) {
+            written.add(buffer.duplicate().flip());
+        }
+        return new ByteBufferInputStream(written);
+    }
+
+    @Override
+    public ByteBuffer[] byteBuffers() {
+        ByteBuffer[] written = new ByteBuffer[buffers.size()];
+        for (int i = 0; i < written.length; i++) {
+            written[i] = buffers.get(i).duplicate().flip().asReadOnlyBuffer();
+        }
+        return written;
+    }
+
+    @Override
+    public void updateChecksum(Checksum checksum) {
+        for (ByteBuffer buffer : buffers) {
+            checksum.update(buffer.duplicate().flip());
+        }
+    }
+
+    @Override
+    public void updateDigest(MessageDigest digest) {
+        for (ByteBuffer buffer : buffers) {
+            digest.update(buffer.duplicate().flip());
+        }
+    }
+
+    @Override
+    public void release() {
+        if (released.compareAndSet(false, true)) {
+            for (ByteBuffer buffer : buffers) {
+                pool.release(buffer);
+            }
+            pool.cancelReservation(reservedBuffers - buffers.size());
+        }
+    }
+
+    private ByteBuffer writableBuffer() throws InterruptedException {
+        ByteBuffer buffer = buffers.get(buffers.size() - 1);
+        if (!buffer.hasRemaining()) {
+            buffer = pool.acquireReserved();
+            buffers.add(buffer);
+        }
+        return buffer;
+    }
+}
@@ -0,0 +1,122 @@
+package org.example.service;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Fixed size pool of reusable direct part buffers.
+ * <p>
+ * Buffers are allocated off-heap the first time they are needed and are never freed, once {@code maxBuffers}
+ * buffers exist {@link #acquire()} blocks until one is released by an upload. The pool can be shared by many
+ * uploads, its size is then the memory budget of all of them together.
+ * <p>
+ * A part spanning several buffers reserves all of them at once with {@link #reserve(int)} before taking the
+ * first one. Producers taking buffers one at a time as their parts fill up could otherwise each hold part of a
+ * part until the pool is empty, with nothing in flight left to give a buffer back.
+ */
+public class PartBufferPool {
+    private static final int DEFAULT_BUFFER_SIZE = 10 * 1024 * 1024;
+    private static final int DEFAULT_MAX_BUFFERS = 16;
+
+    private static final PartBufferPool DEFAULT_POOL = new PartBufferPool(DEFAULT_BUFFER_SIZE, DEFAULT_MAX_BUFFERS);
+
+    private final int bufferSize;
+    private final int maxBuffers;
+
+    private final BlockingQueue<ByteBuffer> idleBuffers = new LinkedBlockingQueue<>();
+    private final AtomicInteger allocatedBuffers = new AtomicInteger(0);
+    // buffers neither in use nor reserved, handed out first come first served so large parts are not starved
+    private final Semaphore unreservedBuffers;
+
+    public PartBufferPool(int bufferSize, int maxBuffers) {
+        if (bufferSize < 1) {
+            throw new IllegalArgumentException("bufferSize should be at least 1");
+        }
+        if (maxBuffers < 1) {
+            throw new IllegalArgumentException("maxBuffers should be at least 1");
+        }
+        this.bufferSize = bufferSize;
+        this.maxBuffers = maxBuffers;
+        this.unreservedBuffers = new Semaphore(maxBuffers, true);
+    }
+
+    /**
+     * Process wide pool of 10 MB buffers used by uploads which are not given a pool of their own.
+     */
+    public static PartBufferPool defaultPool() {
+        return DEFAULT_POOL;
+    }
+
+    /**
+     * Returns a cleared buffer of {@link #getBufferSize()} bytes, blocks while every buffer is in use.
+     */
+    public ByteBuffer acquire() throws InterruptedException {
+        reserve(1);
+        return acquireReserved();
+    }
+
+    /**
+     * Reserves buffers for the caller, blocks until that many buffers are neither in use nor reserved. The
+     * buffers are then taken with {@link #acquireReserved()}, those which are not taken must be given back with
+     * {@link #cancelReservation(int)}.
+     */
+    public void reserve(int count) throws InterruptedException {
+        if (count > maxBuffers) {
+            throw new IllegalArgumentException(String.format("Can't reserve %d buffers out of a pool of %d", count, maxBuffers));
+        }
+        unreservedBuffers.acquire(count);
+    }
+
+    /**
+     * Returns a cleared buffer out of those reserved by the caller, without waiting for another upload.
+     */
+    public ByteBuffer acquireReserved() throws InterruptedException {
+        ByteBuffer buffer = idleBuffers.poll();
+        if (buffer == null) {
+            buffer = allocateIfAllowed();
+        }
+        if (buffer == null) {
+            // a buffer being given back, the reservation guarantees there is one
+            buffer = idleBuffers.take();
+        }
+        buffer.clear();
+        return buffer;
+    }
+
+    /**
+     * Gives back reserved buffers which have not been taken.
+     */
+    public void cancelReservation(int count) {
+        unreservedBuffers.release(count);
+    }
+
+    /**
+     * Gives a buffer obtained from {@link #acquire()} back to the pool, it must not be used afterwards.
+     */
+    public void release(ByteBuffer buffer) {
+        idleBuffers.offer(buffer);
+        unreservedBuffers.release();
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    public int getMaxBuffers() {
+        return maxBuffers;
+    }
+
+    private ByteBuffer allocateIfAllowed() {
+        int allocated;
+        do {
+            allocated = allocatedBuffers.get();
+            if (allocated >= maxBuffers) {
+                return null;
+            }
+        } while (!allocatedBuffers.compareAndSet(allocated, allocated + 1));
+        return ByteBuffer.allocateDirect(bufferSize);
+    }
+}
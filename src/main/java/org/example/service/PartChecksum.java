@@ -0,0 +1,122 @@
+package org.example.service;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.List;
+import java.util.zip.CRC32C;
+
+/**
+ * Checksum of the bytes of a part, sent along with the part so that S3 rejects a part which does not arrive as it
+ * was produced.
+ * <p>
+ * The checksums of the parts add up to a checksum of the whole object the way S3 computes it for a multipart
+ * object: the checksum of the concatenated part checksums, followed by the number of parts.
+ */
+public final class PartChecksum {
+
+    public enum Algorithm {
+        /**
+         * Cheap enough to be computed at memory speed, sent as {@code x-amz-checksum-crc32c}.
+         */
+        CRC32C,
+        /**
+         * Sent as {@code Content-MD5}, which every client supports, and what the ETag of an object is made of.
+         */
+        MD5
+    }
+
+    private final Algorithm algorithm;
+    private final byte[] digest;
+
+    private PartChecksum(Algorithm algorithm, byte[] digest) {
+        this.algorithm = algorithm;
+        this.digest = digest;
+    }
+
+    /**
+     * Reads the whole payload once to compute its checksum.
+     */
+    public static PartChecksum compute(Algorithm algorithm, PartPayload payload) {
+        if (algorithm == Algorithm.CRC32C) {
+            CRC32C crc32c = new CRC32C();
+            payload.updateChecksum(crc32c);
+            return new PartChecksum(algorithm, toBytes((int) crc32c.getValue()));
+        }
+        MessageDigest md5 = newMd5();
+        payload.updateDigest(md5);
+        return new PartChecksum(algorithm, md5.digest());
+    }
+
+    /**
+     * Checksum of a multipart object, from the checksums of its parts given in ascending part number order: the
+     * ETag S3 gives the object for MD5 (unless it is encrypted with KMS), its {@code ChecksumCRC32C} for CRC32C.
+     */
+    public static String objectChecksum(List<PartChecksum> partChecksums) {
+        Algorithm algorithm = partChecksums.get(0).algorithm;
+        byte[] digest;
+        if (algorithm == Algorithm.CRC32C) {
+            CRC32C crc32c = new CRC32C();
+            for (PartChecksum partChecksum : partChecksums) {
+                crc32c.update(partChecksum.digest);
+            }
+            digest = toBytes((int) crc32c.getValue());
+        } else {
+            MessageDigest md5 = newMd5();
+            for (PartChecksum partChecksum : partChecksums) {
+                md5.update(partChecksum.digest);
+            }
+            digest = md5.digest();
+        }
+        return new PartChecksum(algorithm, digest).objectChecksum() + "-" + partChecksums.size();
+    }
+
+    public Algorithm getAlgorithm() {
+        return algorithm;
+    }
+
+    /**
+     * The checksum encoded in base64, as sent in the request headers.
+     */
+    public String getValue() {
+        return Base64.getEncoder().encodeToString(digest);
+    }
+
+    /**
+     * Checksum of an object sent whole by a single request with this checksum, in the form S3 gives it.
+     */
+    public String objectChecksum() {
+        if (algorithm == Algorithm.CRC32C) {
+            return getValue();
+        }
+        StringBuilder hex = new StringBuilder(digest.length * 2);
+        for (byte b : digest) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * Whether the given bytes have this checksum.
+     */
+    public boolean matches(PartPayload payload) {
+        return getValue().equals(compute(algorithm, payload).getValue());
+    }
+
+    @Override
+    public String toString() {
+        return algorithm + " " + getValue();
+    }
+
+    private static byte[] toBytes(int value) {
+        return new byte[]{(byte) (value >>> 24), (byte) (value >>> 16), (byte) (value >>> 8), (byte) value};
+    }
+
+    private static MessageDigest newMd5() {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("MD5 is not available", e);
+        }
+    }
+}
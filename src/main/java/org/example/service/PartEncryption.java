@@ -0,0 +1,285 @@
+package org.example.service;
+
+import javax.crypto.Cipher;
+import javax.crypto.CipherInputStream;
+import javax.crypto.SecretKey;
+import javax.crypto.ShortBufferException;
+import javax.crypto.spec.IvParameterSpec;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+
+/**
+ * Encrypts objects with AES-CTR on the client, part by part, before they leave the host.
+ * <p>
+ * Every object gets a random IV, written in clear as the first {@value #HEADER_SIZE} bytes of the object, followed
+ * by the whole object encrypted as one AES-CTR stream. In CTR mode the key stream at any position only depends on
+ * the IV and the position, so the IV of a part is derived from its offset and each part is encrypted on its own
+ * by the part request sending it, on the scheduler threads, in parallel with the other parts. The producer never
+ * encrypts anything, and the object is decrypted as a single stream, see {@link #decrypt(InputStream)}.
+ * <p>
+ * Parts are encrypted as they are read, so a blocking client sending a stream costs no memory; a client sending
+ * buffers gets an encrypted copy of the part. CTR does not authenticate the bytes, part checksums (see
+ * {@link PartChecksum}) are computed over the encrypted bytes and guard them on their way to S3.
+ */
+public class PartEncryption {
+    /**
+     * Bytes of the IV at the start of every encrypted object.
+     */
+    public static final int HEADER_SIZE = 16;
+
+    private static final String TRANSFORMATION = "AES/CTR/NoPadding";
+    private static final int BLOCK_SIZE = 16;
+    private static final int CHUNK_SIZE = 64 * 1024;
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private final SecretKey key;
+
+    /**
+     * @param key AES key of 128, 192 or 256 bits
+     */
+    public PartEncryption(SecretKey key) {
+        if (!"AES".equalsIgnoreCase(key.getAlgorithm())) {
+            throw new IllegalArgumentException("key should be an AES key, not " + key.getAlgorithm());
+        }
+        this.key = key;
+    }
+
+    /**
+     * Decrypts an object encrypted with the same key, read from its first byte.
+     */
+    public InputStream decrypt(InputStream object) throws IOException {
+        byte[] iv = object.readNBytes(HEADER_SIZE);
+        if (iv.length < HEADER_SIZE) {
+            throw new IOException("Object is too short to have been encrypted");
+        }
+        return new CipherInputStream(object, newCipher(Cipher.DECRYPT_MODE, iv, 0));
+    }
+
+    /**
+     * Starts the encryption of a new object, with a random IV of its own.
+     */
+    ObjectEncryption newObject() {
+        byte[] iv = new byte[HEADER_SIZE];
+        RANDOM.nextBytes(iv);
+        return newObject(iv);
+    }
+
+    /**
+     * Starts the encryption of a new object with the given IV, which must never be used for another object.
+     */
+    ObjectEncryption newObject(byte[] iv) {
+        if (iv.length != HEADER_SIZE) {
+            throw new IllegalArgumentException(String.format("IV should be %d bytes, not %d", HEADER_SIZE, iv.length));
+        }
+        return new ObjectEncryption(iv.clone());
+    }
+
+    /**
+     * Cipher positioned at the given byte of the object, not counting the header.
+     */
+    private Cipher newCipher(int mode, byte[] iv, long position) {
+        try {
+            BigInteger counter = new BigInteger(1, iv).add(BigInteger.valueOf(position / BLOCK_SIZE));
+            byte[] counterBytes = counter.toByteArray();
+            // the counter wraps around within the 16 bytes of the block, like AES-CTR increments it
+            byte[] blockIv = new byte[BLOCK_SIZE];
+            int length = Math.min(BLOCK_SIZE, counterBytes.length);
+            System.arraycopy(counterBytes, counterBytes.length - length, blockIv, BLOCK_SIZE - length, length);
+            Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+            cipher.init(mode, key, new IvParameterSpec(blockIv));
+            int skipped = (int) (position % BLOCK_SIZE);
+            if (skipped > 0) {
+                // drops the key stream of the bytes before the position within its block
+                cipher.update(new byte[skipped]);
+            }
+            return cipher;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("AES-CTR is not available", e);
+        }
+    }
+
+    /**
+     * Encryption of one object, whose parts are encrypted at their offset with the IV of the object.
+     */
+    final class ObjectEncryption {
+        private final byte[] iv;
+
+        private ObjectEncryption(byte[] iv) {
+            this.iv = iv;
+        }
+
+        /**
+         * Part as sent to S3, the first one starting with the header.
+         *
+         * @param offset position of the part within the object, not counting the header
+         */
+        PartPayload encrypt(PartPayload payload, long offset, boolean isFirstPart) {
+            return new EncryptedPayload(payload, offset, iv, isFirstPart ? iv : new byte[0]);
+        }
+    }
+
+    /**
+     * Part encrypted every time it is read. It holds nothing of its own, the part it encrypts is released by the
+     * upload.
+     */
+    private final class EncryptedPayload implements PartPayload {
+        private final PartPayload payload;
+        private final long offset;
+        private final byte[] iv;
+        // the IV for the first part of the object, empty for the others
+        private final byte[] header;
+
+        private EncryptedPayload(PartPayload payload, long offset, byte[] iv, byte[] header) {
+            this.payload = payload;
+            this.offset = offset;
+            this.iv = iv;
+            this.header = header;
+        }
+
+        @Override
+        public long size() {
+            return header.length + payload.size();
+        }
+
+        @Override
+        public InputStream newInputStream() {
+            return new EncryptingInputStream(payload.newInputStream(), this);
+        }
+
+        @Override
+        public ByteBuffer[] byteBuffers() {
+            ByteBuffer[] plainBuffers = payload.byteBuffers();
+            ByteBuffer[] buffers = new ByteBuffer[plainBuffers.length + 1];
+            buffers[0] = ByteBuffer.wrap(header).asReadOnlyBuffer();
+            Cipher cipher = cipherAt(0);
+            try {
+                for (int i = 0; i < plainBuffers.length; i++) {
+                    ByteBuffer encrypted = ByteBuffer.allocate(plainBuffers[i].remaining());
+                    cipher.update(plainBuffers[i], encrypted);
+                    buffers[i + 1] = encrypted.flip().asReadOnlyBuffer();
+                }
+            } catch (ShortBufferException e) {
+                throw new IllegalStateException(e);
+            }
+            return buffers;
+        }
+
+        @Override
+        public void release() {
+            // the part it encrypts is released by the upload
+        }
+
+        /**
+         * Cipher positioned at the given byte of the part, not counting the header.
+         */
+        private Cipher cipherAt(long position) {
+            return newCipher(Cipher.ENCRYPT_MODE, iv, offset + position);
+        }
+    }
+
+    /**
+     * Stream of the encrypted part, the header and then the bytes of the part encrypted as they are read. Skipping
+     * and rewinding move the key stream along.
+     */
+    private final class EncryptingInputStream extends FilterInputStream {
+        private final EncryptedPayload part;
+        // position within the part, header included
+        private long position;
+        private long markPosition;
+        private Cipher cipher;
+        // bytes of the part are read here and encrypted into the caller's array, encrypting in place is far slower
+        private byte[] chunk;
+
+        private EncryptingInputStream(InputStream inputStream, EncryptedPayload part) {
+            super(inputStream);
+            this.part = part;
+            this.cipher = part.cipherAt(0);
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            int bytesRead;
+            do {
+                bytesRead = read(b, 0, 1);
+            } while (bytesRead == 0);
+            return bytesRead == -1 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (position < part.header.length) {
+                int count = (int) Math.min(len, part.header.length - position);
+                System.arraycopy(part.header, (int) position, b, off, count);
+                position += count;
+                return count;
+            }
+            if (chunk == null) {
+                chunk = new byte[CHUNK_SIZE];
+            }
+            int bytesRead = super.read(chunk, 0, Math.min(len, chunk.length));
+            if (bytesRead > 0) {
+                try {
+                    cipher.update(chunk, 0, bytesRead, b, off);
+                } catch (ShortBufferException e) {
+                    throw new IllegalStateException(e);
+                }
+                position += bytesRead;
+            }
+            return bytesRead;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = 0;
+            if (position < part.header.length) {
+                skipped = Math.min(n, part.header.length - position);
+                position += skipped;
+            }
+            if (skipped < n) {
+                long bytesSkipped = super.skip(n - skipped);
+                position += bytesSkipped;
+                skipped += bytesSkipped;
+                cipher = part.cipherAt(position - part.header.length);
+            }
+            return skipped;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (int) Math.min(Integer.MAX_VALUE, Math.max(0, part.header.length - position) + super.available());
+        }
+
+        /**
+         * Only as far as the stream of the part can rewind, the key stream follows it.
+         */
+        @Override
+        public boolean markSupported() {
+            return super.markSupported();
+        }
+
+        @Override
+        public synchronized void mark(int readlimit) {
+            super.mark(readlimit);
+            markPosition = position;
+        }
+
+        @Override
+        public synchronized void reset() throws IOException {
+            if (!super.markSupported()) {
+                throw new IOException("Stream of the part can't be rewound");
+            }
+            super.reset();
+            position = markPosition;
+            cipher = part.cipherAt(Math.max(0, position - part.header.length));
+        }
+    }
+}
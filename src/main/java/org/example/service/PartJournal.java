@@ -0,0 +1,207 @@
+package org.example.service;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only local journal of a multipart upload, which lets a restarted process resume it.
+ * <p>
+ * The first line records the upload, then one line is appended and forced to disk for every part
+ * acknowledged by S3:
+ * <pre>
+ * UPLOAD  bucket  key  uploadId
+ * PART    partNumber  offset  length  eTag  crc32c
+ * </pre>
+ * Fields are tab separated. A line cut short by a crash is ignored when the journal is read back.
+ */
+public class PartJournal implements Closeable {
+    private static final String UPLOAD_RECORD = "UPLOAD";
+    private static final String PART_RECORD = "PART";
+
+    /**
+     * A part which has been stored by S3.
+     */
+    public static final class Entry {
+        private final int partNumber;
+        private final long offset;
+        private final long length;
+        private final String eTag;
+        private final long crc32c;
+
+        public Entry(int partNumber, long offset, long length, String eTag, long crc32c) {
+            this.partNumber = partNumber;
+            this.offset = offset;
+            this.length = length;
+            this.eTag = eTag;
+            this.crc32c = crc32c;
+        }
+
+        public int getPartNumber() {
+            return partNumber;
+        }
+
+        public long getOffset() {
+            return offset;
+        }
+
+        public long getLength() {
+            return length;
+        }
+
+        public String getETag() {
+            return eTag;
+        }
+
+        public long getCrc32c() {
+            return crc32c;
+        }
+    }
+
+    private final Path path;
+    private final FileChannel channel;
+
+    private String bucketName;
+    private String key;
+    private String uploadId;
+    private final Map<Integer, Entry> entries = new HashMap<>();
+
+    private PartJournal(Path path, FileChannel channel) {
+        this.path = path;
+        this.channel = channel;
+    }
+
+    /**
+     * Opens the journal at the given path, reading back the records of a previous run if there are any.
+     */
+    public static PartJournal open(Path path) throws IOException {
+        List<String> lines = Files.exists(path) ? Files.readAllLines(path, StandardCharsets.UTF_8) : List.of();
+        PartJournal journal = new PartJournal(path, FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND));
+        for (String line : lines) {
+            journal.readRecord(line.split("\t", -1));
+        }
+        if (journal.channel.size() > 0 && !endsWithNewline(path)) {
+            // terminate a torn record so that it doesn't swallow the next one
+            journal.append("");
+        }
+        return journal;
+    }
+
+    /**
+     * CRC32C of the bytes of a part, as recorded in the journal.
+     */
+    public static long crc32c(PartPayload payload) {
+        CRC32C crc32c = new CRC32C();
+        payload.updateChecksum(crc32c);
+        return crc32c.getValue();
+    }
+
+    /**
+     * Whether the journal holds an upload of the given object, which may be resumed.
+     */
+    public synchronized boolean isUploadOf(String bucketName, String key) {
+        return uploadId != null && bucketName.equals(this.bucketName) && key.equals(this.key);
+    }
+
+    public synchronized String getUploadId() {
+        return uploadId;
+    }
+
+    /**
+     * Parts recorded by the previous run, by part number.
+     */
+    public synchronized Map<Integer, Entry> getEntries() {
+        return Collections.unmodifiableMap(new HashMap<>(entries));
+    }
+
+    /**
+     * Starts the journal over for a new upload, the records of a previous upload are dropped.
+     */
+    public synchronized void startUpload(String bucketName, String key, String uploadId) {
+        try {
+            channel.truncate(0);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        this.bucketName = bucketName;
+        this.key = key;
+        this.uploadId = uploadId;
+        this.entries.clear();
+        append(String.join("\t", UPLOAD_RECORD, bucketName, key, uploadId));
+    }
+
+    /**
+     * Records a part acknowledged by S3, the record is on disk when this method returns.
+     */
+    public synchronized void recordPart(Entry entry) {
+        entries.put(entry.getPartNumber(), entry);
+        append(String.join("\t", PART_RECORD, Integer.toString(entry.getPartNumber()), Long.toString(entry.getOffset()),
+                Long.toString(entry.getLength()), entry.getETag(), Long.toHexString(entry.getCrc32c())));
+    }
+
+    /**
+     * Removes the journal once the upload is completed or aborted, there is nothing left to resume.
+     */
+    public synchronized void delete() {
+        try {
+            channel.close();
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        channel.close();
+    }
+
+    private static boolean endsWithNewline(Path path) throws IOException {
+        try (FileChannel reader = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer lastByte = ByteBuffer.allocate(1);
+            reader.read(lastByte, reader.size() - 1);
+            return lastByte.get(0) == '\n';
+        }
+    }
+
+    private void append(String record) {
+        ByteBuffer bytes = ByteBuffer.wrap((record + "\n").getBytes(StandardCharsets.UTF_8));
+        try {
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+            channel.force(false);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void readRecord(String[] fields) {
+        try {
+            if (fields.length == 4 && UPLOAD_RECORD.equals(fields[0])) {
+                bucketName = fields[1];
+                key = fields[2];
+                uploadId = fields[3];
+                entries.clear();
+            } else if (fields.length == 6 && PART_RECORD.equals(fields[0])) {
+                Entry entry = new Entry(Integer.parseInt(fields[1]), Long.parseLong(fields[2]), Long.parseLong(fields[3]),
+                        fields[4], Long.parseUnsignedLong(fields[5], 16));
+                entries.put(entry.getPartNumber(), entry);
+            }
+        } catch (NumberFormatException e) {
+            // torn record of a crash while appending, the part will simply be uploaded again
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package org.example.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.util.zip.Checksum;
+
+/**
+ * Bytes of a single part of a multipart upload.
+ * <p>
+ * The payload is kept until the part has been acknowledged, so the uploader can read it as many times as it
+ * needs (SDK retries, re-sends) without the producer having to hand over a second copy.
+ */
+public interface PartPayload {
+
+    /**
+     * Number of bytes of the part.
+     */
+    long size();
+
+    /**
+     * Opens a new stream over the bytes of the part. The stream supports {@code mark/reset} whatever read
+     * limit is given, so an HTTP client can rewind it on its own.
+     */
+    InputStream newInputStream();
+
+    /**
+     * Read-only views over the bytes of the part, for clients which send buffers rather than read a stream.
+     * Implementations holding their bytes in buffers should override this to hand them over without copying.
+     */
+    default ByteBuffer[] byteBuffers() {
+        try (InputStream inputStream = newInputStream()) {
+            return new ByteBuffer[]{ByteBuffer.wrap(inputStream.readAllBytes()).asReadOnlyBuffer()};
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Feeds the bytes of the part to a checksum. Implementations holding their bytes in buffers should
+     * override this to update the checksum without copying.
+     */
+    default void updateChecksum(Checksum checksum) {
+        byte[] chunk = new byte[8192];
+        try (InputStream inputStream = newInputStream()) {
+            int bytesRead;
+            while ((bytesRead = inputStream.read(chunk, 0, chunk.length)) != -1) {
+                checksum.update(chunk, 0, bytesRead);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Feeds the bytes of the part to a message digest, a chunk at a time. Implementations holding their bytes in
+     * buffers should override this to update the digest without copying.
+     */
+    default void updateDigest(MessageDigest digest) {
+        byte[] chunk = new byte[8192];
+        try (InputStream inputStream = newInputStream()) {
+            int bytesRead;
+            while ((bytesRead = inputStream.read(chunk, 0, chunk.length)) != -1) {
+                digest.update(chunk, 0, bytesRead);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Called once the part is done (uploaded, failed or cancelled), the payload must not be read afterwards.
+     */
+    void release();
+}
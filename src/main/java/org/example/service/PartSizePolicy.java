@@ -0,0 +1,123 @@
+package org.example.service;
+
+/**
+ * Chooses the size of each part of a multipart upload.
+ * <p>
+ * S3 accepts parts between 5 MB and 5 GB (only the last part may be smaller) and at most 10,000 parts per
+ * object. Two lower bounds keep an upload under the part count limit:
+ * <ul>
+ *     <li>when the object size is known, the remaining bytes are spread over the remaining part numbers</li>
+ *     <li>when it is not, the part size doubles every {@link #GROWTH_INTERVAL} parts, so 10,000 parts starting
+ *     at 10 MB cover objects of several TB</li>
+ * </ul>
+ * On top of that, when adaptive, the policy climbs towards larger parts while that raises the throughput
+ * measured per part: every request pays a fixed latency, so larger parts amortize it until the connection
+ * bandwidth dominates and growing stops paying off.
+ */
+public class PartSizePolicy {
+    public static final long MIN_PART_SIZE = 5L * 1024 * 1024;
+    public static final long MAX_PART_SIZE = 5L * 1024 * 1024 * 1024;
+    public static final int MAX_PARTS = 10000;
+
+    static final int GROWTH_INTERVAL = 1000;
+
+    // parts measured at a size before deciding whether the next size is worth trying
+    private static final int MEASUREMENT_WINDOW = 4;
+    // a larger size is kept only if it improved the per part throughput by at least 10%
+    private static final double MIN_THROUGHPUT_GAIN = 1.10;
+
+    private final long initialPartSize;
+    private final long maxPartSize;
+    private final long expectedObjectSize;
+    private final boolean adaptive;
+
+    private long adaptivePartSize;
+    private boolean settled;
+    private double previousThroughput;
+    private long windowBytes;
+    private long windowNanos;
+    private int windowParts;
+
+    /**
+     * @param initialPartSize    part size to start with, or to stick to when not adaptive
+     * @param maxPartSize        largest part the caller is able to buffer, at most {@link #MAX_PART_SIZE}
+     * @param expectedObjectSize size of the object if known up front, -1 otherwise
+     * @param adaptive           whether to grow parts while it increases the measured throughput
+     */
+    public PartSizePolicy(long initialPartSize, long maxPartSize, long expectedObjectSize, boolean adaptive) {
+        if (maxPartSize < MIN_PART_SIZE) {
+            throw new IllegalArgumentException("Part size should not be less than 5 MB while using MultipartUpload");
+        }
+        this.maxPartSize = Math.min(maxPartSize, MAX_PART_SIZE);
+        this.initialPartSize = clamp(initialPartSize);
+        if (expectedObjectSize > this.maxPartSize * MAX_PARTS) {
+            throw new IllegalArgumentException(String.format(
+                    "Object of %d bytes does not fit in %d parts of at most %d bytes",
+                    expectedObjectSize, MAX_PARTS, this.maxPartSize));
+        }
+        this.expectedObjectSize = expectedObjectSize;
+        this.adaptive = adaptive;
+        this.adaptivePartSize = this.initialPartSize;
+    }
+
+    /**
+     * Size of every part but the last one when an object of known size is cut up front rather than streamed:
+     * the preferred size, or more if the object would not fit in {@value #MAX_PARTS} parts of it.
+     */
+    public static long fixedPartSize(long objectSize, long preferredPartSize) {
+        long minPartSize = (objectSize + MAX_PARTS - 1) / MAX_PARTS;
+        return Math.max(MIN_PART_SIZE, Math.min(MAX_PART_SIZE, Math.max(preferredPartSize, minPartSize)));
+    }
+
+    /**
+     * Size of the part which is going to get {@code partNumber}, given the bytes submitted before it.
+     */
+    public synchronized long nextPartSize(int partNumber, long submittedBytes) {
+        long partSize = adaptive ? adaptivePartSize : initialPartSize;
+        return clamp(Math.max(partSize, minimumPartSize(partNumber, submittedBytes)));
+    }
+
+    /**
+     * Feeds the time a part took to upload back into the adaptive sizing.
+     */
+    public synchronized void recordPart(long partBytes, long elapsedNanos) {
+        if (!adaptive || settled || partBytes < adaptivePartSize || elapsedNanos <= 0) {
+            // parts cut before the last change, and the short final part, say nothing about the current size
+            return;
+        }
+        windowBytes += partBytes;
+        windowNanos += elapsedNanos;
+        if (++windowParts < MEASUREMENT_WINDOW) {
+            return;
+        }
+
+        double throughput = (double) windowBytes / windowNanos;
+        if (previousThroughput > 0 && throughput < previousThroughput * MIN_THROUGHPUT_GAIN) {
+            // the last step did not pay off, go back to the previous size and keep it
+            adaptivePartSize = Math.max(initialPartSize, adaptivePartSize / 2);
+            settled = true;
+        } else if (adaptivePartSize * 2 <= maxPartSize) {
+            previousThroughput = throughput;
+            adaptivePartSize *= 2;
+        } else {
+            settled = true;
+        }
+        windowBytes = 0;
+        windowNanos = 0;
+        windowParts = 0;
+    }
+
+    private long minimumPartSize(int partNumber, long submittedBytes) {
+        if (expectedObjectSize >= 0) {
+            long remainingBytes = Math.max(0, expectedObjectSize - submittedBytes);
+            long remainingParts = Math.max(1, MAX_PARTS - partNumber + 1);
+            return (remainingBytes + remainingParts - 1) / remainingParts;
+        }
+        int doublings = Math.min(30, (partNumber - 1) / GROWTH_INTERVAL);
+        return initialPartSize << doublings;
+    }
+
+    private long clamp(long partSize) {
+        return Math.max(MIN_PART_SIZE, Math.min(maxPartSize, partSize));
+    }
+}
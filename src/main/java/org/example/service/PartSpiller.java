@@ -0,0 +1,298 @@
+package org.example.service;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.zip.Checksum;
+
+/**
+ * Spills buffered parts to a local directory while the in-flight limits of their upload are reached.
+ * <p>
+ * Without a spiller a producer outrunning the network blocks until enough parts have been uploaded. With one, a
+ * part which would have to wait is written to a file of its own instead, its buffers go back to the pool right
+ * away and the part is uploaded later from the file by positional reads, so the producer keeps going at the
+ * speed of the disk. The file is closed and deleted as soon as the part is done, which gives its disk space back.
+ * The disk space taken by spilled parts is capped, past it the producer blocks as it would without a spiller.
+ * <p>
+ * A spiller can be shared by several uploads, they share its disk budget.
+ */
+public class PartSpiller {
+    private static final int MAX_READ_BUFFER_SIZE = 1 << 30;
+    private static final int CHECKSUM_CHUNK_SIZE = 64 * 1024;
+
+    private final Path directory;
+    private final long maxSpillBytes;
+    // any number of parts, up to maxSpillBytes on disk
+    private final InFlightLimiter diskBudget;
+
+    private final AtomicLong spilledParts = new AtomicLong();
+    private final AtomicLong spilledBytes = new AtomicLong();
+    private final AtomicLong spillWriteNanos = new AtomicLong();
+    private final AtomicLong bytesOnDisk = new AtomicLong();
+
+    public PartSpiller(Path directory, long maxSpillBytes) {
+        this.directory = directory;
+        this.maxSpillBytes = maxSpillBytes;
+        this.diskBudget = new InFlightLimiter(Integer.MAX_VALUE, maxSpillBytes);
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    public long getMaxSpillBytes() {
+        return maxSpillBytes;
+    }
+
+    /**
+     * Number of parts which have been spilled.
+     */
+    public long getSpilledParts() {
+        return spilledParts.get();
+    }
+
+    /**
+     * Number of bytes which have been spilled, whether they are still on disk or not.
+     */
+    public long getSpilledBytes() {
+        return spilledBytes.get();
+    }
+
+    /**
+     * Time the producers have spent writing spilled parts to disk.
+     */
+    public long getSpillWriteNanos() {
+        return spillWriteNanos.get();
+    }
+
+    /**
+     * Number of bytes of spilled parts which are not done yet.
+     */
+    public long getBytesOnDisk() {
+        return bytesOnDisk.get();
+    }
+
+    /**
+     * Writes the part to a new file if it fits into the disk budget. The given payload still belongs to the caller
+     * either way.
+     *
+     * @return the spilled part, whose release deletes the file, or null if the disk budget is used up
+     */
+    PartPayload trySpill(PartPayload payload) throws InterruptedException {
+        long size = payload.size();
+        if (!diskBudget.tryAcquire(size, 0, TimeUnit.NANOSECONDS)) {
+            return null;
+        }
+        long start = System.nanoTime();
+        Path file = null;
+        try {
+            Files.createDirectories(directory);
+            file = Files.createTempFile(directory, "part-", ".spill");
+            FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            try {
+                ByteBuffer[] buffers = payload.byteBuffers();
+                long written = 0;
+                while (written < size) {
+                    written += channel.write(buffers);
+                }
+            } catch (IOException | RuntimeException e) {
+                channel.close();
+                throw e;
+            }
+            PartPayload spilledPart = new SpilledPart(file, channel, size);
+            long elapsedNanos = System.nanoTime() - start;
+            spilledParts.incrementAndGet();
+            spilledBytes.addAndGet(size);
+            spillWriteNanos.addAndGet(elapsedNanos);
+            bytesOnDisk.addAndGet(size);
+            System.out.println(String.format("Spilled a part of %d bytes to %s in %d ms", size, file, elapsedNanos / 1_000_000));
+            return spilledPart;
+        } catch (IOException e) {
+            diskBudget.release(size);
+            delete(file);
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void delete(Path file) {
+        if (file == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            System.out.println(String.format("Could not delete spilled part %s: %s", file, e));
+        }
+    }
+
+    /**
+     * Spilled part, read back from its file by positional reads, so any number of requests can read it at the same
+     * time. It gives its disk space back once done.
+     */
+    private final class SpilledPart implements PartPayload {
+        private final Path file;
+        private final FileChannel channel;
+        private final long size;
+
+        private SpilledPart(Path file, FileChannel channel, long size) {
+            this.file = file;
+            this.channel = channel;
+            this.size = size;
+        }
+
+        @Override
+        public long size() {
+            return size;
+        }
+
+        @Override
+        public InputStream newInputStream() {
+            return new SpilledPartInputStream(this);
+        }
+
+        /**
+         * Reads the part into heap buffers, a spilled part has no buffers of its own.
+         */
+        @Override
+        public ByteBuffer[] byteBuffers() {
+            List<ByteBuffer> buffers = new ArrayList<>();
+            for (long position = 0; position < size; ) {
+                ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(MAX_READ_BUFFER_SIZE, size - position));
+                readFully(buffer, position);
+                position += buffer.flip().remaining();
+                buffers.add(buffer.asReadOnlyBuffer());
+            }
+            return buffers.toArray(new ByteBuffer[0]);
+        }
+
+        @Override
+        public void updateChecksum(Checksum checksum) {
+            readChunks(checksum::update);
+        }
+
+        @Override
+        public void updateDigest(MessageDigest digest) {
+            readChunks(digest::update);
+        }
+
+        @Override
+        public void release() {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                System.out.println(String.format("Could not close spilled part %s: %s", file, e));
+            }
+            delete(file);
+            bytesOnDisk.addAndGet(-size);
+            diskBudget.release(size);
+        }
+
+        /**
+         * Hands the part over chunk by chunk, through a single small buffer.
+         */
+        private void readChunks(Consumer<ByteBuffer> consumer) {
+            ByteBuffer chunk = ByteBuffer.allocate(CHECKSUM_CHUNK_SIZE);
+            for (long position = 0; position < size; ) {
+                chunk.clear().limit((int) Math.min(chunk.capacity(), size - position));
+                readFully(chunk, position);
+                position += chunk.flip().remaining();
+                consumer.accept(chunk);
+            }
+        }
+
+        /**
+         * Reads from the given position of the part until the buffer is full.
+         */
+        private void readFully(ByteBuffer buffer, long position) {
+            try {
+                while (buffer.hasRemaining()) {
+                    int bytesRead = channel.read(buffer, position);
+                    if (bytesRead < 0) {
+                        throw new EOFException(String.format("Spilled part %s is shorter than %d bytes", file, size));
+                    }
+                    position += bytesRead;
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * Stream over a spilled part, whose mark never becomes invalid.
+     */
+    private static final class SpilledPartInputStream extends InputStream {
+        private final SpilledPart part;
+        private long position;
+        private long markPosition;
+
+        private SpilledPartInputStream(SpilledPart part) {
+            this.part = part;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) == -1 ? -1 : b[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if ((off | len) < 0 || len > b.length - off) {
+                throw new IndexOutOfBoundsException();
+            }
+            if (len == 0) {
+                return 0;
+            }
+            if (position >= part.size) {
+                return -1;
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(b, off, (int) Math.min(len, part.size - position));
+            int bytesRead = part.channel.read(buffer, position);
+            if (bytesRead < 0) {
+                throw new EOFException(String.format("Spilled part %s is shorter than %d bytes", part.file, part.size));
+            }
+            position += bytesRead;
+            return bytesRead;
+        }
+
+        @Override
+        public long skip(long n) {
+            long skipped = Math.max(0, Math.min(n, part.size - position));
+            position += skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return (int) Math.min(Integer.MAX_VALUE, part.size - position);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return true;
+        }
+
+        @Override
+        public void mark(int readlimit) {
+            markPosition = position;
+        }
+
+        @Override
+        public void reset() {
+            position = markPosition;
+        }
+    }
+}
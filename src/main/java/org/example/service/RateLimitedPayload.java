@@ -0,0 +1,153 @@
+package org.example.service;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.util.List;
+import java.util.zip.Checksum;
+
+/**
+ * Part payload whose bytes are paid for to {@link BandwidthLimiter}s as they are sent.
+ * <p>
+ * A stream pays every {@value #CHUNK_SIZE} bytes read, so a blocking client is paced while it sends the part.
+ * A non-blocking client is handed a {@link PacedRequestBody}, which pays for every chunk as the client pulls it
+ * and delays the chunk on a timer rather than on a thread. Buffers handed over all at once are paid for up
+ * front. Every read of the payload pays again, a re-sent part takes bandwidth again.
+ */
+final class RateLimitedPayload implements PartPayload {
+    static final int CHUNK_SIZE = 64 * 1024;
+
+    private final PartPayload payload;
+    private final List<BandwidthLimiter> bandwidthLimiters;
+
+    private RateLimitedPayload(PartPayload payload, List<BandwidthLimiter> bandwidthLimiters) {
+        this.payload = payload;
+        this.bandwidthLimiters = bandwidthLimiters;
+    }
+
+    /**
+     * Wraps the payload unless every limiter is unlimited.
+     */
+    static PartPayload of(PartPayload payload, List<BandwidthLimiter> bandwidthLimiters) {
+        for (BandwidthLimiter bandwidthLimiter : bandwidthLimiters) {
+            if (!bandwidthLimiter.isUnlimited()) {
+                return new RateLimitedPayload(payload, bandwidthLimiters);
+            }
+        }
+        return payload;
+    }
+
+    @Override
+    public long size() {
+        return payload.size();
+    }
+
+    @Override
+    public InputStream newInputStream() {
+        return new RateLimitedInputStream(payload.newInputStream());
+    }
+
+    @Override
+    public ByteBuffer[] byteBuffers() {
+        try {
+            acquire(payload.size());
+        } catch (InterruptedIOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return payload.byteBuffers();
+    }
+
+    /**
+     * The buffers of the part, for a caller paying for them with {@link #reserve(long)} as it sends them.
+     */
+    ByteBuffer[] unpaidByteBuffers() {
+        return payload.byteBuffers();
+    }
+
+    /**
+     * Pays for the given bytes without waiting.
+     *
+     * @return nanoseconds to wait before sending them, 0 if they can be sent right away
+     */
+    long reserve(long bytes) {
+        long waitNanos = 0;
+        for (BandwidthLimiter bandwidthLimiter : bandwidthLimiters) {
+            waitNanos = Math.max(waitNanos, bandwidthLimiter.reserve(bytes));
+        }
+        return waitNanos;
+    }
+
+    @Override
+    public void updateChecksum(Checksum checksum) {
+        // checksums are computed locally, nothing is sent
+        payload.updateChecksum(checksum);
+    }
+
+    @Override
+    public void updateDigest(MessageDigest digest) {
+        payload.updateDigest(digest);
+    }
+
+    @Override
+    public void release() {
+        payload.release();
+    }
+
+    private void acquire(long bytes) throws InterruptedIOException {
+        try {
+            for (BandwidthLimiter bandwidthLimiter : bandwidthLimiters) {
+                bandwidthLimiter.acquire(bytes);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for bandwidth");
+        }
+    }
+
+    private final class RateLimitedInputStream extends FilterInputStream {
+        // bytes read but not paid for yet
+        private long unpaid;
+
+        private RateLimitedInputStream(InputStream inputStream) {
+            super(inputStream);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            pay(b == -1 ? -1 : 1);
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int bytesRead = super.read(b, off, len);
+            pay(bytesRead);
+            return bytesRead;
+        }
+
+        @Override
+        public void close() throws IOException {
+            // a client reading exactly the part size never sees the end of the stream
+            long chunk = unpaid;
+            unpaid = 0;
+            super.close();
+            acquire(chunk);
+        }
+
+        private void pay(int bytesRead) throws InterruptedIOException {
+            if (bytesRead > 0) {
+                unpaid += bytesRead;
+            }
+            if (unpaid >= CHUNK_SIZE || (bytesRead == -1 && unpaid > 0)) {
+                long chunk = unpaid;
+                unpaid = 0;
+                acquire(chunk);
+            }
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package org.example.service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Generates and uploads a batch of reports, one independent upload per key, many of them at the same time.
+ * <p>
+ * Reports are generated by a few generator threads. A generator hands the final part of its report over and
+ * moves on to the next key while the upload completes in the background. Every upload shares the part buffer pool
+ * and the scheduler of the config, so the whole batch stays within one memory budget and one connection budget,
+ * whatever the number of keys. A generator holds at most one part which is not in flight, and reserves every
+ * buffer of that part before writing it (see {@link PartBufferPool#reserve(int)}), so generators wait for the
+ * parts in flight to give buffers back but never end up sharing the whole pool between partly filled parts. A
+ * part may span up to half of the pool, more generators than pool buffers would only wait for buffers.
+ * <p>
+ * The uploads of a batch are not journaled, the config has a single journal path for all of them.
+ */
+public class ReportBatchUploader {
+
+    /**
+     * Writes one report into the stream of its upload.
+     */
+    public interface ReportWriter<T> {
+        void write(String key, T report, OutputStream outputStream) throws IOException;
+    }
+
+    private final ObjectSink objectSink;
+    private final String destBucketName;
+    private final S3MultipartUploadConfig uploadConfig;
+    private final int generatorThreads;
+
+    /**
+     * Generates as many reports at once as there are processors, within the number of pool buffers.
+     */
+    public ReportBatchUploader(ObjectSink objectSink, String destBucketName, S3MultipartUploadConfig uploadConfig) {
+        this(objectSink, destBucketName, uploadConfig, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param generatorThreads maximum number of reports generated at the same time
+     */
+    public ReportBatchUploader(ObjectSink objectSink, String destBucketName, S3MultipartUploadConfig uploadConfig,
+                               int generatorThreads) {
+        if (generatorThreads < 1) {
+            throw new IllegalArgumentException("generatorThreads should be at least 1");
+        }
+        this.objectSink = objectSink;
+        this.destBucketName = destBucketName;
+        this.uploadConfig = uploadConfig;
+        this.generatorThreads = Math.max(1, Math.min(generatorThreads, uploadConfig.getPartBufferPool().getMaxBuffers()));
+    }
+
+    /**
+     * Uploads every report under its key and waits for all of them. A failed report does not stop the others.
+     *
+     * @return the result of every upload, by key
+     * @throws IllegalArgumentException if the config has a journal path, which every upload would share
+     * @throws RuntimeException once every upload is done, if any of them has failed
+     */
+    public <T> Map<String, UploadResult> uploadAll(Map<String, T> reports, ReportWriter<? super T> reportWriter) {
+        if (uploadConfig.getJournalPath() != null) {
+            // every upload would truncate and append to the same journal
+            throw new IllegalArgumentException("Batch uploads can't be journaled, the journal path would be shared by every key");
+        }
+        ExecutorService generators = Executors.newFixedThreadPool(generatorThreads, new GeneratorThreadFactory());
+        try {
+            Map<String, CompletableFuture<UploadResult>> uploads = new LinkedHashMap<>();
+            for (Map.Entry<String, T> report : reports.entrySet()) {
+                uploads.put(report.getKey(), CompletableFuture
+                        .supplyAsync(() -> startUpload(report.getKey(), report.getValue(), reportWriter), generators)
+                        .thenCompose(upload -> upload));
+            }
+
+            Map<String, UploadResult> results = new LinkedHashMap<>();
+            List<Throwable> failures = new ArrayList<>();
+            for (Map.Entry<String, CompletableFuture<UploadResult>> upload : uploads.entrySet()) {
+                try {
+                    UploadResult result = upload.getValue().join();
+                    results.put(upload.getKey(), result);
+                    System.out.println(String.format("Uploaded %s", result));
+                } catch (CompletionException e) {
+                    System.out.println(String.format("Upload of %s has failed: %s", upload.getKey(), e.getCause()));
+                    failures.add(e.getCause());
+                }
+            }
+            if (!failures.isEmpty()) {
+                RuntimeException failure = new RuntimeException(String.format("%d of %d reports have failed",
+                        failures.size(), uploads.size()), failures.get(0));
+                for (Throwable otherFailure : failures.subList(1, failures.size())) {
+                    failure.addSuppressed(otherFailure);
+                }
+                throw failure;
+            }
+            return results;
+        } finally {
+            generators.shutdown();
+        }
+    }
+
+    /**
+     * Generates the report into its upload.
+     *
+     * @return the completion of the upload, which goes on once the report has been generated
+     */
+    private <T> CompletableFuture<UploadResult> startUpload(String key, T report, ReportWriter<? super T> reportWriter) {
+        S3MultipartUpload multipartUpload = new S3MultipartUpload(destBucketName, key, objectSink, uploadConfig);
+        S3MultipartOutputStream outputStream = new S3MultipartOutputStream(multipartUpload);
+        try {
+            reportWriter.write(key, report, outputStream);
+            return outputStream.closeAsync();
+        } catch (IOException e) {
+            // never complete a half written report, drop the parts already stored
+            outputStream.abort();
+            throw new UncheckedIOException(e);
+        } catch (RuntimeException e) {
+            outputStream.abort();
+            throw e;
+        }
+    }
+
+    private static final class GeneratorThreadFactory implements ThreadFactory {
+        private static final AtomicInteger THREAD_NUMBER = new AtomicInteger(0);
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "report-generator-" + THREAD_NUMBER.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
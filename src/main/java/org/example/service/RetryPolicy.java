@@ -0,0 +1,161 @@
+package org.example.service;
+
+import com.amazonaws.AbortedException;
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.AmazonServiceException;
+import software.amazon.awssdk.awscore.exception.AwsServiceException;
+import software.amazon.awssdk.core.exception.SdkException;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * How failed part requests are retried.
+ * <p>
+ * A part is re-sent from its retained payload, so a failure costs one part instead of the whole object.
+ * Delays grow exponentially with full jitter, so parts failing together do not come back together.
+ * Throttling (503 SlowDown) backs off from a longer base delay than other transient failures, and
+ * client errors such as a missing upload or a denied access are not retried at all. The retry budget caps the
+ * retries of a whole upload, so a broken endpoint fails the upload instead of retrying every part.
+ */
+public class RetryPolicy {
+
+    /**
+     * What a failed part request means for retrying it.
+     */
+    public enum Failure {
+        /**
+         * S3 asks to slow down, retry after a longer delay.
+         */
+        THROTTLED,
+        /**
+         * Transient failure (5xx, timeout, connection reset...), retry.
+         */
+        RETRYABLE,
+        /**
+         * Retrying would fail again, or the upload has been cancelled.
+         */
+        FATAL
+    }
+
+    private int maxAttempts = 5;
+
+    private long baseDelayMillis = 200;
+
+    private long throttledBaseDelayMillis = 1000;
+
+    private long maxDelayMillis = 20_000;
+
+    private int retryBudget = 50;
+
+    /**
+     * Policy which never retries a part.
+     */
+    public static RetryPolicy noRetry() {
+        RetryPolicy retryPolicy = new RetryPolicy();
+        retryPolicy.setMaxAttempts(1);
+        return retryPolicy;
+    }
+
+    /**
+     * What the failure of a request means for retrying it, for the exceptions of both the v1 and the v2 SDK.
+     */
+    public Failure classify(Throwable e) {
+        if (e instanceof AmazonServiceException) {
+            AmazonServiceException serviceException = (AmazonServiceException) e;
+            String errorCode = serviceException.getErrorCode();
+            if (serviceException.getStatusCode() == 503 || "SlowDown".equals(errorCode) || "Throttling".equals(errorCode)) {
+                return Failure.THROTTLED;
+            }
+            if (serviceException.getStatusCode() >= 500 || "RequestTimeout".equals(errorCode)) {
+                return Failure.RETRYABLE;
+            }
+            return Failure.FATAL;
+        }
+        if (e instanceof AbortedException) {
+            return Failure.FATAL;
+        }
+        if (e instanceof AmazonClientException) {
+            return ((AmazonClientException) e).isRetryable() ? Failure.RETRYABLE : Failure.FATAL;
+        }
+        if (e instanceof AwsServiceException) {
+            AwsServiceException serviceException = (AwsServiceException) e;
+            String errorCode = serviceException.awsErrorDetails() != null ? serviceException.awsErrorDetails().errorCode() : null;
+            if (serviceException.statusCode() == 503 || serviceException.isThrottlingException() || "SlowDown".equals(errorCode)) {
+                return Failure.THROTTLED;
+            }
+            if (serviceException.statusCode() >= 500 || "RequestTimeout".equals(errorCode)) {
+                return Failure.RETRYABLE;
+            }
+            return Failure.FATAL;
+        }
+        if (e instanceof software.amazon.awssdk.core.exception.AbortedException) {
+            return Failure.FATAL;
+        }
+        if (e instanceof SdkException) {
+            // the v2 client gives up on connection failures and timeouts once its own retries are spent
+            return ((SdkException) e).retryable() || e.getCause() instanceof IOException ? Failure.RETRYABLE : Failure.FATAL;
+        }
+        if (e instanceof UncheckedIOException) {
+            // the part could not be read, from a relayed source for instance, or stored by a local sink
+            return Failure.RETRYABLE;
+        }
+        return Failure.FATAL;
+    }
+
+    /**
+     * Delay before the retry following the given failed attempt (1 for the first attempt).
+     */
+    public long backoffMillis(Failure failure, int attempt) {
+        long baseDelay = failure == Failure.THROTTLED ? throttledBaseDelayMillis : baseDelayMillis;
+        long ceiling = Math.min(maxDelayMillis, baseDelay << Math.min(attempt - 1, 20));
+        return ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    /**
+     * Attempts per part including the first one, 1 disables retries.
+     */
+    public void setMaxAttempts(int maxAttempts) {
+        this.maxAttempts = maxAttempts;
+    }
+
+    public long getBaseDelayMillis() {
+        return baseDelayMillis;
+    }
+
+    public void setBaseDelayMillis(long baseDelayMillis) {
+        this.baseDelayMillis = baseDelayMillis;
+    }
+
+    public long getThrottledBaseDelayMillis() {
+        return throttledBaseDelayMillis;
+    }
+
+    public void setThrottledBaseDelayMillis(long throttledBaseDelayMillis) {
+        this.throttledBaseDelayMillis = throttledBaseDelayMillis;
+    }
+
+    public long getMaxDelayMillis() {
+        return maxDelayMillis;
+    }
+
+    public void setMaxDelayMillis(long maxDelayMillis) {
+        this.maxDelayMillis = maxDelayMillis;
+    }
+
+    public int getRetryBudget() {
+        return retryBudget;
+    }
+
+    /**
+     * Retries allowed over all the parts of one upload.
+     */
+    public void setRetryBudget(int retryBudget) {
+        this.retryBudget = retryBudget;
+    }
+}
@@ -0,0 +1,179 @@
+package org.example.service;
+
+import software.amazon.awssdk.awscore.exception.AwsServiceException;
+import software.amazon.awssdk.core.async.AsyncRequestBody;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.model.AbortMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.ChecksumAlgorithm;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompletedMultipartUpload;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.ListPartsRequest;
+import software.amazon.awssdk.services.s3.model.ListPartsResponse;
+import software.amazon.awssdk.services.s3.model.Part;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.UploadPartRequest;
+import software.amazon.awssdk.services.s3.model.UploadPartResponse;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * {@link ObjectSink} on the non-blocking SDK v2 {@link S3AsyncClient}.
+ * <p>
+ * A part request only takes its scheduler thread for as long as it takes to start it, the client's event loop
+ * threads send the bytes and complete the part. So a handful of threads can keep hundreds of parts in flight,
+ * which is what {@link UploadExecutionMode#NON_BLOCKING} is for. Parts are sent straight from the buffers of
+ * their payload, without copying them, rate limited ones through a {@link PacedRequestBody}.
+ * <p>
+ * CRC32C checksums are sent as {@code x-amz-checksum-crc32c}, the upload being created for them, and MD5 ones
+ * as {@code Content-MD5}.
+ */
+public class S3AsyncSink implements ObjectSink {
+    private static final String CONTENT_TYPE = "application/zip";
+
+    private final S3AsyncClient s3AsyncClient;
+
+    public S3AsyncSink(S3AsyncClient s3AsyncClient) {
+        this.s3AsyncClient = s3AsyncClient;
+    }
+
+    @Override
+    public String initiateUpload(String bucketName, String key, PartChecksum.Algorithm checksumAlgorithm) {
+        CreateMultipartUploadRequest initRequest = CreateMultipartUploadRequest.builder()
+                .bucket(bucketName)
+                .key(key)
+                .contentType(CONTENT_TYPE)
+                .checksumAlgorithm(checksumAlgorithm == PartChecksum.Algorithm.CRC32C ? ChecksumAlgorithm.CRC32_C : null)
+                .build();
+        return join(s3AsyncClient.createMultipartUpload(initRequest)).uploadId();
+    }
+
+    @Override
+    public CompletableFuture<UploadedPart> uploadPart(String bucketName, String key, String uploadId, int partNumber,
+                                                      long offset, PartPayload payload, PartChecksum checksum,
+                                                      boolean isLastPart) {
+        UploadPartRequest.Builder uploadRequest = UploadPartRequest.builder()
+                .bucket(bucketName)
+                .key(key)
+                .uploadId(uploadId)
+                .partNumber(partNumber)
+                .contentLength(payload.size());
+        if (checksum != null && checksum.getAlgorithm() == PartChecksum.Algorithm.CRC32C) {
+            uploadRequest.checksumAlgorithm(ChecksumAlgorithm.CRC32_C).checksumCRC32C(checksum.getValue());
+        } else if (checksum != null) {
+            uploadRequest.contentMD5(checksum.getValue());
+        }
+        CompletableFuture<UploadPartResponse> request = s3AsyncClient.uploadPart(uploadRequest.build(), requestBody(payload));
+        CompletableFuture<UploadedPart> uploadedPart = request.thenApply(response -> new UploadedPart(partNumber, response.eTag()));
+        uploadedPart.whenComplete((result, error) -> {
+            if (error instanceof CancellationException) {
+                // the client aborts the request once its own future is cancelled
+                request.cancel(false);
+            }
+        });
+        return uploadedPart;
+    }
+
+    @Override
+    public String completeUpload(String bucketName, String key, String uploadId, List<UploadedPart> uploadedParts,
+                                 List<PartChecksum> partChecksums) {
+        List<CompletedPart> completedParts = new ArrayList<>(uploadedParts.size());
+        for (int i = 0; i < uploadedParts.size(); i++) {
+            UploadedPart uploadedPart = uploadedParts.get(i);
+            CompletedPart.Builder completedPart = CompletedPart.builder().partNumber(uploadedPart.getPartNumber()).eTag(uploadedPart.getETag());
+            PartChecksum partChecksum = partChecksums != null ? partChecksums.get(i) : null;
+            if (partChecksum != null && partChecksum.getAlgorithm() == PartChecksum.Algorithm.CRC32C) {
+                // S3 wants the checksum of every part of an upload created for them
+                completedPart.checksumCRC32C(partChecksum.getValue());
+            }
+            completedParts.add(completedPart.build());
+        }
+        CompleteMultipartUploadRequest completeRequest = CompleteMultipartUploadRequest.builder()
+                .bucket(bucketName)
+                .key(key)
+                .uploadId(uploadId)
+                .multipartUpload(CompletedMultipartUpload.builder().parts(completedParts).build())
+                .build();
+        return join(s3AsyncClient.completeMultipartUpload(completeRequest)).eTag();
+    }
+
+    @Override
+    public void abortUpload(String bucketName, String key, String uploadId) {
+        join(s3AsyncClient.abortMultipartUpload(AbortMultipartUploadRequest.builder()
+                .bucket(bucketName)
+                .key(key)
+                .uploadId(uploadId)
+                .build()));
+    }
+
+    @Override
+    public List<ListedPart> listParts(String bucketName, String key, String uploadId) {
+        List<ListedPart> parts = new ArrayList<>();
+        Integer partNumberMarker = null;
+        ListPartsResponse listPartsResponse;
+        try {
+            do {
+                listPartsResponse = join(s3AsyncClient.listParts(ListPartsRequest.builder()
+                        .bucket(bucketName)
+                        .key(key)
+                        .uploadId(uploadId)
+                        .partNumberMarker(partNumberMarker)
+                        .build()));
+                for (Part part : listPartsResponse.parts()) {
+                    parts.add(new ListedPart(part.partNumber(), part.size(), part.eTag()));
+                }
+                partNumberMarker = listPartsResponse.nextPartNumberMarker();
+            } while (Boolean.TRUE.equals(listPartsResponse.isTruncated()));
+        } catch (AwsServiceException e) {
+            if (e.statusCode() == 404) {
+                return null;
+            }
+            throw e;
+        }
+        return parts;
+    }
+
+    @Override
+    public String putObject(String bucketName, String key, PartPayload payload, PartChecksum checksum) {
+        PutObjectRequest.Builder putRequest = PutObjectRequest.builder()
+                .bucket(bucketName)
+                .key(key)
+                .contentType(CONTENT_TYPE)
+                .contentLength(payload.size());
+        if (checksum != null && checksum.getAlgorithm() == PartChecksum.Algorithm.CRC32C) {
+            putRequest.checksumAlgorithm(ChecksumAlgorithm.CRC32_C).checksumCRC32C(checksum.getValue());
+        } else if (checksum != null) {
+            putRequest.contentMD5(checksum.getValue());
+        }
+        return join(s3AsyncClient.putObject(putRequest.build(), requestBody(payload))).eTag();
+    }
+
+    /**
+     * Body sent straight from the buffers of the payload, paced chunk by chunk when the payload is rate limited.
+     */
+    private static AsyncRequestBody requestBody(PartPayload payload) {
+        if (payload instanceof RateLimitedPayload) {
+            return new PacedRequestBody((RateLimitedPayload) payload);
+        }
+        return AsyncRequestBody.fromByteBuffersUnsafe(payload.byteBuffers());
+    }
+
+    /**
+     * Waits for a request made once per upload, its failure is thrown as is instead of wrapped.
+     */
+    private static <T> T join(CompletableFuture<T> request) {
+        try {
+            return request.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+}
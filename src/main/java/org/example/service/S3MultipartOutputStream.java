@@ -0,0 +1,208 @@
+package org.example.service;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * OutputStream which uploads everything written to it as a S3 multipart upload.
+ * <p>
+ * Bytes are written in place into a {@link PartBuffer} taken from the pool of the upload, as soon as the part
+ * is full it is handed as is to {@link S3MultipartUpload#uploadPartAsync(PartPayload)} and the producer carries
+ * on writing into the next pooled part. {@link #close()} uploads the remaining bytes as the final part and
+ * completes the upload, so only the parts which are currently in flight are kept in memory instead of the
+ * whole file.
+ * <p>
+ * When the upload allows it, the multipart upload is only initiated once the first part is full: an object which
+ * ends within the first part is sent by a single putObject request on close.
+ * <p>
+ * The stream is not thread safe, it is meant to be written by a single producer (POI, Jackson, a zip stream...).
+ */
+public class S3MultipartOutputStream extends OutputStream {
+    private final S3MultipartUpload multipartUpload;
+
+    private PartBuffer part;
+    private boolean initialized;
+    private boolean closed;
+    private CompletableFuture<UploadResult> completion;
+
+    /**
+     * Initiates the multipart upload, unless small objects may be sent at once, the stream must either be closed
+     * to complete it or aborted. Part sizes are chosen by the {@link PartSizePolicy} of the upload.
+     */
+    public S3MultipartOutputStream(S3MultipartUpload multipartUpload) {
+        this.multipartUpload = multipartUpload;
+        if (!multipartUpload.isSingleRequestEnabled()) {
+            initializeUpload();
+        }
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        ensureOpen();
+        ensurePartHasRoom();
+        try {
+            part.write(b);
+        } catch (InterruptedException e) {
+            throw interrupted(e);
+        }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        ensureOpen();
+        if ((off | len) < 0 || len > b.length - off) {
+            throw new IndexOutOfBoundsException();
+        }
+        while (len > 0) {
+            ensurePartHasRoom();
+            int count;
+            try {
+                count = part.write(b, off, len);
+            } catch (InterruptedException e) {
+                throw interrupted(e);
+            }
+            off += count;
+            len -= count;
+        }
+    }
+
+    /**
+     * Parts can't be smaller than 5 MB, so flushing does not upload anything, bytes are shipped once a part is full.
+     */
+    @Override
+    public void flush() throws IOException {
+        ensureOpen();
+    }
+
+    /**
+     * Uploads the buffered bytes as the final part and waits for the multipart upload to complete, or sends
+     * them in one request if they are the whole of a small object.
+     *
+     * @throws IOException if the upload has failed, on this call and on every later one
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed && completion == null) {
+            // aborted, there is nothing left to complete
+            return;
+        }
+        try {
+            closeAsync().join();
+        } catch (CompletionException e) {
+            throw new IOException("Upload has failed", e.getCause() != null ? e.getCause() : e);
+        } catch (CancellationException e) {
+            throw new IOException("Upload has been cancelled", e);
+        }
+    }
+
+    /**
+     * Same as {@link #close()} without waiting for the parts still in flight, so the producer can move on to
+     * the next object while this one completes.
+     *
+     * @return completed with the result once the object is stored, or with the failure of the upload
+     */
+    public CompletableFuture<UploadResult> closeAsync() throws IOException {
+        if (closed) {
+            return completion != null ? completion
+                    : CompletableFuture.failedFuture(new CancellationException("Upload has been aborted"));
+        }
+        if (part == null) {
+            // nothing has been written, the object still needs one (empty) part
+            part = acquirePart();
+        }
+        closed = true;
+        PartBuffer finalPart = part;
+        part = null;
+        if (!initialized && multipartUpload.isSingleRequestSize(finalPart.size())) {
+            try {
+                completion = CompletableFuture.completedFuture(multipartUpload.uploadSingleRequest(finalPart));
+            } catch (RuntimeException e) {
+                completion = CompletableFuture.failedFuture(e);
+            }
+            return completion;
+        }
+        try {
+            initializeUpload();
+        } catch (RuntimeException e) {
+            finalPart.release();
+            completion = CompletableFuture.failedFuture(e);
+            return completion;
+        }
+        completion = multipartUpload.uploadFinalPartAsync(finalPart);
+        return completion;
+    }
+
+    /**
+     * Aborts the multipart upload without completing it, the bytes written so far are discarded.
+     */
+    public void abort() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (part != null) {
+            part.release();
+            part = null;
+        }
+        multipartUpload.abortUpload();
+    }
+
+    /**
+     * A full part is only shipped once more bytes arrive, so the final part is never empty.
+     *
+     * @throws IOException if the upload has failed, or refuses the part
+     */
+    private void ensurePartHasRoom() throws IOException {
+        if (part == null) {
+            part = acquirePart();
+        } else if (part.isFull()) {
+            PartBuffer fullPart = part;
+            part = null;
+            try {
+                initializeUpload();
+            } catch (RuntimeException e) {
+                fullPart.release();
+                throw new IOException("Upload has failed", e);
+            }
+            try {
+                // the part now belongs to the upload, its buffer goes back to the pool once uploaded or refused
+                multipartUpload.uploadPartAsync(fullPart);
+            } catch (RuntimeException e) {
+                throw new IOException("Upload has failed", e);
+            }
+            part = acquirePart();
+        }
+    }
+
+    private void initializeUpload() {
+        if (!initialized) {
+            multipartUpload.initializeUpload();
+            initialized = true;
+        }
+    }
+
+    private PartBuffer acquirePart() throws IOException {
+        try {
+            return multipartUpload.acquirePartBuffer();
+        } catch (InterruptedException e) {
+            throw interrupted(e);
+        }
+    }
+
+    private static InterruptedIOException interrupted(InterruptedException e) {
+        Thread.currentThread().interrupt();
+        InterruptedIOException interruptedIOException = new InterruptedIOException("Interrupted while waiting for a free part buffer");
+        interruptedIOException.initCause(e);
+        return interruptedIOException;
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+    }
+}
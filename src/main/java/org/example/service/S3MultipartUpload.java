@@ -3,105 +3,523 @@ package org.example.service;
 import com.amazonaws.regions.Regions;
 import com.amazonaws.services.s3.AmazonS3;
 import com.amazonaws.services.s3.AmazonS3ClientBuilder;
-import com.amazonaws.services.s3.internal.Constants;
 import com.amazonaws.services.s3.model.*;
-import org.apache.poi.ss.usermodel.Row;
-import org.apache.poi.ss.usermodel.Sheet;
-import org.apache.poi.ss.usermodel.Workbook;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 
 import java.io.*;
-import java.net.HttpURLConnection;
 import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+import java.util.zip.Checksum;
 
 //@Slf4j
 public class S3MultipartUpload {
-    private static final int AWAIT_TIME = 2; // in seconds
-    private static final int DEFAULT_THREAD_COUNT = 4;
-
     private final String destBucketName;
     private final String filename;
 
-    private final ThreadPoolExecutor executorService;
-    private final AmazonS3 s3Client;
+    // part requests run on a scheduler shared with the other uploads, through a queue of their own
+    private final UploadScheduler.TaskQueue taskQueue;
+    // the storage the upload is sent to, S3 through the v1 or the v2 client
+    private final ObjectSink objectSink;
+    private final InFlightLimiter inFlightLimiter;
+    private final PartBufferPool partBufferPool;
+    private final PartSizePolicy partSizePolicy;
+    // size of the parts of objects cut up front, such as local files
+    private final long preferredPartSize;
+    private final RetryPolicy retryPolicy;
+    // retries left for all the parts of this upload
+    private final AtomicInteger retryBudget;
+    // the limiter shared with other uploads, then the one of this upload if it has a rate of its own
+    private final List<BandwidthLimiter> bandwidthLimiters;
+    // null when slow parts are not hedged
+    private final HedgingPolicy hedgingPolicy;
+    // null when parts are never spilled to disk
+    private final PartSpiller partSpiller;
+    // null when parts are sent without checksum
+    private final PartChecksum.Algorithm checksumAlgorithm;
+    // null when the object is sent in clear
+    private final PartEncryption.ObjectEncryption objectEncryption;
 
     private String uploadId;
 
-    // uploadPartId should be between 1 to 10000 inclusively
+    // objects up to this size are sent by a single putObject request
+    private final long singleRequestThreshold;
+
+    private final Path journalPath;
+    private PartJournal partJournal;
+    // parts of a resumed upload which S3 still holds, by part number
+    private Map<Integer, PartJournal.Entry> storedParts = Collections.emptyMap();
+
+    private static final int MAX_PART_NUMBER = 10000;
+
+    // completes and aborts uploads off the threads finishing the parts: those of a non-blocking client are the
+    // very threads which deliver the answers the completion and the abort wait for
+    private static final ExecutorService COMPLETION_EXECUTOR = Executors.newCachedThreadPool(new CompletionThreadFactory());
+
+    // uploadPartId should be between 1 to 10000 inclusively, it is assigned when a part is submitted
+    // so part numbers follow the order in which the producer handed over the bytes
     private final AtomicInteger uploadPartId = new AtomicInteger(0);
 
-    private final List<Future<PartETag>> futuresPartETags = new ArrayList<>();
+    private final AtomicLong submittedBytes = new AtomicLong(0);
+
+    private final List<PartUploadTask> partUploadTasks = new ArrayList<>();
+
+    // first part failure, or the abort, after which no part is accepted anymore
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+    private final long startNanos = System.nanoTime();
 
     public S3MultipartUpload(String destBucketName, String filename, AmazonS3 s3Client) {
-        this.executorService = (ThreadPoolExecutor) Executors.newFixedThreadPool(DEFAULT_THREAD_COUNT);
+        this(destBucketName, filename, s3Client, new S3MultipartUploadConfig());
+    }
+
+    public S3MultipartUpload(String destBucketName, String filename, AmazonS3 s3Client, S3MultipartUploadConfig config) {
+        this(destBucketName, filename, new AmazonS3Sink(s3Client), config);
+    }
+
+    public S3MultipartUpload(String destBucketName, String filename, ObjectSink objectSink) {
+        this(destBucketName, filename, objectSink, new S3MultipartUploadConfig());
+    }
+
+    public S3MultipartUpload(String destBucketName, String filename, ObjectSink objectSink, S3MultipartUploadConfig config) {
+        this.taskQueue = config.getUploadScheduler().newQueue();
         this.destBucketName = destBucketName;
         this.filename = filename;
-        this.s3Client = s3Client;
+        this.objectSink = objectSink;
+        this.inFlightLimiter = new InFlightLimiter(config.getMaxInFlightParts(), config.getMaxInFlightBytes());
+        this.partBufferPool = config.getPartBufferPool();
+        this.partSizePolicy = new PartSizePolicy(config.getPartSize(), maxPartSize(partBufferPool),
+                config.getExpectedObjectSize(), config.isAdaptivePartSize());
+        this.preferredPartSize = config.getPartSize();
+        this.retryPolicy = config.getRetryPolicy();
+        this.retryBudget = new AtomicInteger(retryPolicy.getRetryBudget());
+        this.journalPath = config.getJournalPath();
+        this.hedgingPolicy = config.getHedgingPolicy();
+        this.partSpiller = config.getPartSpiller();
+        this.checksumAlgorithm = config.getChecksumAlgorithm();
+        this.objectEncryption = config.getPartEncryption() != null ? config.getPartEncryption().newObject() : null;
+        if (objectEncryption != null && journalPath != null) {
+            // a resumed upload would encrypt its new parts with another IV than the stored ones
+            throw new IllegalArgumentException("Encrypted uploads can't be journaled");
+        }
+        this.bandwidthLimiters = config.getMaxBytesPerSecond() > 0
+                ? List.of(config.getBandwidthLimiter(), new BandwidthLimiter(config.getMaxBytesPerSecond()))
+                : List.of(config.getBandwidthLimiter());
+        // the whole object has to fit in the first part to be sent at once, and journaled uploads stay resumable
+        this.singleRequestThreshold = journalPath == null
+                ? Math.min(config.getSingleRequestThreshold(), maxPartSize(partBufferPool)) : 0;
     }
 
     /**
      * We need to call initialize upload method before calling any upload part.
+     * <p>
+     * With a journal, an interrupted upload of the same object is resumed: the parts S3 still holds are not
+     * uploaded again as long as the producer hands over the same bytes for them.
+     *
+     * @return true if an interrupted upload has been resumed, false if a new upload has been initiated
      */
     public boolean initializeUpload() {
+        if (journalPath != null) {
+            try {
+                partJournal = PartJournal.open(journalPath);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            if (resumeFromJournal()) {
+                return true;
+            }
+        }
 
-        InitiateMultipartUploadRequest initRequest = new InitiateMultipartUploadRequest(destBucketName, filename);
-        initRequest.setObjectMetadata(getObjectMetadata()); // if we want to set object metadata in S3 bucket
-        initRequest.setTagging(getObjectTagging()); // if we want to set object tags in S3 bucket
-
-        uploadId = s3Client.initiateMultipartUpload(initRequest).getUploadId();
+        uploadId = objectSink.initiateUpload(destBucketName, filename, checksumAlgorithm);
+        if (partJournal != null) {
+            partJournal.startUpload(destBucketName, filename, uploadId);
+        }
 
         return false;
     }
 
+    /**
+     * Keeps the journaled parts which S3 lists for the journaled upload, with the same size and ETag.
+     */
+    private boolean resumeFromJournal() {
+        if (!partJournal.isUploadOf(destBucketName, filename)) {
+            return false;
+        }
+        String journaledUploadId = partJournal.getUploadId();
+        List<ListedPart> storedPartList = objectSink.listParts(destBucketName, filename, journaledUploadId);
+        if (storedPartList == null) {
+            System.out.println(String.format("Journaled upload %s of %s no longer exists, starting over", journaledUploadId, filename));
+            return false;
+        }
+        Map<Integer, ListedPart> listedParts = new HashMap<>();
+        for (ListedPart part : storedPartList) {
+            listedParts.put(part.getPartNumber(), part);
+        }
+
+        Map<Integer, PartJournal.Entry> resumedParts = new HashMap<>();
+        for (PartJournal.Entry entry : partJournal.getEntries().values()) {
+            ListedPart listedPart = listedParts.get(entry.getPartNumber());
+            if (listedPart != null && listedPart.getSize() == entry.getLength()
+                    && unquote(listedPart.getETag()).equals(unquote(entry.getETag()))) {
+                resumedParts.put(entry.getPartNumber(), entry);
+            }
+        }
+        uploadId = journaledUploadId;
+        storedParts = resumedParts;
+        System.out.println(String.format("Resuming upload %s of %s, %d parts already stored", uploadId, filename, resumedParts.size()));
+        return true;
+    }
+
+    private static String unquote(String eTag) {
+        return eTag == null ? "" : eTag.replace("\"", "");
+    }
+
+    /**
+     * Takes a part buffer from the pool of this upload, blocks while every buffer of the pool is in use.
+     * The producer fills the part in place up to its {@link PartBuffer#capacity()}, chosen by the
+     * {@link PartSizePolicy}, and passes it to {@link #uploadPartAsync(PartPayload)}. The buffers go back to
+     * the pool once the part is uploaded. A part which is not uploaded must be released.
+     */
+    public PartBuffer acquirePartBuffer() throws InterruptedException {
+        int partNumber = uploadPartId.get() + 1;
+        PartJournal.Entry storedPart = storedParts.get(partNumber);
+        if (storedPart != null && storedPart.getLength() >= PartSizePolicy.MIN_PART_SIZE) {
+            // cut the part where the interrupted upload did, so it can be matched with the stored one
+            return new PartBuffer(partBufferPool, storedPart.getLength());
+        }
+        long partSize = partSizePolicy.nextPartSize(partNumber, submittedBytes.get());
+        if (partNumber == 1) {
+            // the first part buffers a small object whole, see isSingleRequestEnabled()
+            partSize = Math.max(partSize, singleRequestThreshold);
+        }
+        // parts are made of whole pool buffers
+        long bufferSize = partBufferPool.getBufferSize();
+        partSize = (partSize + bufferSize - 1) / bufferSize * bufferSize;
+        return new PartBuffer(partBufferPool, partSize);
+    }
+
+    /**
+     * Submits a part for uploading, blocks while the in-flight part or byte limit is reached.
+     */
     public void uploadPartAsync(ByteArrayInputStream inputStream) {
-        submitTaskForUploading(inputStream, false);
+        uploadPartAsync(new InputStreamPayload(inputStream));
+    }
+
+    /**
+     * Submits a part for uploading, blocks while the in-flight part or byte limit is reached, unless the part
+     * can be spilled to disk, see {@link PartSpiller}.
+     * The payload belongs to the upload from now on and is released once the part is done, or straight away
+     * when this method throws.
+     */
+    public void uploadPartAsync(PartPayload payload) {
+        submitTaskForUploading(takeOver(payload), false);
+    }
+
+    /**
+     * Submits a part for uploading if the in-flight limits allow it within the given timeout.
+     *
+     * @return false if no in-flight slot was freed in time, the part has not been submitted in that case
+     */
+    public boolean tryUploadPartAsync(ByteArrayInputStream inputStream, long timeout, TimeUnit unit) {
+        return tryUploadPartAsync(new InputStreamPayload(inputStream), timeout, unit);
+    }
+
+    /**
+     * Submits a part for uploading if the in-flight limits allow it within the given timeout.
+     *
+     * @return false if no in-flight slot was freed in time, the payload still belongs to the caller in that case
+     */
+    public boolean tryUploadPartAsync(PartPayload payload, long timeout, TimeUnit unit) {
+        validateUploadState();
+        try {
+            if (!inFlightLimiter.tryAcquire(payload.size(), timeout, unit)) {
+                return false;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for an in-flight part to complete", e);
+        }
+        submitTaskForUploading(new PartRelease(payload, inFlightLimiter), false);
+        return true;
+    }
+
+    public CompletableFuture<UploadResult> uploadFinalPartAsync(ByteArrayInputStream inputStream) {
+        return uploadFinalPartAsync(new InputStreamPayload(inputStream));
     }
 
-    public void uploadFinalPartAsync(ByteArrayInputStream inputStream) {
+    /**
+     * Submits the final part, blocking only while the in-flight limits are reached and the part can't be spilled
+     * to disk, and completes the upload
+     * once every part is done without waiting for it. The upload is completed on a thread of its own, never on
+     * the thread of the client which finished the last part.
+     *
+     * @return completed with the result once the object is stored, or with the failure of the upload. A failed
+     * part has already cancelled the others and aborted the upload by then.
+     */
+    public CompletableFuture<UploadResult> uploadFinalPartAsync(PartPayload payload) {
+        CompletableFuture<?>[] uploadedPartFutures;
         try {
-            submitTaskForUploading(inputStream, true);
+            submitTaskForUploading(takeOver(payload), true);
+            synchronized (this) {
+                uploadedPartFutures = new CompletableFuture<?>[partUploadTasks.size()];
+                for (int i = 0; i < uploadedPartFutures.length; i++) {
+                    uploadedPartFutures[i] = partUploadTasks.get(i).uploadedPart;
+                }
+            }
+        } catch (RuntimeException e) {
+            this.failUpload(e);
+            return CompletableFuture.failedFuture(e);
+        }
+        return CompletableFuture.allOf(uploadedPartFutures).handleAsync((allParts, partFailure) -> completeUpload(),
+                COMPLETION_EXECUTOR);
+    }
 
-            // wait and get all PartETags from ExecutorService and submit it in CompleteMultipartUploadRequest
-            List<PartETag> partETags = new ArrayList<>();
-            for (Future<PartETag> partETagFuture : futuresPartETags) {
-                partETags.add(partETagFuture.get());
+    private UploadResult completeUpload() {
+        try {
+            throwIfFailed();
+            List<UploadedPart> uploadedParts = new ArrayList<>(partUploadTasks.size());
+            for (PartUploadTask partUploadTask : partUploadTasks) {
+                uploadedParts.add(partUploadTask.uploadedPart.join());
+            }
+            // sinks take the parts in ascending part number order, as CompleteMultipartUpload requires
+            uploadedParts.sort(Comparator.comparingInt(UploadedPart::getPartNumber));
+            // parts are numbered in the order they are submitted
+            List<PartChecksum> partChecksums = null;
+            String checksum = null;
+            if (checksumAlgorithm != null) {
+                partChecksums = new ArrayList<>(partUploadTasks.size());
+                for (PartUploadTask partUploadTask : partUploadTasks) {
+                    partChecksums.add(partUploadTask.checksum);
+                }
+                checksum = PartChecksum.objectChecksum(partChecksums);
+                System.out.println(String.format("Completing upload of %s with %s checksum %s", filename, checksumAlgorithm, checksum));
             }
 
             // Complete the multipart upload
-            CompleteMultipartUploadRequest completeRequest = new CompleteMultipartUploadRequest(destBucketName, filename, uploadId, partETags);
-            s3Client.completeMultipartUpload(completeRequest);
+            String eTag = objectSink.completeUpload(destBucketName, filename, uploadId, uploadedParts, partChecksums);
+            if (partJournal != null) {
+                partJournal.delete();
+            }
+            return newUploadResult(eTag, uploadedParts.size(), checksum);
+        } catch (RuntimeException e) {
+            this.failUpload(e);
+            throw e;
+        }
+    }
 
-        } catch (ExecutionException | InterruptedException e) {
-            e.printStackTrace();
+    private UploadResult newUploadResult(String eTag, int partCount, String checksum) {
+        long objectSize = submittedBytes.get() + (objectEncryption != null ? PartEncryption.HEADER_SIZE : 0);
+        return new UploadResult(destBucketName, filename, eTag, objectSize, partCount,
+                Duration.ofNanos(System.nanoTime() - startNanos), checksum);
+    }
+
+    /**
+     * Uploads a local file, every part straight from a memory-mapped range of it: the parts are cut up front
+     * and sent in parallel without being copied to the heap or taking buffers from the pool. The upload must not
+     * have been initialized, and the file must not change until the upload is done.
+     *
+     * @return completed with the result once the object is stored, or with the failure of the upload
+     * @throws IOException if the file can't be opened or mapped
+     */
+    public CompletableFuture<UploadResult> uploadFileAsync(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            if (isSingleRequestEnabled() && isSingleRequestSize(fileSize)) {
+                return CompletableFuture.completedFuture(uploadSingleRequest(new MappedFilePayload(channel, 0, fileSize)));
+            }
+
+            initializeUpload();
+            long partSize = PartSizePolicy.fixedPartSize(fileSize, preferredPartSize);
+            try {
+                long offset = 0;
+                for (; fileSize - offset > partSize; offset += partSize) {
+                    uploadPartAsync(new MappedFilePayload(channel, offset, partSize));
+                }
+                return uploadFinalPartAsync(new MappedFilePayload(channel, offset, fileSize - offset));
+            } catch (IOException | RuntimeException e) {
+                abortUpload();
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Whether small objects may skip the multipart upload, in which case {@link #initializeUpload()} is only
+     * needed once the first part is submitted, see {@link #isSingleRequestSize(long)}.
+     */
+    public boolean isSingleRequestEnabled() {
+        return singleRequestThreshold > 0;
+    }
+
+    /**
+     * Whether an object of the given size, buffered whole, is sent by {@link #uploadSingleRequest(PartPayload)}.
+     */
+    public boolean isSingleRequestSize(long objectSize) {
+        return objectSize <= singleRequestThreshold;
+    }
+
+    /**
+     * Sends a small object whole with one putObject request on the calling thread, instead of the three
+     * round-trips of a multipart upload. The upload must not have been initialized. The payload is released
+     * once sent.
+     */
+    public UploadResult uploadSingleRequest(PartPayload payload) {
+        try {
+            if (uploadId != null) {
+                throw new IllegalStateException("Multipart upload has already been initialized");
+            }
+            throwIfFailed();
+            PartPayload sentPayload = objectEncryption != null ? objectEncryption.encrypt(payload, 0, true) : payload;
+            PartChecksum checksum = checksumAlgorithm != null ? PartChecksum.compute(checksumAlgorithm, sentPayload) : null;
+            String eTag = sendWithRetries("putObject of " + filename, () -> {
+                System.out.println(String.format("Submitting putObject of %s of size: %d", filename, sentPayload.size()));
+                return objectSink.putObject(destBucketName, filename, RateLimitedPayload.of(sentPayload, bandwidthLimiters), checksum);
+            });
+            submittedBytes.set(payload.size());
+            return newUploadResult(eTag, 0, checksum != null ? checksum.objectChecksum() : null);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
             throw new RuntimeException(e);
         } finally {
-            // finally close the executor service
-            this.shutdownAndAwaitTermination();
+            payload.release();
+        }
+    }
+
+    /**
+     * Aborts the multipart upload, discarding every part which has already been uploaded.
+     * Parts which are still queued in the scheduler are cancelled. Does nothing if a failed part has
+     * already aborted the upload.
+     */
+    public void abortUpload() {
+        failUpload(new CancellationException("Multipart upload has been aborted"));
+    }
+
+    /**
+     * Records the first failure, cancels the parts which are still pending and aborts the upload right away,
+     * so neither bandwidth nor S3 storage is spent on an object which will never be completed.
+     */
+    private void failUpload(Throwable cause) {
+        if (recordFailure(cause)) {
+            abortStoredParts();
         }
+    }
 
+    /**
+     * Records the first failure and cancels the parts which are still pending, without blocking.
+     *
+     * @return false if the upload had already failed
+     */
+    private boolean recordFailure(Throwable cause) {
+        if (!failure.compareAndSet(null, cause)) {
+            return false;
+        }
+        System.out.println(String.format("Multipart upload of %s failed, cancelling the remaining parts: %s", filename, cause));
+        this.cancelPendingParts();
+        return true;
     }
 
     /**
-     * This method is used to shutdown executor service
+     * Aborts the upload in the sink, blocking until it answers.
      */
-    private void shutdownAndAwaitTermination() {
-        System.out.println("executor service await and shutdown");
-        this.executorService.shutdown();
+    private void abortStoredParts() {
+        if (uploadId != null && !uploadId.isEmpty()) {
+            objectSink.abortUpload(destBucketName, filename, uploadId);
+        }
+        if (partJournal != null) {
+            // an aborted upload can't be resumed
+            partJournal.delete();
+        }
+    }
+
+    private void throwIfFailed() {
+        Throwable cause = failure.get();
+        if (cause != null) {
+            throw new RuntimeException(String.format("Multipart upload of %s has failed", filename), cause);
+        }
+    }
+
+    /**
+     * Takes the parts which have not started out of the scheduler and cancels the requests of the running ones.
+     */
+    private synchronized void cancelPendingParts() {
+        // queued parts will never run, their slot and buffers are given back right away,
+        // running parts give them back once their request returns
+        for (Runnable task : taskQueue.drain()) {
+            if (task instanceof HedgeTask) {
+                ((HedgeTask) task).part.partRelease.drop();
+            } else {
+                ((PartUploadTask) task).partRelease.run();
+            }
+        }
+        for (PartUploadTask partUploadTask : partUploadTasks) {
+            partUploadTask.cancel();
+        }
+    }
+
+    /**
+     * Largest part which can be buffered: a whole number of pool buffers, leaving at least half of the pool
+     * to the other parts in flight.
+     */
+    private static long maxPartSize(PartBufferPool partBufferPool) {
+        long bufferSize = partBufferPool.getBufferSize();
+        long poolBuffers = Math.max(1, partBufferPool.getMaxBuffers() / 2);
+        return Math.min(PartSizePolicy.MAX_PART_SIZE / bufferSize, poolBuffers) * bufferSize;
+    }
+
+    /**
+     * Takes over a part handed to the upload, the part is released if the upload refuses it.
+     */
+    private PartRelease takeOver(PartPayload payload) {
         try {
-            this.executorService.awaitTermination(AWAIT_TIME, TimeUnit.SECONDS);
+            validateUploadState();
+            return acquireInFlightSlot(payload);
+        } catch (RuntimeException e) {
+            payload.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Takes an in-flight slot for the part. A buffered part which would have to wait for one is spilled to disk
+     * instead while the spiller has room left: it is sent from its file without taking a slot, and its buffers
+     * go back to the pool right away.
+     */
+    private PartRelease acquireInFlightSlot(PartPayload payload) {
+        try {
+            if (partSpiller != null && payload instanceof PartBuffer) {
+                if (inFlightLimiter.tryAcquire(payload.size(), 0, TimeUnit.NANOSECONDS)) {
+                    return new PartRelease(payload, inFlightLimiter);
+                }
+                PartPayload spilledPart = partSpiller.trySpill(payload);
+                if (spilledPart != null) {
+                    payload.release();
+                    return new PartRelease(spilledPart, null);
+                }
+            }
+            inFlightLimiter.acquire(payload.size());
+            return new PartRelease(payload, inFlightLimiter);
         } catch (InterruptedException e) {
-            System.out.println("Interrupted while awaiting ThreadPoolExecutor to shutdown");
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for an in-flight part to complete", e);
         }
-        this.executorService.shutdownNow();
     }
 
-    private void submitTaskForUploading(ByteArrayInputStream inputStream, boolean isFinalPart) {
+    private void validateUploadState() {
         if (uploadId == null || uploadId.isEmpty()) {
             throw new IllegalStateException("Initial Multipart Upload Request has not been set.");
         }
@@ -113,134 +531,542 @@ public class S3MultipartUpload {
         if (filename == null || filename.isEmpty()) {
             throw new IllegalStateException("Uploading file name has not been set.");
         }
+    }
+
+    /**
+     * The caller must have acquired an in-flight slot for the part unless it has been spilled, it is released
+     * once the part is done together with the payload.
+     * <p>
+     * Numbering and queueing happen under the same lock, so with several producers the part numbers still
+     * match the order of {@link #partUploadTasks}.
+     */
+    private synchronized void submitTaskForUploading(PartRelease partRelease, boolean isFinalPart) {
+        PartPayload payload = partRelease.payload;
+        if (failure.get() != null) {
+            // fail the producer fast, there is no point generating the rest of the object
+            partRelease.run();
+            throwIfFailed();
+        }
+        if (uploadPartId.get() >= MAX_PART_NUMBER) {
+            partRelease.run();
+            throw new IllegalStateException(String.format("Multipart upload can't have more than %d parts", MAX_PART_NUMBER));
+        }
+        int eachPartId = uploadPartId.incrementAndGet();
+        long offset = submittedBytes.getAndAdd(payload.size());
+        if (objectEncryption != null) {
+            // encrypted by the part request as it is sent, the first part carries the header of the object
+            payload = objectEncryption.encrypt(payload, offset, eachPartId == 1);
+            offset = eachPartId == 1 ? 0 : offset + PartEncryption.HEADER_SIZE;
+        }
+        submitTaskToScheduler(new PartUploadTask(eachPartId, offset, payload, isFinalPart, partRelease));
+    }
+
+    /**
+     * Uploads the part unless a resumed upload already holds the very same bytes for it, and journals it.
+     * The checksum of the part is computed on the calling scheduler thread, by the first request of the part.
+     *
+     * @param request the request sending the part, through which it is cancelled
+     */
+    private CompletableFuture<UploadedPart> uploadPart(PartUploadTask part, PartRequest request) {
+        int eachPartId = part.partNumber;
+        long offset = part.offset;
+        PartPayload payload = part.payload;
+        boolean isFinalPart = part.isFinalPart;
+        PartChecksum checksum = part.checksum;
+        if (checksum == null && checksumAlgorithm != null) {
+            // a hedged request racing the first one computes the same value
+            checksum = PartChecksum.compute(checksumAlgorithm, payload);
+            part.checksum = checksum;
+        }
+        if (partJournal == null) {
+            return sendPart(eachPartId, offset, request, checksum, isFinalPart);
+        }
+
+        long crc32c = PartJournal.crc32c(payload);
+        PartJournal.Entry storedPart = storedParts.get(eachPartId);
+        if (storedPart != null && storedPart.getOffset() == offset && storedPart.getLength() == payload.size()
+                && storedPart.getCrc32c() == crc32c) {
+            System.out.println(String.format("Skipping uploadPartId: %d, already stored by upload %s", eachPartId, uploadId));
+            return CompletableFuture.completedFuture(new UploadedPart(eachPartId, storedPart.getETag()));
+        }
 
-        submitTaskToExecutorService(() -> {
-            int eachPartId = uploadPartId.incrementAndGet();
-            UploadPartRequest uploadRequest = new UploadPartRequest()
-                    .withBucketName(destBucketName)
-                    .withKey(filename)
-                    .withUploadId(uploadId)
-                    .withPartNumber(eachPartId) // partNumber should be between 1 and 10000 inclusively
-                    .withPartSize(inputStream.available())
-                    .withInputStream(inputStream);
+        return sendPart(eachPartId, offset, request, checksum, isFinalPart).thenApply(uploadedPart -> {
+            partJournal.recordPart(new PartJournal.Entry(eachPartId, offset, payload.size(), uploadedPart.getETag(), crc32c));
+            return uploadedPart;
+        });
+    }
 
-            if (isFinalPart) {
-                uploadRequest.withLastPart(true);
+    private CompletableFuture<UploadedPart> sendPart(int eachPartId, long offset, PartRequest request, PartChecksum checksum,
+                                                     boolean isFinalPart) {
+        System.out.println(String.format("Submitting uploadPartId: %d of partSize: %d", eachPartId, request.size()));
+
+        long start = System.nanoTime();
+        PartPayload sentPayload = RateLimitedPayload.of(request, bandwidthLimiters);
+        return request.started(objectSink.uploadPart(destBucketName, filename, uploadId, eachPartId, offset, sentPayload,
+                        checksum, isFinalPart))
+                .thenApply(uploadedPart -> {
+                    long elapsedNanos = System.nanoTime() - start;
+                    partSizePolicy.recordPart(request.size(), elapsedNanos);
+                    if (hedgingPolicy != null) {
+                        hedgingPolicy.recordPart(request.size(), elapsedNanos);
+                    }
+                    if (!isFinalPart) {
+                        // the short final part would look like a slow one to the adaptive concurrency
+                        taskQueue.recordRequest(request.size(), elapsedNanos);
+                    }
+                    System.out.println(String.format("Successfully submitted uploadPartId: %d", eachPartId));
+                    return uploadedPart;
+                });
+    }
+
+    /**
+     * Sends a blocking request, sending it again from its payload as long as the {@link RetryPolicy} allows it.
+     */
+    private <T> T sendWithRetries(String requestName, Supplier<T> request) throws InterruptedException {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return request.get();
+            } catch (RuntimeException e) {
+                long backoffMillis = retryBackoff(requestName, e, attempt);
+                if (backoffMillis < 0) {
+                    throw e;
+                }
+                TimeUnit.MILLISECONDS.sleep(backoffMillis);
             }
+        }
+    }
 
-            System.out.println(String.format("Submitting uploadPartId: %d of partSize: %d", eachPartId, inputStream.available()));
+    /**
+     * Delay before sending a failed request again, or -1 if the {@link RetryPolicy} does not allow it.
+     */
+    private long retryBackoff(String requestName, Throwable cause, int attempt) {
+        RetryPolicy.Failure failure = retryPolicy.classify(cause);
+        if (failure == RetryPolicy.Failure.THROTTLED) {
+            taskQueue.recordThrottled();
+        }
+        if (failure == RetryPolicy.Failure.FATAL || attempt >= retryPolicy.getMaxAttempts()
+                || retryBudget.getAndDecrement() <= 0) {
+            return -1;
+        }
+        long backoffMillis = retryPolicy.backoffMillis(failure, attempt);
+        System.out.println(String.format("Retrying %s in %d ms after %s failure of attempt %d: %s",
+                requestName, backoffMillis, failure, attempt, cause.getMessage()));
+        return backoffMillis;
+    }
 
-            UploadPartResult uploadResult = s3Client.uploadPart(uploadRequest);
+    private void submitTaskToScheduler(PartUploadTask partUploadTask) {
+        // we are submitting each part in the scheduler and it does not matter which part gets upload first
+        // because each part has been assigned its PartNumber from "uploadPartId.incrementAndGet()" before
+        // being submitted, and S3 will accumulate file by using PartNumber order after CompleteMultipartUploadRequest.
+        this.taskQueue.submit(partUploadTask);
+        this.partUploadTasks.add(partUploadTask);
+    }
 
-            System.out.println(String.format("Successfully submitted uploadPartId: %d", eachPartId));
-            return uploadResult.getPartETag();
-        });
+    /**
+     * Upload of one part, run by the scheduler once per attempt. A blocking sink sends the part while the task
+     * runs, a non-blocking one completes it later from its own threads. Either way the in-flight slot and payload
+     * of the part are given back once it is done, including when it was cancelled before starting.
+     * <p>
+     * A failed attempt goes back to the scheduler after its backoff as long as the {@link RetryPolicy} allows it,
+     * without holding a thread while it waits. A part failing once its retries are exhausted fails the whole
+     * upload straight away.
+     * <p>
+     * With a {@link HedgingPolicy}, a first attempt still in flight after the hedge delay is sent a second time by
+     * a {@link HedgeTask}. The first of the two requests to succeed completes the part and cancels the other, see
+     * {@link PartRequest}.
+     */
+    private final class PartUploadTask implements UploadScheduler.AsyncTask {
+        private final int partNumber;
+        private final long offset;
+        private final PartPayload payload;
+        private final boolean isFinalPart;
+        private final PartRelease partRelease;
+        private final CompletableFuture<UploadedPart> uploadedPart = new CompletableFuture<>();
+
+        private int attempt;
+        // request of the current attempt, cancelled when the part is
+        private PartRequest request;
+        private HedgeTask hedgeTask;
+        // computed once for all the requests of the part
+        private volatile PartChecksum checksum;
+
+        private PartUploadTask(int partNumber, long offset, PartPayload payload, boolean isFinalPart, PartRelease partRelease) {
+            this.partNumber = partNumber;
+            this.offset = offset;
+            this.payload = payload;
+            this.isFinalPart = isFinalPart;
+            this.partRelease = partRelease;
+        }
+
+        @Override
+        public CompletionStage<?> start() {
+            if (uploadedPart.isDone()) {
+                // cancelled while waiting for its turn or for its retry
+                partRelease.run();
+                return uploadedPart;
+            }
+            attempt++;
+            // the single stream of an InputStreamPayload can't be read by two requests at once
+            if (attempt == 1 && hedgingPolicy != null && !(partRelease.payload instanceof InputStreamPayload)) {
+                long hedgeDelayNanos = hedgingPolicy.hedgeDelayNanos(payload.size());
+                if (hedgeDelayNanos >= 0) {
+                    CompletableFuture.delayedExecutor(hedgeDelayNanos, TimeUnit.NANOSECONDS).execute(this::hedge);
+                }
+            }
+            CompletableFuture<UploadedPart> attemptResult;
+            PartRequest attemptRequest = new PartRequest(payload);
+            synchronized (this) {
+                request = attemptRequest;
+            }
+            try {
+                attemptResult = uploadPart(this, attemptRequest);
+            } catch (RuntimeException e) {
+                attemptResult = CompletableFuture.failedFuture(e);
+            }
+            return attemptResult.handle((result, error) -> {
+                attemptDone(result, error);
+                return null;
+            });
+        }
+
+        private void attemptDone(UploadedPart result, Throwable error) {
+            if (error == null) {
+                partRelease.run();
+                uploadedPart.complete(result);
+                cancelHedge();
+                return;
+            }
+            Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+            long backoffMillis = uploadedPart.isDone() ? -1 : retryBackoff("uploadPartId: " + partNumber, cause, attempt);
+            if (backoffMillis >= 0) {
+                // the part keeps its slot and payload until it is sent again
+                CompletableFuture.delayedExecutor(backoffMillis, TimeUnit.MILLISECONDS).execute(this::retry);
+                return;
+            }
+            partRelease.run();
+            if (!uploadedPart.isDone()) {
+                // the failure is recorded before the part completes, so completion finds it, the abort is left
+                // to another thread as this one may belong to the client which has to answer it
+                if (recordFailure(cause)) {
+                    COMPLETION_EXECUTOR.execute(() -> {
+                        try {
+                            abortStoredParts();
+                        } catch (RuntimeException abortFailure) {
+                            System.out.println(String.format("Unable to abort multipart upload of %s: %s", filename, abortFailure));
+                        }
+                    });
+                }
+                uploadedPart.completeExceptionally(cause);
+            }
+        }
+
+        private void retry() {
+            if (uploadedPart.isDone()) {
+                // the upload has failed or been aborted during the backoff
+                partRelease.run();
+            } else {
+                taskQueue.submit(this);
+            }
+        }
+
+        /**
+         * Sends the part a second time, ahead of the parts waiting for their turn, unless it is done already.
+         */
+        private void hedge() {
+            if (uploadedPart.isDone() || !partRelease.retain()) {
+                return;
+            }
+            HedgeTask hedge = new HedgeTask(this);
+            synchronized (this) {
+                hedgeTask = hedge;
+            }
+            hedgingPolicy.recordHedge();
+            System.out.println(String.format("Hedging uploadPartId: %d, still in flight after the hedge delay", partNumber));
+            taskQueue.submitFirst(hedge);
+        }
+
+        private void cancel() {
+            uploadedPart.cancel(false);
+            cancelRequest();
+            cancelHedge();
+        }
+
+        private void cancelRequest() {
+            PartRequest current;
+            synchronized (this) {
+                current = request;
+            }
+            if (current != null) {
+                current.cancel();
+            }
+        }
+
+        private void cancelHedge() {
+            HedgeTask hedge;
+            synchronized (this) {
+                hedge = hedgeTask;
+            }
+            if (hedge != null) {
+                hedge.request.cancel();
+            }
+        }
+    }
+
+    /**
+     * Second request for a slow part. Its failure is ignored, the part goes on with its own attempts; its success
+     * completes the part if the first request has not answered yet. It holds the payload of the part until it
+     * is done.
+     */
+    private final class HedgeTask implements UploadScheduler.AsyncTask {
+        private final PartUploadTask part;
+        private final PartRequest request;
+
+        private HedgeTask(PartUploadTask part) {
+            this.part = part;
+            this.request = new PartRequest(part.payload);
+        }
+
+        @Override
+        public CompletionStage<?> start() {
+            if (part.uploadedPart.isDone()) {
+                part.partRelease.drop();
+                return CompletableFuture.completedFuture(null);
+            }
+            CompletableFuture<UploadedPart> hedgeResult;
+            try {
+                hedgeResult = uploadPart(part, request);
+            } catch (RuntimeException e) {
+                hedgeResult = CompletableFuture.failedFuture(e);
+            }
+            return hedgeResult.handle((result, error) -> {
+                if (error == null && part.uploadedPart.complete(result)) {
+                    hedgingPolicy.recordHedgeWin();
+                    System.out.println(String.format("Hedged uploadPartId: %d answered first", part.partNumber));
+                    part.cancelRequest();
+                }
+                part.partRelease.drop();
+                return null;
+            });
+        }
+    }
+
+    /**
+     * Gives back the in-flight slot and the payload of a part exactly once, whether the part has been
+     * uploaded, has failed or has been cancelled before it started. A hedged request still reading the payload
+     * holds it until it is done.
+     */
+    private static final class PartRelease implements Runnable {
+        private final PartPayload payload;
+        // null for a spilled part, which holds no in-flight slot
+        private final InFlightLimiter inFlightLimiter;
+        private final AtomicBoolean released = new AtomicBoolean(false);
+        // the part itself, plus its hedged request while there is one
+        private final AtomicInteger holders = new AtomicInteger(1);
+
+        private PartRelease(PartPayload payload, InFlightLimiter inFlightLimiter) {
+            this.payload = payload;
+            this.inFlightLimiter = inFlightLimiter;
+        }
+
+        @Override
+        public void run() {
+            if (released.compareAndSet(false, true)) {
+                drop();
+            }
+        }
+
+        /**
+         * Holds the payload for a hedged request, unless it has already been given back.
+         */
+        private boolean retain() {
+            int current;
+            do {
+                current = holders.get();
+                if (current == 0 || released.get()) {
+                    return false;
+                }
+            } while (!holders.compareAndSet(current, current + 1));
+            return true;
+        }
+
+        private void drop() {
+            if (holders.decrementAndGet() == 0) {
+                if (inFlightLimiter != null) {
+                    inFlightLimiter.release(payload.size());
+                }
+                payload.release();
+            }
+        }
     }
 
-    private void submitTaskToExecutorService(Callable<PartETag> callable) {
-        // we are submitting each part in executor service and it does not matter which part gets upload first
-        // because in each part we have assigned PartNumber from "uploadPartId.incrementAndGet()"
-        // and S3 will accumulate file by using PartNumber order after CompleteMultipartUploadRequest
-        Future<PartETag> partETagFuture = this.executorService.submit(callable);
-        this.futuresPartETags.add(partETagFuture);
+    /**
+     * One request sending a part, which can be cancelled without interrupting the thread sending it: interrupting
+     * a thread within a file channel operation closes the channel, and a non-blocking client is not sending from
+     * the thread which started the request anyway.
+     * <p>
+     * Once cancelled, the streams of the request fail their next read with an unchecked
+     * {@link CancellationException}, which a blocking client gives up on at once instead of retrying it, and the
+     * future of a non-blocking client is cancelled, which aborts its request.
+     */
+    private static final class PartRequest implements PartPayload {
+        private final PartPayload payload;
+        private volatile boolean cancelled;
+        // future returned by the sink once the request has been started
+        private CompletableFuture<UploadedPart> sinkRequest;
+
+        private PartRequest(PartPayload payload) {
+            this.payload = payload;
+        }
+
+        /**
+         * Keeps the future of the started request, cancelled straight away if the request already is.
+         */
+        private CompletableFuture<UploadedPart> started(CompletableFuture<UploadedPart> sinkRequest) {
+            synchronized (this) {
+                this.sinkRequest = sinkRequest;
+            }
+            if (cancelled) {
+                sinkRequest.cancel(false);
+            }
+            return sinkRequest;
+        }
+
+        private void cancel() {
+            cancelled = true;
+            CompletableFuture<UploadedPart> started;
+            synchronized (this) {
+                started = sinkRequest;
+            }
+            if (started != null) {
+                started.cancel(false);
+            }
+        }
+
+        @Override
+        public long size() {
+            return payload.size();
+        }
+
+        @Override
+        public InputStream newInputStream() {
+            throwIfCancelled();
+            return new FilterInputStream(payload.newInputStream()) {
+                @Override
+                public int read() throws IOException {
+                    throwIfCancelled();
+                    return super.read();
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) throws IOException {
+                    throwIfCancelled();
+                    return super.read(b, off, len);
+                }
+            };
+        }
+
+        @Override
+        public ByteBuffer[] byteBuffers() {
+            throwIfCancelled();
+            return payload.byteBuffers();
+        }
+
+        @Override
+        public void updateChecksum(Checksum checksum) {
+            payload.updateChecksum(checksum);
+        }
+
+        @Override
+        public void updateDigest(MessageDigest digest) {
+            payload.updateDigest(digest);
+        }
+
+        @Override
+        public void release() {
+            // the payload of the part is released once the part is done, not by one of its requests
+        }
+
+        private void throwIfCancelled() {
+            if (cancelled) {
+                throw new CancellationException("Part request has been cancelled");
+            }
+        }
     }
 
-    private ObjectTagging getObjectTagging() {
-        // create tags list for uploading file
-        return new ObjectTagging(new ArrayList<>());
+    /**
+     * Adapts the ByteArrayInputStream parts of the original API, the stream is rewound to its start for
+     * every read of the part. Every read shares the one stream, so such parts are never hedged.
+     */
+    private static final class InputStreamPayload implements PartPayload {
+        private final ByteArrayInputStream inputStream;
+        private final long size;
+
+        private InputStreamPayload(ByteArrayInputStream inputStream) {
+            this.inputStream = inputStream;
+            this.size = inputStream.available();
+        }
+
+        @Override
+        public long size() {
+            return size;
+        }
+
+        @Override
+        public InputStream newInputStream() {
+            inputStream.reset();
+            return inputStream;
+        }
+
+        @Override
+        public void release() {
+        }
     }
 
-    private ObjectMetadata getObjectMetadata() {
-        // create metadata for uploading file
-        ObjectMetadata objectMetadata = new ObjectMetadata();
-        objectMetadata.setContentType("application/zip");
-        return objectMetadata;
+    private static final class CompletionThreadFactory implements ThreadFactory {
+        private static final AtomicInteger THREAD_NUMBER = new AtomicInteger(0);
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "s3-upload-completion-" + THREAD_NUMBER.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
     }
 
+    /**
+     * Uploads the sample offer report, or with a source URL (and optionally a key) relays that file to the
+     * bucket through parallel range requests, see {@link HttpRangeRelay}.
+     */
     public static void main(String... args) {
 
-        final int UPLOAD_PART_SIZE = 10 * Constants.MB; // Part Size should not be less than 5 MB while using MultipartUpload
         final String destBucketName = "sysco-bcg-personalization";
         final String filename = "File1_direct_test";
 
         AmazonS3 s3Client = AmazonS3ClientBuilder.standard().withRegion(Regions.US_EAST_1).build();
-        S3MultipartUpload multipartUpload = new S3MultipartUpload(destBucketName, filename, s3Client);
-        multipartUpload.initializeUpload();
-
-        URL url = null;
-        HttpURLConnection connection = null;
+        // part buffers are recycled from one report to the next through the default pool instead of being
+        // allocated for every part, part sizes start at 10 MB and grow while larger parts upload faster
+        S3MultipartUploadConfig uploadConfig = new S3MultipartUploadConfig();
 
         try {
-
-            url = new URL("_remote_url_of_uploading_file_");
-
-            connection = (HttpURLConnection) url.openConnection();
-            connection.setRequestMethod("GET");
+            if (args.length > 0) {
+                URL url = new URL(args[0]);
+                String key = args.length > 1 ? args[1] : filename;
+                UploadResult result = new HttpRangeRelay(new AmazonS3Sink(s3Client), uploadConfig)
+                        .relay(url, destBucketName, key);
+                System.out.println(String.format("Relayed %s to %s", url, result));
+                return;
+            }
 
             OfferReport offerReport = new OfferReport();
             offerReport.setCustomerId("cid");
             offerReport.setProductId("pid");
             offerReport.setErrorMsg("cus err msg");
-            Map<String, List<OfferReport>> offerReportMap = Map.of("File1_direct_test",
+            Map<String, List<OfferReport>> offerReportMap = Map.of(filename,
                     Collections.singletonList(offerReport));
 
-            for (String name : offerReportMap.keySet()) {
-                Workbook workBook = new XSSFWorkbook();
-                Sheet sheet1 = workBook.createSheet("Summary");
-                Sheet sheet2 = workBook.createSheet("PDIS");
-                Sheet sheet3 = workBook.createSheet("CP");
-                sheet1.setColumnWidth(0, 2560);
-                sheet1.setColumnWidth(1, 2560);
-                Row row = sheet1.createRow(0);
-                row.createCell(0).setCellValue("Total Customers");
-                row.createCell(1).setCellValue("10");
-//                File file = new File(name + ".xlsx");
-//                file.createNewFile();
-//                FileOutputStream outputStream = new FileOutputStream(file, false);
-//                workBook.write(outputStream);
-
-                InputStream inputStream = workBookToInputStream(workBook);
-
-                int bytesRead, bytesAdded = 0;
-                byte[] data = new byte[UPLOAD_PART_SIZE];
-                ByteArrayOutputStream bufferOutputStream = new ByteArrayOutputStream();
-
-                while ((bytesRead = inputStream.read(data, 0, data.length)) != -1) {
-
-                    bufferOutputStream.write(data, 0, bytesRead);
-
-                    if (bytesAdded < UPLOAD_PART_SIZE) {
-                        // continue writing to same output stream unless it's size gets more than UPLOAD_PART_SIZE
-                        bytesAdded += bytesRead;
-                        continue;
-                    }
-                    multipartUpload.uploadPartAsync(new ByteArrayInputStream(bufferOutputStream.toByteArray()));
-                    bufferOutputStream.reset(); // flush the bufferOutputStream
-                    bytesAdded = 0; // reset the bytes added to 0
-                }
-
-                // upload remaining part of output stream as final part
-                // bufferOutputStream size can be less than 5 MB as it is the last part of upload
-                multipartUpload.uploadFinalPartAsync(new ByteArrayInputStream(bufferOutputStream.toByteArray()));
-            }
+            new UploadToS3Impl(new AmazonS3Sink(s3Client), destBucketName, uploadConfig).writeAsStreamToS3(offerReportMap);
         } catch (Exception e) {
             e.printStackTrace();
-        } finally {
-            if (connection != null) {
-                connection.disconnect();
-            }
-        }
-    }
-
-    private static InputStream workBookToInputStream(Workbook workBook) throws IOException {
-        // Convert Workbook to InputStream
-        return new ByteArrayInputStream(workBookToByteArray(workBook));
-    }
-
-    private static byte[] workBookToByteArray(Workbook workBook) throws IOException {
-        try (ByteArrayOutputStream bos = new ByteArrayOutputStream()) {
-            workBook.write(bos);
-            return bos.toByteArray();
         }
     }
 
@@ -0,0 +1,233 @@
+package org.example.service;
+
+import java.nio.file.Path;
+
+/**
+ * Tuning knobs of a {@link S3MultipartUpload}, every setting has a default so only the ones which matter
+ * for a given upload need to be set.
+ */
+public class S3MultipartUploadConfig {
+
+    private UploadScheduler uploadScheduler = UploadScheduler.shared();
+
+    // buffered parts of one upload waiting for, or in, a request of the shared scheduler, which bounds the threads
+    private int maxInFlightParts = 8;
+
+    private long maxInFlightBytes = Long.MAX_VALUE;
+
+    private PartBufferPool partBufferPool = PartBufferPool.defaultPool();
+
+    private long partSize = 10L * 1024 * 1024;
+
+    private boolean adaptivePartSize = true;
+
+    private long expectedObjectSize = -1;
+
+    private RetryPolicy retryPolicy = new RetryPolicy();
+
+    private long singleRequestThreshold = 8L * 1024 * 1024;
+
+    private Path journalPath;
+
+    private BandwidthLimiter bandwidthLimiter = BandwidthLimiter.shared();
+
+    private long maxBytesPerSecond;
+
+    private HedgingPolicy hedgingPolicy;
+
+    private PartSpiller partSpiller;
+
+    private PartChecksum.Algorithm checksumAlgorithm;
+
+    private PartEncryption partEncryption;
+
+    public UploadScheduler getUploadScheduler() {
+        return uploadScheduler;
+    }
+
+    /**
+     * Scheduler running the part requests, shared by every upload of the process by default. Part numbers are
+     * fixed when a part is submitted, so any concurrency keeps the parts in order.
+     */
+    public void setUploadScheduler(UploadScheduler uploadScheduler) {
+        this.uploadScheduler = uploadScheduler;
+    }
+
+    public int getMaxInFlightParts() {
+        return maxInFlightParts;
+    }
+
+    /**
+     * Maximum number of parts of this upload submitted but not yet uploaded, further submissions block until a
+     * part completes. It bounds the memory the upload holds, not the concurrency, which is up to the
+     * {@link UploadScheduler}.
+     */
+    public void setMaxInFlightParts(int maxInFlightParts) {
+        this.maxInFlightParts = maxInFlightParts;
+    }
+
+    public long getMaxInFlightBytes() {
+        return maxInFlightBytes;
+    }
+
+    /**
+     * Maximum number of bytes held by the parts in flight.
+     */
+    public void setMaxInFlightBytes(long maxInFlightBytes) {
+        this.maxInFlightBytes = maxInFlightBytes;
+    }
+
+    public PartBufferPool getPartBufferPool() {
+        return partBufferPool;
+    }
+
+    /**
+     * Pool the part buffers are drawn from. Parts are a whole number of pool buffers and a part never takes
+     * more than half of the pool, so the pool size also bounds the part size of streamed uploads.
+     */
+    public void setPartBufferPool(PartBufferPool partBufferPool) {
+        this.partBufferPool = partBufferPool;
+    }
+
+    public long getPartSize() {
+        return partSize;
+    }
+
+    /**
+     * Size of the first parts, or of every part when the part size is not adaptive.
+     */
+    public void setPartSize(long partSize) {
+        this.partSize = partSize;
+    }
+
+    public boolean isAdaptivePartSize() {
+        return adaptivePartSize;
+    }
+
+    /**
+     * Whether parts grow while larger parts upload faster, see {@link PartSizePolicy}.
+     */
+    public void setAdaptivePartSize(boolean adaptivePartSize) {
+        this.adaptivePartSize = adaptivePartSize;
+    }
+
+    public long getExpectedObjectSize() {
+        return expectedObjectSize;
+    }
+
+    /**
+     * Size of the object if it is known up front (-1 otherwise), used to stay under 10,000 parts.
+     */
+    public void setExpectedObjectSize(long expectedObjectSize) {
+        this.expectedObjectSize = expectedObjectSize;
+    }
+
+    public RetryPolicy getRetryPolicy() {
+        return retryPolicy;
+    }
+
+    /**
+     * How failed parts are re-sent, see {@link RetryPolicy}.
+     */
+    public void setRetryPolicy(RetryPolicy retryPolicy) {
+        this.retryPolicy = retryPolicy;
+    }
+
+    public long getSingleRequestThreshold() {
+        return singleRequestThreshold;
+    }
+
+    /**
+     * Objects which end within this many bytes are sent by a single putObject request instead of a multipart
+     * upload, 0 to always use multipart. The first part is buffered at least this large so that such objects fit
+     * in it, the threshold is capped by the largest part the pool can buffer.
+     */
+    public void setSingleRequestThreshold(long singleRequestThreshold) {
+        this.singleRequestThreshold = singleRequestThreshold;
+    }
+
+    public Path getJournalPath() {
+        return journalPath;
+    }
+
+    /**
+     * Local file journaling the parts stored by S3, null for none. When the journal of an interrupted upload
+     * of the same object is found, the upload is resumed instead of started over, see {@link PartJournal}.
+     * A journal belongs to one upload at a time, so a config with a journal can't be shared by concurrent
+     * uploads such as those of a {@link ReportBatchUploader}.
+     */
+    public void setJournalPath(Path journalPath) {
+        this.journalPath = journalPath;
+    }
+
+    public BandwidthLimiter getBandwidthLimiter() {
+        return bandwidthLimiter;
+    }
+
+    /**
+     * Limiter shared with other uploads, by default the process wide {@link BandwidthLimiter#shared()} which is
+     * unlimited until given a rate.
+     */
+    public void setBandwidthLimiter(BandwidthLimiter bandwidthLimiter) {
+        this.bandwidthLimiter = bandwidthLimiter;
+    }
+
+    public long getMaxBytesPerSecond() {
+        return maxBytesPerSecond;
+    }
+
+    /**
+     * Bytes per second this upload alone may send, on top of the shared limiter, 0 for unlimited.
+     */
+    public void setMaxBytesPerSecond(long maxBytesPerSecond) {
+        this.maxBytesPerSecond = maxBytesPerSecond;
+    }
+
+    public HedgingPolicy getHedgingPolicy() {
+        return hedgingPolicy;
+    }
+
+    /**
+     * When slow parts are sent a second time, see {@link HedgingPolicy}, null (the default) to never hedge.
+     */
+    public void setHedgingPolicy(HedgingPolicy hedgingPolicy) {
+        this.hedgingPolicy = hedgingPolicy;
+    }
+
+    public PartSpiller getPartSpiller() {
+        return partSpiller;
+    }
+
+    /**
+     * Where parts go while the in-flight limits are reached, see {@link PartSpiller}, null (the default) to block
+     * the producer instead.
+     */
+    public void setPartSpiller(PartSpiller partSpiller) {
+        this.partSpiller = partSpiller;
+    }
+
+    public PartChecksum.Algorithm getChecksumAlgorithm() {
+        return checksumAlgorithm;
+    }
+
+    /**
+     * Checksum every part is sent with, so S3 rejects a part which does not arrive as it was produced, null (the
+     * default) for none. Checksums are computed by the part requests, off the producer thread. The SDK v1 client
+     * only sends MD5. A payload read from elsewhere, such as a relayed range, is read once more for it.
+     */
+    public void setChecksumAlgorithm(PartChecksum.Algorithm checksumAlgorithm) {
+        this.checksumAlgorithm = checksumAlgorithm;
+    }
+
+    public PartEncryption getPartEncryption() {
+        return partEncryption;
+    }
+
+    /**
+     * Encrypts the objects on the client before they are sent, see {@link PartEncryption}, null (the default) to
+     * send them in clear. Encrypted uploads can't be journaled.
+     */
+    public void setPartEncryption(PartEncryption partEncryption) {
+        this.partEncryption = partEncryption;
+    }
+}
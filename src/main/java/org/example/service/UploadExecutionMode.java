@@ -0,0 +1,29 @@
+package org.example.service;
+
+/**
+ * How an {@link UploadScheduler} executes part requests.
+ */
+public enum UploadExecutionMode {
+
+    /**
+     * A fixed pool of platform threads, one per concurrent part request.
+     */
+    PLATFORM_THREADS,
+
+    /**
+     * One virtual thread per running part, the number of concurrent part requests is bounded by the scheduler
+     * concurrency instead of a pool size.
+     * Part requests spend almost all their time blocked on socket I/O, which costs a virtual thread nothing,
+     * so hundreds of parts can be sent concurrently. Needs Java 21 or later at runtime, on an older runtime the
+     * scheduler falls back to {@link #PLATFORM_THREADS}.
+     */
+    VIRTUAL_THREADS,
+
+    /**
+     * A few platform threads which only start the part requests, for an {@link ObjectSink} whose parts complete
+     * on the client's own I/O threads such as {@link S3AsyncSink}. A part keeps its slot of the scheduler
+     * concurrency until it completes, not while a thread runs it. A blocking sink still works, but no more parts
+     * are sent at once than there are threads.
+     */
+    NON_BLOCKING
+}
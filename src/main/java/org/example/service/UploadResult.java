@@ -0,0 +1,78 @@
+package org.example.service;
+
+import java.time.Duration;
+
+/**
+ * Outcome of a completed upload.
+ */
+public class UploadResult {
+    private final String bucketName;
+    private final String key;
+    private final String eTag;
+    private final long size;
+    private final int partCount;
+    private final Duration duration;
+    private final String checksum;
+
+    public UploadResult(String bucketName, String key, String eTag, long size, int partCount, Duration duration) {
+        this(bucketName, key, eTag, size, partCount, duration, null);
+    }
+
+    public UploadResult(String bucketName, String key, String eTag, long size, int partCount, Duration duration,
+                        String checksum) {
+        this.bucketName = bucketName;
+        this.key = key;
+        this.eTag = eTag;
+        this.size = size;
+        this.partCount = partCount;
+        this.duration = duration;
+        this.checksum = checksum;
+    }
+
+    public String getBucketName() {
+        return bucketName;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public String getETag() {
+        return eTag;
+    }
+
+    /**
+     * Number of bytes of the object.
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * Number of parts of the multipart upload, 0 when the object has been sent by a single request.
+     */
+    public int getPartCount() {
+        return partCount;
+    }
+
+    /**
+     * Time from the creation of the upload to its completion, object generation included.
+     */
+    public Duration getDuration() {
+        return duration;
+    }
+
+    /**
+     * Checksum of the whole object computed from the bytes handed to the upload, in the form S3 gives it, see
+     * {@link PartChecksum#objectChecksum(java.util.List)}. Null when the parts were sent without checksum.
+     */
+    public String getChecksum() {
+        return checksum;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s/%s (%d bytes, %d parts, %d ms, ETag %s%s)", bucketName, key, size, partCount,
+                duration.toMillis(), eTag, checksum != null ? ", checksum " + checksum : "");
+    }
+}
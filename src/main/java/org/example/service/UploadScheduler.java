@@ -0,0 +1,326 @@
+package org.example.service;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the part requests of many uploads within one global concurrency budget.
+ * <p>
+ * Every upload gets its own {@link TaskQueue}. Whenever a slot of the budget frees up, the next task is taken
+ * from the queues round-robin, so an upload with hundreds of queued parts can't starve the others: with N
+ * uploads busy each of them gets about 1/N of the connections. Threads are created once for the process
+ * instead of a pool per upload.
+ * <p>
+ * A task started asynchronously ({@link AsyncTask}) keeps its slot until the work it started is done, so the
+ * concurrency bounds the part requests in flight whichever the {@link UploadExecutionMode}.
+ * <p>
+ * With an {@link AdaptiveConcurrencyLimit} the concurrency follows what the requests measure: it grows while the
+ * throughput does and drops when S3 throttles or the requests slow down. {@link #getConcurrency()} gives the
+ * current value.
+ */
+public class UploadScheduler {
+    private static final int DEFAULT_CONCURRENCY = 16;
+
+    private static final int DEFAULT_MIN_CONCURRENCY = 4;
+    private static final int DEFAULT_MAX_CONCURRENCY = 64;
+
+    private static final UploadScheduler SHARED = new UploadScheduler(
+            new AdaptiveConcurrencyLimit(DEFAULT_CONCURRENCY, DEFAULT_MIN_CONCURRENCY, DEFAULT_MAX_CONCURRENCY),
+            UploadExecutionMode.PLATFORM_THREADS);
+
+    private final ExecutorService executorService;
+    private final UploadExecutionMode executionMode;
+    // highest concurrency the threads can serve, the pool size with platform threads
+    private final int maxConcurrency;
+    // null when the concurrency is fixed
+    private final AdaptiveConcurrencyLimit concurrencyLimit;
+
+    private final Object lock = new Object();
+    // queues having tasks waiting for a slot, in round-robin order
+    private final Queue<TaskQueue> readyQueues = new ArrayDeque<>();
+    private int concurrency;
+    private int running;
+
+    /**
+     * @param concurrency   maximum number of part requests running at the same time, over all uploads
+     * @param executionMode whether the requests run on a pool of platform threads or on virtual threads
+     */
+    public UploadScheduler(int concurrency, UploadExecutionMode executionMode) {
+        this(concurrency, null, executionMode);
+    }
+
+    /**
+     * @param concurrencyLimit adapts the number of part requests running at the same time, a pool of
+     *                         platform threads is sized for its maximum
+     * @param executionMode    whether the requests run on a pool of platform threads or on virtual threads
+     */
+    public UploadScheduler(AdaptiveConcurrencyLimit concurrencyLimit, UploadExecutionMode executionMode) {
+        this(concurrencyLimit.getMaxConcurrency(), concurrencyLimit, executionMode);
+    }
+
+    private UploadScheduler(int concurrency, AdaptiveConcurrencyLimit concurrencyLimit, UploadExecutionMode executionMode) {
+        if (concurrency < 1) {
+            throw new IllegalArgumentException("concurrency should be at least 1");
+        }
+        this.concurrencyLimit = concurrencyLimit;
+        this.concurrency = concurrencyLimit != null ? concurrencyLimit.getLimit() : concurrency;
+        ExecutorService virtualThreadExecutor = null;
+        if (executionMode == UploadExecutionMode.VIRTUAL_THREADS) {
+            virtualThreadExecutor = newVirtualThreadPerTaskExecutor();
+            if (virtualThreadExecutor == null) {
+                System.out.println(String.format("Virtual threads require Java 21 or later, running part requests "
+                        + "on %d platform threads instead", concurrency));
+                executionMode = UploadExecutionMode.PLATFORM_THREADS;
+            }
+        }
+        this.executionMode = executionMode;
+        this.maxConcurrency = executionMode == UploadExecutionMode.PLATFORM_THREADS ? concurrency : Integer.MAX_VALUE;
+        if (virtualThreadExecutor != null) {
+            this.executorService = virtualThreadExecutor;
+        } else if (executionMode == UploadExecutionMode.NON_BLOCKING) {
+            // threads only start requests, the tasks they can't take right away wait in the pool queue
+            int threads = Math.min(concurrency, Runtime.getRuntime().availableProcessors());
+            this.executorService = Executors.newFixedThreadPool(threads, new UploadThreadFactory());
+        } else {
+            // never more than concurrency tasks are handed over, the pool queue stays empty
+            this.executorService = Executors.newFixedThreadPool(concurrency, new UploadThreadFactory());
+        }
+    }
+
+    /**
+     * Process wide scheduler of platform threads, used by uploads which are not given a scheduler of their own.
+     * Its concurrency starts at {@value #DEFAULT_CONCURRENCY} and adapts between {@value #DEFAULT_MIN_CONCURRENCY}
+     * and {@value #DEFAULT_MAX_CONCURRENCY}.
+     */
+    public static UploadScheduler shared() {
+        return SHARED;
+    }
+
+    /**
+     * Changes the number of part requests allowed to run at the same time. Lowering it lets the running
+     * requests finish; with platform threads it is capped at the pool size given at construction.
+     * An adaptive concurrency stays within its bounds and goes on adapting from the given value.
+     */
+    public void setConcurrency(int concurrency) {
+        if (concurrency < 1) {
+            throw new IllegalArgumentException("concurrency should be at least 1");
+        }
+        synchronized (lock) {
+            if (concurrencyLimit != null) {
+                concurrencyLimit.setLimit(concurrency);
+                this.concurrency = concurrencyLimit.getLimit();
+            } else {
+                this.concurrency = Math.min(concurrency, maxConcurrency);
+            }
+            dispatch();
+        }
+    }
+
+    /**
+     * Number of part requests currently allowed to run at the same time, the value an adaptive concurrency
+     * has converged to under load.
+     */
+    public int getConcurrency() {
+        synchronized (lock) {
+            return concurrency;
+        }
+    }
+
+    /**
+     * Mode the part requests run in, platform threads when virtual threads were asked for on a runtime without
+     * them.
+     */
+    public UploadExecutionMode getExecutionMode() {
+        return executionMode;
+    }
+
+    /**
+     * Number of part requests running, or waiting for their completion, right now.
+     */
+    public int getRunningRequests() {
+        synchronized (lock) {
+            return running;
+        }
+    }
+
+    /**
+     * Stops the threads of a scheduler which is no longer used, the shared scheduler lives as long as the process.
+     */
+    public void shutdown() {
+        executorService.shutdownNow();
+    }
+
+    /**
+     * Creates the queue one upload submits its part requests to.
+     */
+    TaskQueue newQueue() {
+        return new TaskQueue();
+    }
+
+    private void dispatch() {
+        while (running < concurrency && !readyQueues.isEmpty()) {
+            TaskQueue queue = readyQueues.poll();
+            Runnable task = queue.tasks.poll();
+            if (!queue.tasks.isEmpty()) {
+                // back of the line, the other uploads get their turn first
+                readyQueues.add(queue);
+            }
+            running++;
+            executorService.execute(() -> {
+                CompletionStage<?> completion = null;
+                try {
+                    if (task instanceof AsyncTask) {
+                        completion = ((AsyncTask) task).start();
+                    } else {
+                        task.run();
+                    }
+                } finally {
+                    if (completion == null) {
+                        releaseSlot();
+                    } else {
+                        completion.whenComplete((result, error) -> releaseSlot());
+                    }
+                }
+            });
+        }
+    }
+
+    private void recordRequest(long bytes, long elapsedNanos) {
+        if (concurrencyLimit == null) {
+            return;
+        }
+        synchronized (lock) {
+            concurrencyLimit.recordRequest(bytes, elapsedNanos, !readyQueues.isEmpty());
+            concurrency = concurrencyLimit.getLimit();
+            dispatch();
+        }
+    }
+
+    private void recordThrottled() {
+        if (concurrencyLimit == null) {
+            return;
+        }
+        synchronized (lock) {
+            concurrencyLimit.recordThrottled();
+            concurrency = concurrencyLimit.getLimit();
+        }
+    }
+
+    private void releaseSlot() {
+        synchronized (lock) {
+            running--;
+            dispatch();
+        }
+    }
+
+    /**
+     * Looked up reflectively so the project still builds and runs on Java 17.
+     *
+     * @return null if the runtime has no virtual threads
+     */
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (NoSuchMethodException e) {
+            return null;
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Unable to create a virtual thread executor", e);
+        }
+    }
+
+    /**
+     * Task which may complete after it has been run, it holds its slot until the returned stage completes.
+     */
+    interface AsyncTask extends Runnable {
+
+        /**
+         * Starts the task.
+         *
+         * @return stage completed once the task is done
+         */
+        CompletionStage<?> start();
+
+        @Override
+        default void run() {
+            start().toCompletableFuture().join();
+        }
+    }
+
+    /**
+     * Part requests of a single upload, run in submission order.
+     */
+    final class TaskQueue {
+        private final Deque<Runnable> tasks = new ArrayDeque<>();
+
+        void submit(Runnable task) {
+            synchronized (lock) {
+                if (tasks.isEmpty()) {
+                    readyQueues.add(this);
+                }
+                tasks.add(task);
+                dispatch();
+            }
+        }
+
+        /**
+         * Queues a task ahead of the others of this queue, for a request whose object is already waiting on it.
+         */
+        void submitFirst(Runnable task) {
+            synchronized (lock) {
+                if (tasks.isEmpty()) {
+                    readyQueues.add(this);
+                }
+                tasks.addFirst(task);
+                dispatch();
+            }
+        }
+
+        /**
+         * Feeds a successful part request of this queue into the adaptive concurrency, if any.
+         */
+        void recordRequest(long bytes, long elapsedNanos) {
+            UploadScheduler.this.recordRequest(bytes, elapsedNanos);
+        }
+
+        /**
+         * Reports a request of this queue S3 has throttled, the adaptive concurrency backs off.
+         */
+        void recordThrottled() {
+            UploadScheduler.this.recordThrottled();
+        }
+
+        /**
+         * Removes the tasks which have not started yet.
+         *
+         * @return the removed tasks, they will never run
+         */
+        List<Runnable> drain() {
+            synchronized (lock) {
+                List<Runnable> drained = new ArrayList<>(tasks);
+                tasks.clear();
+                readyQueues.remove(this);
+                return drained;
+            }
+        }
+    }
+
+    private static final class UploadThreadFactory implements ThreadFactory {
+        private static final AtomicInteger THREAD_NUMBER = new AtomicInteger(0);
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "s3-upload-" + THREAD_NUMBER.incrementAndGet());
+            // the shared scheduler must not keep the JVM alive once the uploads are done
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package org.example.service;
+
+import com.amazonaws.regions.Regions;
+import com.amazonaws.services.s3.AmazonS3ClientBuilder;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes every offer report as an Excel workbook streamed to an {@link ObjectSink}, S3 unless told otherwise.
+ * <p>
+ * When the {@value #LOCAL_DIRECTORY_PROPERTY} system property is set, the reports are stored under that directory
+ * by a {@link FileSystemSink} instead, to run without network or to fall back to local disks when S3 is degraded.
+ */
+public class UploadToS3Impl {
+    public static final String LOCAL_DIRECTORY_PROPERTY = "reports.localDirectory";
+
+    private static final String DEST_BUCKET_NAME = "sysco-bcg-personalization";
+
+    private final ReportBatchUploader batchUploader;
+
+    public UploadToS3Impl() {
+        // part buffers are recycled from one report to the next through the default pool instead of being
+        // allocated for every part, part sizes start at 10 MB and grow while larger parts upload faster
+        this(defaultSink(), DEST_BUCKET_NAME, defaultConfig());
+    }
+
+    public UploadToS3Impl(ObjectSink objectSink, String destBucketName, S3MultipartUploadConfig uploadConfig) {
+        this.batchUploader = new ReportBatchUploader(objectSink, destBucketName, uploadConfig);
+    }
+
+    /**
+     * @param generatorThreads maximum number of workbooks generated at the same time
+     */
+    public UploadToS3Impl(ObjectSink objectSink, String destBucketName, S3MultipartUploadConfig uploadConfig,
+                          int generatorThreads) {
+        this.batchUploader = new ReportBatchUploader(objectSink, destBucketName, uploadConfig, generatorThreads);
+    }
+
+    /**
+     * Uploads one workbook per entry, named after its key, several of them at the same time. Returns once every
+     * upload is done.
+     *
+     * @throws RuntimeException if any upload has failed, after the others are done
+     */
+    public void writeAsStreamToS3(Map<String, List<OfferReport>> offerReportMap) throws IOException {
+        batchUploader.uploadAll(offerReportMap, this::writeReport);
+    }
+
+    // each report gets its own upload; the workbook is written straight into the part buffer
+    // and every full part is shipped while POI is still producing the rest of the file
+    private void writeReport(String name, List<OfferReport> offerReports, OutputStream outputStream) throws IOException {
+        try (Workbook workBook = new XSSFWorkbook()) {
+            Sheet sheet1 = workBook.createSheet("Summary");
+            Sheet sheet2 = workBook.createSheet("PDIS");
+            Sheet sheet3 = workBook.createSheet("CP");
+            sheet1.setColumnWidth(0, 2560);
+            sheet1.setColumnWidth(1, 2560);
+            Row row = sheet1.createRow(0);
+            row.createCell(0).setCellValue("Total Customers");
+            row.createCell(1).setCellValue("10");
+
+            workBook.write(outputStream);
+        }
+    }
+
+    private static S3MultipartUploadConfig defaultConfig() {
+        S3MultipartUploadConfig uploadConfig = new S3MultipartUploadConfig();
+        // S3 checks every part of a report against the MD5 computed from the bytes generated
+        uploadConfig.setChecksumAlgorithm(PartChecksum.Algorithm.MD5);
+        return uploadConfig;
+    }
+
+    private static ObjectSink defaultSink() {
+        String localDirectory = System.getProperty(LOCAL_DIRECTORY_PROPERTY);
+        if (localDirectory != null) {
+            return new FileSystemSink(Paths.get(localDirectory));
+        }
+        return new AmazonS3Sink(AmazonS3ClientBuilder.standard().withRegion(Regions.US_EAST_1).build());
+    }
+}
@@ -0,0 +1,27 @@
+package org.example.service;
+
+/**
+ * A part an {@link ObjectSink} has stored, as {@link ObjectSink#completeUpload} assembles it.
+ */
+public final class UploadedPart {
+    private final int partNumber;
+    private final String eTag;
+
+    public UploadedPart(int partNumber, String eTag) {
+        this.partNumber = partNumber;
+        this.eTag = eTag;
+    }
+
+    public int getPartNumber() {
+        return partNumber;
+    }
+
+    public String getETag() {
+        return eTag;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("part %d (ETag %s)", partNumber, eTag);
+    }
+}
@@ -0,0 +1,99 @@
+package org.example.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class AdaptiveConcurrencyLimitTest {
+    private static final long MB = 1024 * 1024;
+    private static final long MILLIS = 1_000_000;
+
+    @Test
+    void throttlingHalvesTheLimitOncePerWindow() {
+        AdaptiveConcurrencyLimit concurrencyLimit = new AdaptiveConcurrencyLimit(16, 2, 64);
+
+        concurrencyLimit.recordThrottled();
+        assertEquals(8, concurrencyLimit.getLimit());
+        // the rest of a burst of throttled requests is the same signal
+        concurrencyLimit.recordThrottled();
+        assertEquals(8, concurrencyLimit.getLimit());
+
+        recordWindow(concurrencyLimit, 8, MB, 10 * MILLIS, false);
+        concurrencyLimit.recordThrottled();
+        assertEquals(4, concurrencyLimit.getLimit());
+    }
+
+    @Test
+    void limitNeverGoesBelowItsMinimum() {
+        AdaptiveConcurrencyLimit concurrencyLimit = new AdaptiveConcurrencyLimit(4, 3, 64);
+
+        concurrencyLimit.recordThrottled();
+
+        assertEquals(3, concurrencyLimit.getLimit());
+    }
+
+    @Test
+    void saturatedWindowsWithRisingThroughputRaiseTheLimitByOne() throws InterruptedException {
+        AdaptiveConcurrencyLimit concurrencyLimit = new AdaptiveConcurrencyLimit(4, 2, 6);
+
+        recordTimedWindow(concurrencyLimit, 4, MB);
+        assertEquals(5, concurrencyLimit.getLimit());
+        recordTimedWindow(concurrencyLimit, 5, 100 * MB);
+        assertEquals(6, concurrencyLimit.getLimit());
+        // the maximum is reached
+        recordTimedWindow(concurrencyLimit, 6, 10_000 * MB);
+        assertEquals(6, concurrencyLimit.getLimit());
+    }
+
+    @Test
+    void limitOnlyGrowsWhileRequestsWaitForASlot() {
+        AdaptiveConcurrencyLimit concurrencyLimit = new AdaptiveConcurrencyLimit(4, 2, 64);
+
+        recordWindow(concurrencyLimit, 4, MB, 10 * MILLIS, false);
+        recordWindow(concurrencyLimit, 4, 100 * MB, 10 * MILLIS, false);
+
+        assertEquals(4, concurrencyLimit.getLimit());
+    }
+
+    @Test
+    void risingLatencyCutsTheLimitByAQuarter() {
+        AdaptiveConcurrencyLimit concurrencyLimit = new AdaptiveConcurrencyLimit(8, 2, 64);
+
+        recordWindow(concurrencyLimit, 8, MB, 10 * MILLIS, false);
+        assertEquals(8, concurrencyLimit.getLimit());
+        // every byte takes three times as long as the best seen
+        recordWindow(concurrencyLimit, 8, MB, 30 * MILLIS, false);
+
+        assertEquals(6, concurrencyLimit.getLimit());
+    }
+
+    @Test
+    void limitIsSetWithinItsBounds() {
+        AdaptiveConcurrencyLimit concurrencyLimit = new AdaptiveConcurrencyLimit(100, 2, 10);
+        assertEquals(10, concurrencyLimit.getLimit());
+
+        concurrencyLimit.setLimit(1);
+        assertEquals(2, concurrencyLimit.getLimit());
+        assertThrows(IllegalArgumentException.class, () -> new AdaptiveConcurrencyLimit(4, 5, 4));
+    }
+
+    private static void recordWindow(AdaptiveConcurrencyLimit concurrencyLimit, int requests, long bytes,
+                                     long elapsedNanos, boolean saturated) {
+        for (int i = 0; i < requests; i++) {
+            concurrencyLimit.recordRequest(bytes, elapsedNanos, saturated);
+        }
+    }
+
+    /**
+     * Records a saturated window lasting about 20 ms, so its throughput only depends on the bytes given.
+     */
+    private static void recordTimedWindow(AdaptiveConcurrencyLimit concurrencyLimit, int requests, long bytes)
+            throws InterruptedException {
+        recordWindow(concurrencyLimit, requests - 1, bytes, 10 * MILLIS, true);
+        TimeUnit.MILLISECONDS.sleep(20);
+        concurrencyLimit.recordRequest(bytes, 10 * MILLIS, true);
+    }
+}
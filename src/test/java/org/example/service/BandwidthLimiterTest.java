@@ -0,0 +1,80 @@
+package org.example.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BandwidthLimiterTest {
+    private static final long KB = 1024;
+    private static final long MB = 1024 * KB;
+    private static final long MILLIS = 1_000_000;
+
+    @Test
+    void unlimitedLimiterNeverWaits() {
+        BandwidthLimiter bandwidthLimiter = new BandwidthLimiter(0);
+
+        assertTrue(bandwidthLimiter.isUnlimited());
+        assertEquals(0, bandwidthLimiter.reserve(10_000 * MB));
+    }
+
+    @Test
+    void burstIsLetThroughAndTheRestIsPacedAtTheRate() {
+        // bursts of a tenth of a second, 1 MB
+        BandwidthLimiter bandwidthLimiter = new BandwidthLimiter(10 * MB);
+
+        assertEquals(0, bandwidthLimiter.reserve(MB));
+        // every further MB is a tenth of a second later than the one before
+        assertAbout(100 * MILLIS, bandwidthLimiter.reserve(MB));
+        assertAbout(200 * MILLIS, bandwidthLimiter.reserve(MB));
+        assertAbout(500 * MILLIS, bandwidthLimiter.reserve(3 * MB));
+    }
+
+    @Test
+    void slowRatesStillLetAChunkThroughAtOnce() {
+        BandwidthLimiter bandwidthLimiter = new BandwidthLimiter(KB);
+
+        assertEquals(0, bandwidthLimiter.reserve(256 * KB));
+        assertAbout(TimeUnit.SECONDS.toNanos(1), bandwidthLimiter.reserve(KB));
+    }
+
+    @Test
+    void idleLimiterSavesNoMoreThanABurst() throws InterruptedException {
+        BandwidthLimiter bandwidthLimiter = new BandwidthLimiter(10 * MB);
+        TimeUnit.MILLISECONDS.sleep(300);
+
+        // the 300 ms of idling are worth 3 MB, but only 1 MB is let through at once
+        assertAbout(100 * MILLIS, bandwidthLimiter.reserve(2 * MB));
+    }
+
+    @Test
+    void acquireSleepsOffTheWait() throws InterruptedException {
+        BandwidthLimiter bandwidthLimiter = new BandwidthLimiter(10 * MB);
+        bandwidthLimiter.acquire(MB);
+
+        long start = System.nanoTime();
+        bandwidthLimiter.acquire(MB);
+
+        assertTrue(System.nanoTime() - start >= 80 * MILLIS);
+    }
+
+    @Test
+    void rateCanBeLiftedAndShouldNotBeNegative() {
+        BandwidthLimiter bandwidthLimiter = new BandwidthLimiter(MB);
+        bandwidthLimiter.setBytesPerSecond(0);
+
+        assertTrue(bandwidthLimiter.isUnlimited());
+        assertThrows(IllegalArgumentException.class, () -> bandwidthLimiter.setBytesPerSecond(-1));
+    }
+
+    /**
+     * Within 50 ms of the expected wait, the time the test itself takes.
+     */
+    private static void assertAbout(long expectedNanos, long waitNanos) {
+        assertTrue(Math.abs(expectedNanos - waitNanos) <= 50 * MILLIS,
+                String.format("waits %d ms instead of %d ms", waitNanos / MILLIS, expectedNanos / MILLIS));
+    }
+}
@@ -0,0 +1,96 @@
+package org.example.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.example.service.BytePayloads.randomBytes;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ByteBufferInputStreamTest {
+    private final byte[] bytes = randomBytes(300);
+
+    @Test
+    void buffersAreReadOneAfterTheOtherWithoutTouchingThem() throws IOException {
+        List<ByteBuffer> buffers = buffers(100, 100, 100);
+        ByteBufferInputStream inputStream = new ByteBufferInputStream(buffers);
+
+        assertEquals(300, inputStream.available());
+        assertArrayEquals(bytes, inputStream.readAllBytes());
+        assertEquals(-1, inputStream.read());
+        for (ByteBuffer buffer : buffers) {
+            assertEquals(0, buffer.position());
+        }
+    }
+
+    @Test
+    void resetRewindsToAMarkInAnEarlierBuffer() throws IOException {
+        ByteBufferInputStream inputStream = new ByteBufferInputStream(buffers(100, 100, 100));
+        inputStream.skip(50);
+        inputStream.mark(0);
+
+        // read well past the mark, through the whole second buffer, whatever the read limit
+        assertArrayEquals(Arrays.copyOfRange(bytes, 50, 250), inputStream.readNBytes(200));
+        inputStream.reset();
+
+        assertArrayEquals(Arrays.copyOfRange(bytes, 50, 300), inputStream.readAllBytes());
+    }
+
+    @Test
+    void resetWithoutMarkRewindsToTheStart() throws IOException {
+        ByteBufferInputStream inputStream = new ByteBufferInputStream(buffers(100, 100, 100));
+        inputStream.readAllBytes();
+        inputStream.reset();
+        // a second rewind after the buffers have been read again starts over the same way
+        inputStream.readNBytes(150);
+        inputStream.reset();
+
+        assertArrayEquals(bytes, inputStream.readAllBytes());
+    }
+
+    @Test
+    void markAtTheEndOfABufferSurvivesReadingTheNextOne() throws IOException {
+        ByteBufferInputStream inputStream = new ByteBufferInputStream(buffers(100, 100, 100));
+        inputStream.readNBytes(100);
+        inputStream.mark(0);
+        inputStream.readNBytes(150);
+        inputStream.reset();
+
+        assertArrayEquals(Arrays.copyOfRange(bytes, 100, 300), inputStream.readAllBytes());
+    }
+
+    @Test
+    void skipCrossesBuffersAndStopsAtTheEnd() {
+        ByteBufferInputStream inputStream = new ByteBufferInputStream(buffers(100, 100, 100));
+
+        assertEquals(150, inputStream.skip(150));
+        assertEquals(bytes[150] & 0xFF, inputStream.read());
+        assertEquals(149, inputStream.skip(1000));
+        assertEquals(0, inputStream.available());
+    }
+
+    @Test
+    void onlyTheRemainingBytesOfABufferAreRead() throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        buffer.position(10).limit(20);
+
+        assertArrayEquals(Arrays.copyOfRange(bytes, 10, 20), new ByteBufferInputStream(buffer).readAllBytes());
+    }
+
+    /**
+     * The bytes of the test cut into buffers of the given sizes.
+     */
+    private List<ByteBuffer> buffers(int... sizes) {
+        ByteBuffer[] buffers = new ByteBuffer[sizes.length];
+        int offset = 0;
+        for (int i = 0; i < sizes.length; i++) {
+            buffers[i] = ByteBuffer.wrap(bytes, offset, sizes[i]).slice();
+            offset += sizes[i];
+        }
+        return List.of(buffers);
+    }
+}
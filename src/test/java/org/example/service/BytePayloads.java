@@ -0,0 +1,88 @@
+package org.example.service;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+/**
+ * Parts and objects of the tests, made of random bytes held in memory.
+ */
+final class BytePayloads {
+
+    private BytePayloads() {
+    }
+
+    /**
+     * The same bytes for the same size, so a test can produce its object again to compare it.
+     */
+    static byte[] randomBytes(int size) {
+        return randomBytes(size, 42);
+    }
+
+    static byte[] randomBytes(int size, long seed) {
+        byte[] bytes = new byte[size];
+        new Random(seed).nextBytes(bytes);
+        return bytes;
+    }
+
+    static PartPayload payload(byte[] bytes) {
+        return payload(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Part over a range of the given bytes, which can be read any number of times and holds nothing to release.
+     */
+    static PartPayload payload(byte[] bytes, int offset, int length) {
+        return new PartPayload() {
+            @Override
+            public long size() {
+                return length;
+            }
+
+            @Override
+            public InputStream newInputStream() {
+                return new ByteArrayInputStream(bytes, offset, length);
+            }
+
+            @Override
+            public void release() {
+            }
+        };
+    }
+
+    /**
+     * Part of the given size whose every read fails with the given exception.
+     */
+    static PartPayload unreadablePayload(long size, RuntimeException failure) {
+        return new PartPayload() {
+            @Override
+            public long size() {
+                return size;
+            }
+
+            @Override
+            public InputStream newInputStream() {
+                throw failure;
+            }
+
+            @Override
+            public void release() {
+            }
+        };
+    }
+
+    /**
+     * Bytes remaining in the given buffers, in order. The buffers are consumed.
+     */
+    static byte[] toByteArray(ByteBuffer[] buffers) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        for (ByteBuffer buffer : buffers) {
+            byte[] chunk = new byte[buffer.remaining()];
+            buffer.get(chunk);
+            bytes.write(chunk, 0, chunk.length);
+        }
+        return bytes.toByteArray();
+    }
+}
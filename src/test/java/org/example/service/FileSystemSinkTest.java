@@ -0,0 +1,28 @@
+package org.example.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import static org.example.service.BytePayloads.unreadablePayload;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class FileSystemSinkTest {
+
+    @Test
+    void putObjectFailingToReadThePayloadLeavesNoTempFile(@TempDir Path directory) throws Exception {
+        FileSystemSink sink = new FileSystemSink(directory);
+        IllegalStateException failure = new IllegalStateException("payload has been released");
+        PartPayload payload = unreadablePayload(10, failure);
+
+        assertSame(failure, assertThrows(IllegalStateException.class, () -> sink.putObject("bucket", "key", payload, null)));
+        try (Stream<Path> files = Files.list(directory.resolve("bucket"))) {
+            assertEquals(0, files.count());
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package org.example.service;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.example.service.BytePayloads.payload;
+import static org.example.service.BytePayloads.randomBytes;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class HttpRangeRelayTest {
+    private static final int MB = 1024 * 1024;
+    private static final Pattern RANGE = Pattern.compile("bytes=(\\d+)-(\\d+)");
+
+    private final byte[] file = randomBytes(12 * MB + 17);
+    private final AtomicInteger rangeRequests = new AtomicInteger();
+    private HttpServer server;
+    private URL source;
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/file", this::serve);
+        server.start();
+        source = new URL(String.format("http://127.0.0.1:%d/file", server.getAddress().getPort()));
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.stop(0);
+    }
+
+    @Test
+    void checksummedRangesAreFetchedForTheChecksumAndToBeSent() throws IOException {
+        InMemorySink sink = new InMemorySink();
+        S3MultipartUploadConfig config = config();
+        config.setChecksumAlgorithm(PartChecksum.Algorithm.CRC32C);
+
+        UploadResult result = new HttpRangeRelay(sink, config).relay(source, "bucket", "key");
+
+        assertEquals(3, result.getPartCount());
+        // once for the checksum, once to be sent, and once more by the sink checking the checksum like S3 does
+        assertEquals(3 * 3, rangeRequests.get());
+        assertArrayEquals(file, sink.getObject("bucket", "key"));
+    }
+
+    @Test
+    void rewoundRangeIsFetchedAgainFromTheMark() throws IOException {
+        // reads a part halfway and rewinds it, like a client retrying a request on its own
+        InMemorySink sink = new InMemorySink() {
+            @Override
+            public CompletableFuture<UploadedPart> uploadPart(String bucketName, String key, String uploadId, int partNumber,
+                                                              long offset, PartPayload payload, PartChecksum checksum,
+                                                              boolean isLastPart) {
+                try (InputStream inputStream = payload.newInputStream()) {
+                    inputStream.mark(0);
+                    inputStream.readNBytes(1000);
+                    inputStream.reset();
+                    byte[] part = inputStream.readAllBytes();
+                    return super.uploadPart(bucketName, key, uploadId, partNumber, offset, payload(part), checksum, isLastPart);
+                } catch (IOException e) {
+                    return CompletableFuture.failedFuture(e);
+                }
+            }
+        };
+
+        UploadResult result = new HttpRangeRelay(sink, config()).relay(source, "bucket", "key");
+
+        assertEquals(3, result.getPartCount());
+        assertEquals(2 * 3, rangeRequests.get());
+        assertArrayEquals(file, sink.getObject("bucket", "key"));
+    }
+
+    @Test
+    void journaledConfigIsRejected() {
+        S3MultipartUploadConfig config = config();
+        config.setJournalPath(Path.of("relay.journal"));
+
+        assertThrows(IllegalArgumentException.class, () -> new HttpRangeRelay(new InMemorySink(), config)
+                .relay(source, "bucket", "key"));
+        assertEquals(0, rangeRequests.get());
+    }
+
+    private static S3MultipartUploadConfig config() {
+        S3MultipartUploadConfig config = new S3MultipartUploadConfig();
+        config.setPartBufferPool(new PartBufferPool(MB, 16));
+        config.setPartSize(5L * MB);
+        config.setAdaptivePartSize(false);
+        return config;
+    }
+
+    private void serve(HttpExchange exchange) throws IOException {
+        exchange.getResponseHeaders().set("Accept-Ranges", "bytes");
+        exchange.getResponseHeaders().set("ETag", "\"v1\"");
+        if ("HEAD".equals(exchange.getRequestMethod())) {
+            exchange.getResponseHeaders().set("Content-Length", Integer.toString(file.length));
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+            return;
+        }
+        Matcher range = RANGE.matcher(String.valueOf(exchange.getRequestHeaders().getFirst("Range")));
+        if (!range.matches()) {
+            exchange.sendResponseHeaders(416, -1);
+            exchange.close();
+            return;
+        }
+        rangeRequests.incrementAndGet();
+        int first = Integer.parseInt(range.group(1));
+        int last = Integer.parseInt(range.group(2));
+        exchange.getResponseHeaders().set("Content-Range", String.format("bytes %d-%d/%d", first, last, file.length));
+        exchange.sendResponseHeaders(206, last - first + 1);
+        try (OutputStream body = exchange.getResponseBody()) {
+            body.write(file, first, last - first + 1);
+        }
+    }
+}
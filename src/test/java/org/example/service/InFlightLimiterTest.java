@@ -0,0 +1,74 @@
+package org.example.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class InFlightLimiterTest {
+
+    @Test
+    void partLimitBlocksUntilAPartIsReleased() throws InterruptedException {
+        InFlightLimiter inFlightLimiter = new InFlightLimiter(2, Long.MAX_VALUE);
+        inFlightLimiter.acquire(10);
+        inFlightLimiter.acquire(10);
+
+        CountDownLatch acquired = new CountDownLatch(1);
+        Thread producer = new Thread(() -> {
+            try {
+                inFlightLimiter.acquire(10);
+                acquired.countDown();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        producer.start();
+
+        assertFalse(acquired.await(200, TimeUnit.MILLISECONDS));
+        inFlightLimiter.release(10);
+        assertTrue(acquired.await(10, TimeUnit.SECONDS));
+        producer.join();
+    }
+
+    @Test
+    void byteLimitRefusesAPartWhichDoesNotFitNextToTheOthers() throws InterruptedException {
+        InFlightLimiter inFlightLimiter = new InFlightLimiter(10, 100);
+        assertTrue(inFlightLimiter.tryAcquire(60, 0, TimeUnit.NANOSECONDS));
+
+        assertFalse(inFlightLimiter.tryAcquire(50, 50, TimeUnit.MILLISECONDS));
+        assertTrue(inFlightLimiter.tryAcquire(40, 0, TimeUnit.NANOSECONDS));
+    }
+
+    @Test
+    void partLargerThanTheByteLimitIsLetThroughAlone() throws InterruptedException {
+        InFlightLimiter inFlightLimiter = new InFlightLimiter(10, 100);
+
+        assertTrue(inFlightLimiter.tryAcquire(1000, 0, TimeUnit.NANOSECONDS));
+        assertFalse(inFlightLimiter.tryAcquire(1, 0, TimeUnit.NANOSECONDS));
+        inFlightLimiter.release(1000);
+        assertTrue(inFlightLimiter.tryAcquire(1, 0, TimeUnit.NANOSECONDS));
+    }
+
+    @Test
+    void timedOutAttemptTakesNothing() throws InterruptedException {
+        InFlightLimiter inFlightLimiter = new InFlightLimiter(1, 100);
+        inFlightLimiter.acquire(100);
+
+        assertFalse(inFlightLimiter.tryAcquire(10, 10, TimeUnit.MILLISECONDS));
+        inFlightLimiter.release(100);
+        // the failed attempt left neither a part nor its bytes behind
+        assertTrue(inFlightLimiter.tryAcquire(100, 0, TimeUnit.NANOSECONDS));
+    }
+
+    @Test
+    void limitsShouldBePositive() {
+        IllegalArgumentException failure = assertThrows(IllegalArgumentException.class, () -> new InFlightLimiter(0, 100));
+        assertEquals("maxInFlightParts should be at least 1", failure.getMessage());
+        assertThrows(IllegalArgumentException.class, () -> new InFlightLimiter(1, 0));
+    }
+}
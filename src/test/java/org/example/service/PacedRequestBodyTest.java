@@ -0,0 +1,113 @@
+package org.example.service;
+
+import org.junit.jupiter.api.Test;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.example.service.BytePayloads.payload;
+import static org.example.service.BytePayloads.randomBytes;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PacedRequestBodyTest {
+    private static final int MB = 1024 * 1024;
+
+    @Test
+    void partIsPublishedAtTheRateWithoutBlockingTheSubscribingThread() throws InterruptedException {
+        byte[] part = randomBytes(MB);
+        PacedRequestBody requestBody = new PacedRequestBody(rateLimited(part, 2 * MB));
+        CollectingSubscriber subscriber = new CollectingSubscriber(Long.MAX_VALUE);
+
+        long start = System.nanoTime();
+        requestBody.subscribe(subscriber);
+        long subscribeNanos = System.nanoTime() - start;
+        assertTrue(subscriber.completed.await(10, TimeUnit.SECONDS));
+        long elapsedNanos = System.nanoTime() - start;
+
+        assertTrue(subscribeNanos < TimeUnit.MILLISECONDS.toNanos(100), "subscribe took " + subscribeNanos + " ns");
+        // a burst of 256 KB goes out at once, the rest at 2 MB/s
+        assertTrue(elapsedNanos >= TimeUnit.MILLISECONDS.toNanos(300), "published in " + elapsedNanos + " ns");
+        assertArrayEquals(part, subscriber.bytes.toByteArray());
+    }
+
+    @Test
+    void chunksAreOnlyPublishedOnDemand() throws InterruptedException {
+        byte[] part = randomBytes(MB + 17);
+        PacedRequestBody requestBody = new PacedRequestBody(rateLimited(part, 64 * MB));
+        CollectingSubscriber subscriber = new CollectingSubscriber(1);
+
+        requestBody.subscribe(subscriber);
+        assertTrue(subscriber.completed.await(10, TimeUnit.SECONDS));
+
+        assertEquals(0, subscriber.overflows.get());
+        assertEquals(17, subscriber.chunks.get());
+        assertArrayEquals(part, subscriber.bytes.toByteArray());
+        // a second subscription, as made by a retry, starts over
+        CollectingSubscriber retry = new CollectingSubscriber(Long.MAX_VALUE);
+        requestBody.subscribe(retry);
+        assertTrue(retry.completed.await(10, TimeUnit.SECONDS));
+        assertArrayEquals(part, retry.bytes.toByteArray());
+    }
+
+    private static RateLimitedPayload rateLimited(byte[] part, long bytesPerSecond) {
+        return (RateLimitedPayload) RateLimitedPayload.of(payload(part), List.of(new BandwidthLimiter(bytesPerSecond)));
+    }
+
+    /**
+     * Requests the given number of chunks up front, then one more for every chunk received.
+     */
+    private static final class CollectingSubscriber implements Subscriber<ByteBuffer> {
+        private final long initialRequest;
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private final AtomicInteger chunks = new AtomicInteger();
+        private final AtomicInteger overflows = new AtomicInteger();
+        private final CountDownLatch completed = new CountDownLatch(1);
+        private Subscription subscription;
+        private long outstanding;
+
+        private CollectingSubscriber(long initialRequest) {
+            this.initialRequest = initialRequest;
+        }
+
+        @Override
+        public void onSubscribe(Subscription subscription) {
+            this.subscription = subscription;
+            outstanding = initialRequest;
+            subscription.request(initialRequest);
+        }
+
+        @Override
+        public synchronized void onNext(ByteBuffer chunk) {
+            chunks.incrementAndGet();
+            if (outstanding-- <= 0) {
+                overflows.incrementAndGet();
+            }
+            assertTrue(chunk.remaining() <= RateLimitedPayload.CHUNK_SIZE);
+            byte[] chunkBytes = new byte[chunk.remaining()];
+            chunk.get(chunkBytes);
+            bytes.write(chunkBytes, 0, chunkBytes.length);
+            if (initialRequest != Long.MAX_VALUE) {
+                outstanding++;
+                subscription.request(1);
+            }
+        }
+
+        @Override
+        public void onError(Throwable error) {
+            completed.countDown();
+        }
+
+        @Override
+        public void onComplete() {
+            completed.countDown();
+        }
+    }
+}
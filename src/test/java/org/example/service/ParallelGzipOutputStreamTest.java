@@ -0,0 +1,137 @@
+package org.example.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+
+import static org.example.service.BytePayloads.randomBytes;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ParallelGzipOutputStreamTest {
+    private static final int KB = 1024;
+    private static final int MB = 1024 * KB;
+
+    private final ExecutorService compressors = Executors.newFixedThreadPool(4);
+
+    @AfterEach
+    void shutdownCompressors() {
+        compressors.shutdownNow();
+    }
+
+    @Test
+    void blocksCompressedInParallelMakeOneGzipFile() throws IOException {
+        byte[] raw = csv(2 * MB);
+        ByteArrayOutputStream gzip = new ByteArrayOutputStream();
+
+        ParallelGzipOutputStream outputStream = new ParallelGzipOutputStream(gzip, compressors, 64 * KB, Deflater.DEFAULT_COMPRESSION);
+        outputStream.write(raw);
+        outputStream.close();
+
+        assertArrayEquals(raw, gunzip(gzip.toByteArray()));
+        assertEquals(raw.length, outputStream.getRawBytes());
+        assertEquals(gzip.size(), outputStream.getCompressedBytes());
+        assertTrue(gzip.size() < raw.length / 2, "compressed to " + gzip.size() + " bytes");
+    }
+
+    @Test
+    void writesOfAnySizeAreCutIntoBlocks() throws IOException {
+        byte[] raw = randomBytes(300 * KB);
+        ByteArrayOutputStream gzip = new ByteArrayOutputStream();
+
+        ParallelGzipOutputStream outputStream = new ParallelGzipOutputStream(gzip, compressors, 10_000, 1);
+        outputStream.write(raw[0]);
+        outputStream.write(raw, 1, 9_999);
+        outputStream.write(raw, 10_000, 25_000);
+        for (int i = 35_000; i < 36_000; i++) {
+            outputStream.write(raw[i]);
+        }
+        outputStream.write(Arrays.copyOfRange(raw, 36_000, raw.length));
+        outputStream.flush();
+        outputStream.close();
+
+        assertArrayEquals(raw, gunzip(gzip.toByteArray()));
+    }
+
+    @Test
+    void emptyStreamIsAValidGzipFile() throws IOException {
+        ByteArrayOutputStream gzip = new ByteArrayOutputStream();
+
+        new ParallelGzipOutputStream(gzip, compressors, 64 * KB, Deflater.DEFAULT_COMPRESSION).close();
+
+        assertArrayEquals(new byte[0], gunzip(gzip.toByteArray()));
+    }
+
+    @Test
+    void storedBlocksAreReadBackAsWell() throws IOException {
+        byte[] raw = randomBytes(200 * KB);
+        ByteArrayOutputStream gzip = new ByteArrayOutputStream();
+
+        ParallelGzipOutputStream outputStream = new ParallelGzipOutputStream(gzip, compressors, 64 * KB, 0);
+        outputStream.write(raw);
+        outputStream.close();
+
+        assertArrayEquals(raw, gunzip(gzip.toByteArray()));
+    }
+
+    @Test
+    void gzipFileIsUploadedWhole() throws Exception {
+        InMemorySink sink = new InMemorySink();
+        S3MultipartUploadConfig config = new S3MultipartUploadConfig();
+        config.setPartBufferPool(new PartBufferPool(MB, 16));
+        config.setPartSize(5L * MB);
+        config.setAdaptivePartSize(false);
+        // random bytes don't compress, so the gzip file takes several parts
+        byte[] raw = randomBytes(12 * MB);
+
+        S3MultipartOutputStream uploadStream = new S3MultipartOutputStream(new S3MultipartUpload("bucket", "key.gz", sink, config));
+        try (ParallelGzipOutputStream outputStream = new ParallelGzipOutputStream(uploadStream, compressors, 256 * KB, 1)) {
+            outputStream.write(raw);
+        }
+
+        assertArrayEquals(raw, gunzip(sink.getObject("bucket", "key.gz")));
+    }
+
+    @Test
+    void writeAfterCloseFails() throws IOException {
+        ParallelGzipOutputStream outputStream = new ParallelGzipOutputStream(new ByteArrayOutputStream(), compressors,
+                64 * KB, Deflater.DEFAULT_COMPRESSION);
+        outputStream.close();
+
+        assertThrows(IOException.class, () -> outputStream.write(1));
+    }
+
+    @Test
+    void levelShouldBeADeflateLevel() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new ParallelGzipOutputStream(new ByteArrayOutputStream(), compressors, 64 * KB, 10));
+    }
+
+    private static byte[] gunzip(byte[] gzip) throws IOException {
+        try (GZIPInputStream inputStream = new GZIPInputStream(new ByteArrayInputStream(gzip))) {
+            return inputStream.readAllBytes();
+        }
+    }
+
+    /**
+     * Lines of a CSV export, which compress like the reports do.
+     */
+    private static byte[] csv(int size) {
+        StringBuilder csv = new StringBuilder(size + 100);
+        for (int line = 0; csv.length() < size; line++) {
+            csv.append(line).append(",offer-").append(line % 977).append(",EUR,").append(line * 31 % 10_000).append('\n');
+        }
+        return csv.substring(0, size).getBytes(StandardCharsets.US_ASCII);
+    }
+}
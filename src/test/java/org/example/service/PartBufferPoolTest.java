@@ -0,0 +1,89 @@
+package org.example.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PartBufferPoolTest {
+
+    @Test
+    void releasedBufferIsHandedOutAgainCleared() throws InterruptedException {
+        PartBufferPool partBufferPool = new PartBufferPool(64, 1);
+        ByteBuffer buffer = partBufferPool.acquire();
+        assertTrue(buffer.isDirect());
+        assertEquals(64, buffer.remaining());
+        buffer.put(new byte[10]).flip();
+
+        partBufferPool.release(buffer);
+        ByteBuffer reused = partBufferPool.acquire();
+
+        assertSame(buffer, reused);
+        assertEquals(0, reused.position());
+        assertEquals(64, reused.limit());
+    }
+
+    @Test
+    void acquireWaitsForABufferToBeReleased() throws Exception {
+        PartBufferPool partBufferPool = new PartBufferPool(64, 1);
+        ByteBuffer buffer = partBufferPool.acquire();
+
+        CompletableFuture<ByteBuffer> next = CompletableFuture.supplyAsync(() -> acquire(partBufferPool));
+        assertThrows(TimeoutException.class, () -> next.get(200, TimeUnit.MILLISECONDS));
+        partBufferPool.release(buffer);
+
+        assertSame(buffer, next.get(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void reservedBuffersAreKeptFromOtherProducers() throws Exception {
+        PartBufferPool partBufferPool = new PartBufferPool(64, 3);
+        partBufferPool.reserve(2);
+        ByteBuffer first = partBufferPool.acquireReserved();
+        partBufferPool.acquire();
+
+        // one buffer is still reserved for the part being filled, none is left for anyone else
+        CompletableFuture<ByteBuffer> other = CompletableFuture.supplyAsync(() -> acquire(partBufferPool));
+        assertThrows(TimeoutException.class, () -> other.get(200, TimeUnit.MILLISECONDS));
+        partBufferPool.acquireReserved();
+        partBufferPool.release(first);
+
+        assertSame(first, other.get(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void cancelledReservationGoesBackToThePool() throws Exception {
+        PartBufferPool partBufferPool = new PartBufferPool(64, 2);
+        partBufferPool.reserve(2);
+        partBufferPool.acquireReserved();
+
+        CompletableFuture<ByteBuffer> other = CompletableFuture.supplyAsync(() -> acquire(partBufferPool));
+        assertThrows(TimeoutException.class, () -> other.get(200, TimeUnit.MILLISECONDS));
+        partBufferPool.cancelReservation(1);
+
+        assertEquals(64, other.get(10, TimeUnit.SECONDS).capacity());
+    }
+
+    @Test
+    void reservationLargerThanThePoolIsRefused() {
+        PartBufferPool partBufferPool = new PartBufferPool(64, 2);
+
+        assertThrows(IllegalArgumentException.class, () -> partBufferPool.reserve(3));
+    }
+
+    private static ByteBuffer acquire(PartBufferPool partBufferPool) {
+        try {
+            return partBufferPool.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package org.example.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.example.service.BytePayloads.payload;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PartChecksumTest {
+
+    @Test
+    void crc32cIsSentAndReportedInBase64() {
+        PartChecksum checksum = PartChecksum.compute(PartChecksum.Algorithm.CRC32C, payload(ascii("123456789")));
+
+        // CRC32C check value 0xE3069283, big-endian
+        assertEquals("4waSgw==", checksum.getValue());
+        assertEquals("4waSgw==", checksum.objectChecksum());
+    }
+
+    @Test
+    void md5IsSentInBase64AndReportedInHexLikeAnETag() {
+        PartChecksum checksum = PartChecksum.compute(PartChecksum.Algorithm.MD5, payload(ascii("123456789")));
+
+        assertEquals("JfnnlDI7RTiF9RgfG2JNCw==", checksum.getValue());
+        assertEquals("25f9e794323b453885f5181f1b624d0b", checksum.objectChecksum());
+    }
+
+    @Test
+    void multipartCrc32cIsTheCrc32cOfThePartChecksumsFollowedByThePartCount() {
+        PartChecksum first = PartChecksum.compute(PartChecksum.Algorithm.CRC32C, payload(ascii("hello ")));
+        PartChecksum second = PartChecksum.compute(PartChecksum.Algorithm.CRC32C, payload(ascii("world")));
+
+        assertEquals("fmJ+WA==", first.getValue());
+        assertEquals("MaqBTg==", second.getValue());
+        assertEquals("vUZpoA==-2", PartChecksum.objectChecksum(List.of(first, second)));
+    }
+
+    @Test
+    void multipartMd5IsTheMd5OfThePartDigestsFollowedByThePartCount() {
+        PartChecksum first = PartChecksum.compute(PartChecksum.Algorithm.MD5, payload(ascii("hello ")));
+        PartChecksum second = PartChecksum.compute(PartChecksum.Algorithm.MD5, payload(ascii("world")));
+
+        assertEquals("e09e4fd6265b36115fe3db32df945d84-2", PartChecksum.objectChecksum(List.of(first, second)));
+    }
+
+    @Test
+    void checksumOnlyMatchesTheBytesItWasComputedFrom() {
+        PartChecksum checksum = PartChecksum.compute(PartChecksum.Algorithm.CRC32C, payload(ascii("hello ")));
+
+        assertTrue(checksum.matches(payload(ascii("hello "))));
+        assertFalse(checksum.matches(payload(ascii("hello!"))));
+    }
+
+    private static byte[] ascii(String text) {
+        return text.getBytes(StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,148 @@
+package org.example.service;
+
+import org.junit.jupiter.api.Test;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+import static org.example.service.BytePayloads.payload;
+import static org.example.service.BytePayloads.randomBytes;
+import static org.example.service.BytePayloads.toByteArray;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class PartEncryptionTest {
+    private static final SecretKey KEY = new SecretKeySpec(randomBytes(16, 7), "AES");
+    // parts starting on and off the AES blocks, a single byte part included
+    private static final int[] PART_OFFSETS = {0, 5, 16, 33, 34, 4097, 65_536 + 3, 100_000};
+    private static final int OBJECT_SIZE = 123_457;
+
+    @Test
+    void partsEncryptedAtTheirOffsetDecryptAsOneStream() throws Exception {
+        PartEncryption partEncryption = new PartEncryption(KEY);
+        byte[] object = randomBytes(OBJECT_SIZE);
+
+        byte[] encrypted = encryptInParts(partEncryption.newObject(), object, false);
+
+        try (InputStream decrypted = partEncryption.decrypt(new ByteArrayInputStream(encrypted))) {
+            assertArrayEquals(object, decrypted.readAllBytes());
+        }
+    }
+
+    @Test
+    void streamsAndBuffersOfAPartHoldTheSameBytes() throws Exception {
+        PartEncryption.ObjectEncryption objectEncryption = new PartEncryption(KEY).newObject();
+        byte[] object = randomBytes(OBJECT_SIZE);
+
+        assertArrayEquals(encryptInParts(objectEncryption, object, false), encryptInParts(objectEncryption, object, true));
+    }
+
+    @Test
+    void counterCarriesOverEveryByteOfTheIv() throws Exception {
+        byte[] object = randomBytes(OBJECT_SIZE);
+        byte[] lowBytesExhausted = new byte[PartEncryption.HEADER_SIZE];
+        Arrays.fill(lowBytesExhausted, 8, 16, (byte) 0xFF);
+        lowBytesExhausted[15] = (byte) 0xF0;
+        byte[] allBytesExhausted = new byte[PartEncryption.HEADER_SIZE];
+        Arrays.fill(allBytesExhausted, (byte) 0xFF);
+        allBytesExhausted[15] = (byte) 0xF0;
+
+        for (byte[] iv : new byte[][]{lowBytesExhausted, allBytesExhausted}) {
+            PartEncryption.ObjectEncryption objectEncryption = new PartEncryption(KEY).newObject(iv);
+            byte[] encrypted = encryptInParts(objectEncryption, object, false);
+
+            // the whole object encrypted by a single cipher, as the object is decrypted
+            Cipher cipher = Cipher.getInstance("AES/CTR/NoPadding");
+            cipher.init(Cipher.ENCRYPT_MODE, KEY, new IvParameterSpec(iv));
+            assertArrayEquals(iv, Arrays.copyOf(encrypted, PartEncryption.HEADER_SIZE));
+            assertArrayEquals(cipher.doFinal(object), Arrays.copyOfRange(encrypted, PartEncryption.HEADER_SIZE, encrypted.length));
+        }
+    }
+
+    @Test
+    void rewoundPartStreamEncryptsTheSameBytesAgain() throws Exception {
+        PartEncryption.ObjectEncryption objectEncryption = new PartEncryption(KEY).newObject();
+        byte[] part = randomBytes(10_000);
+        PartPayload encryptedPart = objectEncryption.encrypt(payload(part), 4097, false);
+
+        InputStream inputStream = encryptedPart.newInputStream();
+        inputStream.mark(0);
+        assertEquals(1000, inputStream.skip(1000));
+        byte[] afterSkip = inputStream.readNBytes(50);
+        inputStream.reset();
+        byte[] whole = inputStream.readAllBytes();
+
+        assertArrayEquals(encryptedPart.newInputStream().readAllBytes(), whole);
+        assertArrayEquals(Arrays.copyOfRange(whole, 1000, 1050), afterSkip);
+    }
+
+    @Test
+    void partStreamWhichCantRewindIsNotRewoundEncrypted() throws Exception {
+        PartEncryption.ObjectEncryption objectEncryption = new PartEncryption(KEY).newObject();
+        byte[] part = randomBytes(10_000);
+        PartPayload forwardOnlyPart = new PartPayload() {
+            @Override
+            public long size() {
+                return part.length;
+            }
+
+            @Override
+            public InputStream newInputStream() {
+                // a response body, which can only be read forward
+                return new FilterInputStream(new ByteArrayInputStream(part)) {
+                    @Override
+                    public boolean markSupported() {
+                        return false;
+                    }
+                };
+            }
+
+            @Override
+            public void release() {
+            }
+        };
+
+        InputStream inputStream = objectEncryption.encrypt(forwardOnlyPart, 4097, false).newInputStream();
+        inputStream.mark(0);
+        inputStream.readNBytes(1000);
+
+        assertFalse(inputStream.markSupported());
+        assertThrows(IOException.class, inputStream::reset);
+    }
+
+    @Test
+    void objectShorterThanTheHeaderIsRejected() {
+        assertThrows(IOException.class, () -> new PartEncryption(KEY).decrypt(new ByteArrayInputStream(new byte[5])));
+    }
+
+    /**
+     * The object as stored: every part encrypted on its own, the first one carrying the header.
+     */
+    private static byte[] encryptInParts(PartEncryption.ObjectEncryption objectEncryption, byte[] object,
+                                         boolean fromBuffers) throws IOException {
+        ByteArrayOutputStream encrypted = new ByteArrayOutputStream();
+        for (int i = 0; i < PART_OFFSETS.length; i++) {
+            int offset = PART_OFFSETS[i];
+            int end = i + 1 < PART_OFFSETS.length ? PART_OFFSETS[i + 1] : object.length;
+            PartPayload part = objectEncryption.encrypt(payload(object, offset, end - offset), offset, i == 0);
+            if (fromBuffers) {
+                encrypted.write(toByteArray(part.byteBuffers()));
+            } else {
+                try (InputStream inputStream = part.newInputStream()) {
+                    inputStream.transferTo(encrypted);
+                }
+            }
+        }
+        return encrypted.toByteArray();
+    }
+}
@@ -0,0 +1,147 @@
+package org.example.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.example.service.BytePayloads.payload;
+import static org.example.service.BytePayloads.randomBytes;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PartJournalTest {
+    private static final int MB = 1024 * 1024;
+
+    @Test
+    void tornRecordIsIgnoredAndDoesNotSwallowTheNextOne(@TempDir Path directory) throws Exception {
+        Path path = directory.resolve("upload.journal");
+        try (PartJournal journal = PartJournal.open(path)) {
+            journal.startUpload("bucket", "key", "upload-1");
+            journal.recordPart(new PartJournal.Entry(1, 0, 5 * MB, "etag-1", 0xCAFEL));
+            journal.recordPart(new PartJournal.Entry(2, 5 * MB, 5 * MB, "etag-2", 0xFFFFFFFFL));
+        }
+        // a crash while appending the record of part 3
+        Files.write(path, "PART\t3\t1048".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+        try (PartJournal journal = PartJournal.open(path)) {
+            assertTrue(journal.isUploadOf("bucket", "key"));
+            assertFalse(journal.isUploadOf("bucket", "other-key"));
+            assertEquals("upload-1", journal.getUploadId());
+            assertEquals(Set.of(1, 2), journal.getEntries().keySet());
+            PartJournal.Entry entry = journal.getEntries().get(2);
+            assertEquals(5L * MB, entry.getOffset());
+            assertEquals(5L * MB, entry.getLength());
+            assertEquals("etag-2", entry.getETag());
+            assertEquals(0xFFFFFFFFL, entry.getCrc32c());
+            journal.recordPart(new PartJournal.Entry(3, 10 * MB, 100, "etag-3", 0x1L));
+        }
+
+        try (PartJournal journal = PartJournal.open(path)) {
+            assertEquals(Set.of(1, 2, 3), journal.getEntries().keySet());
+            assertEquals("etag-3", journal.getEntries().get(3).getETag());
+        }
+    }
+
+    @Test
+    void newUploadDropsTheRecordsOfThePreviousOne(@TempDir Path directory) throws Exception {
+        Path path = directory.resolve("upload.journal");
+        try (PartJournal journal = PartJournal.open(path)) {
+            journal.startUpload("bucket", "key", "upload-1");
+            journal.recordPart(new PartJournal.Entry(1, 0, 5 * MB, "etag-1", 0xCAFEL));
+            journal.startUpload("bucket", "key", "upload-2");
+        }
+
+        try (PartJournal journal = PartJournal.open(path)) {
+            assertEquals("upload-2", journal.getUploadId());
+            assertTrue(journal.getEntries().isEmpty());
+        }
+    }
+
+    @Test
+    void resumedUploadOnlySendsThePartsNotStoredWithTheSameBytes(@TempDir Path directory) throws Exception {
+        byte[] object = randomBytes(15 * MB + 100);
+        Path path = directory.resolve("upload.journal");
+        CountingSink sink = new CountingSink();
+        // the interrupted upload stored parts 1 and 2, but part 2 from other bytes, and journaled part 3 which
+        // S3 doesn't list
+        String uploadId = sink.initiateUpload("bucket", "key", null);
+        UploadedPart part1 = sink.uploadPart("bucket", "key", uploadId, 1, 0, payload(object, 0, 5 * MB), null, false).join();
+        byte[] otherBytes = randomBytes(5 * MB, 7);
+        UploadedPart part2 = sink.uploadPart("bucket", "key", uploadId, 2, 5 * MB, payload(otherBytes, 0, 5 * MB), null, false).join();
+        try (PartJournal journal = PartJournal.open(path)) {
+            journal.startUpload("bucket", "key", uploadId);
+            journal.recordPart(new PartJournal.Entry(1, 0, 5 * MB, part1.getETag(),
+                    PartJournal.crc32c(payload(object, 0, 5 * MB))));
+            journal.recordPart(new PartJournal.Entry(2, 5 * MB, 5 * MB, part2.getETag(),
+                    PartJournal.crc32c(payload(otherBytes, 0, 5 * MB))));
+            journal.recordPart(new PartJournal.Entry(3, 10 * MB, 5 * MB, "etag-3", 0x1L));
+        }
+        sink.sentParts.clear();
+
+        S3MultipartUploadConfig config = new S3MultipartUploadConfig();
+        config.setPartBufferPool(new PartBufferPool(MB, 16));
+        config.setPartSize(5L * MB);
+        config.setAdaptivePartSize(false);
+        config.setSingleRequestThreshold(0);
+        config.setJournalPath(path);
+        try (S3MultipartOutputStream outputStream = new S3MultipartOutputStream(new S3MultipartUpload("bucket", "key", sink, config))) {
+            outputStream.write(object);
+        }
+
+        assertEquals(Set.of(2, 3, 4), sink.sentParts);
+        assertArrayEquals(object, sink.delegate.getObject("bucket", "key"));
+        assertFalse(Files.exists(path));
+    }
+
+    /**
+     * In-memory sink recording the numbers of the parts it is sent.
+     */
+    private static final class CountingSink implements ObjectSink {
+        private final InMemorySink delegate = new InMemorySink();
+        private final Set<Integer> sentParts = ConcurrentHashMap.newKeySet();
+
+        @Override
+        public String initiateUpload(String bucketName, String key, PartChecksum.Algorithm checksumAlgorithm) {
+            return delegate.initiateUpload(bucketName, key, checksumAlgorithm);
+        }
+
+        @Override
+        public CompletableFuture<UploadedPart> uploadPart(String bucketName, String key, String uploadId, int partNumber,
+                                                          long offset, PartPayload payload, PartChecksum checksum,
+                                                          boolean isLastPart) {
+            sentParts.add(partNumber);
+            return delegate.uploadPart(bucketName, key, uploadId, partNumber, offset, payload, checksum, isLastPart);
+        }
+
+        @Override
+        public String completeUpload(String bucketName, String key, String uploadId, List<UploadedPart> uploadedParts,
+                                     List<PartChecksum> partChecksums) {
+            return delegate.completeUpload(bucketName, key, uploadId, uploadedParts, partChecksums);
+        }
+
+        @Override
+        public void abortUpload(String bucketName, String key, String uploadId) {
+            delegate.abortUpload(bucketName, key, uploadId);
+        }
+
+        @Override
+        public List<ListedPart> listParts(String bucketName, String key, String uploadId) {
+            return delegate.listParts(bucketName, key, uploadId);
+        }
+
+        @Override
+        public String putObject(String bucketName, String key, PartPayload payload, PartChecksum checksum) {
+            return delegate.putObject(bucketName, key, payload, checksum);
+        }
+    }
+}
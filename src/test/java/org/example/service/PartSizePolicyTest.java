@@ -0,0 +1,100 @@
+package org.example.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class PartSizePolicyTest {
+    private static final long MB = 1024 * 1024;
+    private static final long GB = 1024 * MB;
+
+    @Test
+    void fixedPartSizeGrowsOnlyWhenTheObjectWouldNotFitInTheLastPartNumber() {
+        assertEquals(10 * MB, PartSizePolicy.fixedPartSize(100 * MB, 10 * MB));
+        assertEquals(PartSizePolicy.MIN_PART_SIZE, PartSizePolicy.fixedPartSize(100 * MB, MB));
+        // 200 GB in 10 MB parts would take 20,480 parts
+        assertEquals((200 * GB + PartSizePolicy.MAX_PARTS - 1) / PartSizePolicy.MAX_PARTS,
+                PartSizePolicy.fixedPartSize(200 * GB, 10 * MB));
+        assertEquals(PartSizePolicy.MAX_PART_SIZE, PartSizePolicy.fixedPartSize(100 * GB, 6 * GB));
+    }
+
+    @Test
+    void partsOfAnObjectOfUnknownSizeDoubleEveryGrowthInterval() {
+        PartSizePolicy partSizePolicy = new PartSizePolicy(10 * MB, GB, -1, false);
+
+        assertEquals(10 * MB, partSizePolicy.nextPartSize(1, 0));
+        assertEquals(10 * MB, partSizePolicy.nextPartSize(PartSizePolicy.GROWTH_INTERVAL, 0));
+        assertEquals(20 * MB, partSizePolicy.nextPartSize(PartSizePolicy.GROWTH_INTERVAL + 1, 0));
+        assertEquals(40 * MB, partSizePolicy.nextPartSize(2 * PartSizePolicy.GROWTH_INTERVAL + 1, 0));
+        // never more than the caller can buffer
+        assertEquals(GB, partSizePolicy.nextPartSize(PartSizePolicy.MAX_PARTS, 0));
+    }
+
+    @Test
+    void remainingBytesOfAnObjectOfKnownSizeAreSpreadOverTheRemainingPartNumbers() {
+        long objectSize = 150 * GB;
+        PartSizePolicy partSizePolicy = new PartSizePolicy(10 * MB, GB, objectSize, false);
+
+        long partSize = partSizePolicy.nextPartSize(1, 0);
+        assertEquals((objectSize + PartSizePolicy.MAX_PARTS - 1) / PartSizePolicy.MAX_PARTS, partSize);
+        // a producer which handed over less than expected so far is given larger parts
+        long lateSize = partSizePolicy.nextPartSize(5001, 5000 * 10 * MB);
+        assertEquals((objectSize - 5000 * 10 * MB + 4999) / 5000, lateSize);
+    }
+
+    @Test
+    void partSizesStayWithinTheLimitsOfS3() {
+        assertEquals(PartSizePolicy.MIN_PART_SIZE, new PartSizePolicy(MB, GB, -1, false).nextPartSize(1, 0));
+        assertEquals(PartSizePolicy.MAX_PART_SIZE, new PartSizePolicy(10 * GB, 10 * GB, -1, false).nextPartSize(1, 0));
+        assertThrows(IllegalArgumentException.class, () -> new PartSizePolicy(10 * MB, MB, -1, false));
+    }
+
+    @Test
+    void objectWhichCantFitInTheLargestPartsIsRefused() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new PartSizePolicy(10 * MB, 100 * MB, 100 * MB * PartSizePolicy.MAX_PARTS + 1, false));
+    }
+
+    @Test
+    void adaptivePartsGrowWhileThroughputImprovesAndSettleWhenItStops() {
+        PartSizePolicy partSizePolicy = new PartSizePolicy(5 * MB, 80 * MB, -1, true);
+
+        recordWindow(partSizePolicy, 5 * MB, 100);
+        assertEquals(10 * MB, partSizePolicy.nextPartSize(5, 0));
+        // twice the bytes in the same time per part
+        recordWindow(partSizePolicy, 10 * MB, 100);
+        assertEquals(20 * MB, partSizePolicy.nextPartSize(9, 0));
+        // twice the bytes in twice the time, larger parts no longer pay off
+        recordWindow(partSizePolicy, 20 * MB, 200);
+        assertEquals(10 * MB, partSizePolicy.nextPartSize(13, 0));
+
+        recordWindow(partSizePolicy, 10 * MB, 1);
+        assertEquals(10 * MB, partSizePolicy.nextPartSize(17, 0));
+    }
+
+    @Test
+    void shortPartsSayNothingAboutTheCurrentSize() {
+        PartSizePolicy partSizePolicy = new PartSizePolicy(5 * MB, 80 * MB, -1, true);
+
+        recordWindow(partSizePolicy, MB, 1);
+        assertEquals(5 * MB, partSizePolicy.nextPartSize(5, 0));
+    }
+
+    @Test
+    void fixedPartSizeIgnoresMeasurements() {
+        PartSizePolicy partSizePolicy = new PartSizePolicy(5 * MB, 80 * MB, -1, false);
+
+        recordWindow(partSizePolicy, 5 * MB, 100);
+        assertEquals(5 * MB, partSizePolicy.nextPartSize(5, 0));
+    }
+
+    /**
+     * Records as many parts of the given size as the policy measures before deciding.
+     */
+    private static void recordWindow(PartSizePolicy partSizePolicy, long partSize, long millisPerPart) {
+        for (int i = 0; i < 4; i++) {
+            partSizePolicy.recordPart(partSize, millisPerPart * 1_000_000);
+        }
+    }
+}
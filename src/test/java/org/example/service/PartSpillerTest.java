@@ -0,0 +1,109 @@
+package org.example.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.Base64;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+import static org.example.service.BytePayloads.payload;
+import static org.example.service.BytePayloads.randomBytes;
+import static org.example.service.BytePayloads.toByteArray;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class PartSpillerTest {
+    private static final int MB = 1024 * 1024;
+
+    @Test
+    void spilledPartReadsBackTheBytesOfThePart(@TempDir Path directory) throws Exception {
+        byte[] part = randomBytes(3 * MB + 17);
+        PartSpiller partSpiller = new PartSpiller(directory, 8L * MB);
+
+        PartPayload spilledPart = partSpiller.trySpill(payload(part));
+        try {
+            assertArrayEquals(part, spilledPart.newInputStream().readAllBytes());
+            assertArrayEquals(part, toByteArray(spilledPart.byteBuffers()));
+            CRC32 expected = new CRC32();
+            expected.update(part);
+            CRC32 actual = new CRC32();
+            spilledPart.updateChecksum(actual);
+            assertEquals(expected.getValue(), actual.getValue());
+
+            // a retried request resets the stream to its mark
+            InputStream inputStream = spilledPart.newInputStream();
+            inputStream.mark(0);
+            assertEquals(MB, inputStream.skip(MB));
+            inputStream.reset();
+            assertArrayEquals(part, inputStream.readAllBytes());
+        } finally {
+            spilledPart.release();
+        }
+    }
+
+    @Test
+    void md5OfASpilledPartIsComputedWithoutReadingItIntoBuffers(@TempDir Path directory) throws Exception {
+        byte[] part = randomBytes(3 * MB + 17);
+        PartSpiller partSpiller = new PartSpiller(directory, 8L * MB);
+
+        PartPayload spilledPart = partSpiller.trySpill(payload(part));
+        try {
+            PartChecksum checksum = PartChecksum.compute(PartChecksum.Algorithm.MD5, new PartPayload() {
+                @Override
+                public long size() {
+                    return spilledPart.size();
+                }
+
+                @Override
+                public InputStream newInputStream() {
+                    return spilledPart.newInputStream();
+                }
+
+                @Override
+                public ByteBuffer[] byteBuffers() {
+                    throw new AssertionError("the part should not be copied into buffers");
+                }
+
+                @Override
+                public void updateDigest(MessageDigest digest) {
+                    spilledPart.updateDigest(digest);
+                }
+
+                @Override
+                public void release() {
+                }
+            });
+
+            assertEquals(Base64.getEncoder().encodeToString(MessageDigest.getInstance("MD5").digest(part)), checksum.getValue());
+        } finally {
+            spilledPart.release();
+        }
+    }
+
+    @Test
+    void releaseDeletesTheFileAndGivesTheDiskBudgetBack(@TempDir Path directory) throws Exception {
+        PartSpiller partSpiller = new PartSpiller(directory, 5L * MB);
+
+        PartPayload spilledPart = partSpiller.trySpill(payload(randomBytes(4 * MB)));
+        assertNotNull(spilledPart);
+        assertEquals(4L * MB, partSpiller.getBytesOnDisk());
+        assertNull(partSpiller.trySpill(payload(randomBytes(4 * MB))));
+        spilledPart.release();
+
+        assertEquals(0, partSpiller.getBytesOnDisk());
+        try (Stream<Path> files = Files.list(directory)) {
+            assertEquals(0, files.count());
+        }
+        PartPayload nextPart = partSpiller.trySpill(payload(randomBytes(4 * MB)));
+        assertNotNull(nextPart);
+        nextPart.release();
+    }
+}
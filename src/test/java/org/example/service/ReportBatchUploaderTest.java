@@ -0,0 +1,66 @@
+package org.example.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.example.service.BytePayloads.randomBytes;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+class ReportBatchUploaderTest {
+    private static final int MB = 1024 * 1024;
+
+    @Test
+    void generatorsFillingMultiBufferPartsDoNotDeadlockOnASmallPool() {
+        S3MultipartUploadConfig config = new S3MultipartUploadConfig();
+        // parts of 5 buffers out of 16, 8 generators each holding a partly filled part would empty the pool
+        config.setPartBufferPool(new PartBufferPool(MB, 16));
+        config.setPartSize(5L * MB);
+        config.setAdaptivePartSize(false);
+        InMemorySink sink = new InMemorySink();
+        Map<String, Integer> reports = new LinkedHashMap<>();
+        for (int i = 0; i < 8; i++) {
+            reports.put("report-" + i, 12 * MB + i);
+        }
+
+        Map<String, UploadResult> results = assertTimeoutPreemptively(Duration.ofSeconds(60), () ->
+                new ReportBatchUploader(sink, "bucket", config, 8).uploadAll(reports, (key, size, outputStream) -> {
+                    byte[] report = report(key, size);
+                    for (int written = 0; written < size; written += 64 * 1024) {
+                        outputStream.write(report, written, Math.min(64 * 1024, size - written));
+                        // interleaves the generators, so they all hold a part at the same time
+                        Thread.yield();
+                    }
+                }));
+
+        assertEquals(reports.keySet(), results.keySet());
+        for (Map.Entry<String, Integer> report : reports.entrySet()) {
+            assertArrayEquals(report(report.getKey(), report.getValue()), sink.getObject("bucket", report.getKey()));
+        }
+    }
+
+    @Test
+    void journaledConfigIsRejected() {
+        S3MultipartUploadConfig config = new S3MultipartUploadConfig();
+        config.setPartBufferPool(new PartBufferPool(MB, 16));
+        config.setJournalPath(Path.of("batch.journal"));
+        InMemorySink sink = new InMemorySink();
+        ReportBatchUploader batchUploader = new ReportBatchUploader(sink, "bucket", config, 2);
+
+        assertThrows(IllegalArgumentException.class, () -> batchUploader.uploadAll(Map.of("report", 10),
+                (key, size, outputStream) -> outputStream.write(new byte[size])));
+        assertNull(sink.getObject("bucket", "report"));
+    }
+
+    private static byte[] report(String key, int size) {
+        return randomBytes(size, Arrays.hashCode(key.getBytes()));
+    }
+}
@@ -0,0 +1,107 @@
+package org.example.service;
+
+import com.amazonaws.AbortedException;
+import com.amazonaws.AmazonServiceException;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.awscore.exception.AwsErrorDetails;
+import software.amazon.awssdk.core.exception.SdkClientException;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.SocketTimeoutException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RetryPolicyTest {
+    private final RetryPolicy retryPolicy = new RetryPolicy();
+
+    @Test
+    void v1FailuresAreClassifiedByStatusAndErrorCode() {
+        assertEquals(RetryPolicy.Failure.THROTTLED, retryPolicy.classify(serviceException(503, "SlowDown")));
+        assertEquals(RetryPolicy.Failure.THROTTLED, retryPolicy.classify(serviceException(400, "Throttling")));
+        assertEquals(RetryPolicy.Failure.RETRYABLE, retryPolicy.classify(serviceException(500, "InternalError")));
+        assertEquals(RetryPolicy.Failure.RETRYABLE, retryPolicy.classify(serviceException(400, "RequestTimeout")));
+        assertEquals(RetryPolicy.Failure.FATAL, retryPolicy.classify(serviceException(404, "NoSuchUpload")));
+        assertEquals(RetryPolicy.Failure.FATAL, retryPolicy.classify(serviceException(403, "AccessDenied")));
+
+        assertEquals(RetryPolicy.Failure.RETRYABLE,
+                retryPolicy.classify(new com.amazonaws.SdkClientException("Unable to execute HTTP request",
+                        new SocketTimeoutException())));
+        assertEquals(RetryPolicy.Failure.FATAL, retryPolicy.classify(new AbortedException()));
+    }
+
+    @Test
+    void v2FailuresAreClassifiedByStatusAndErrorCode() {
+        assertEquals(RetryPolicy.Failure.THROTTLED, retryPolicy.classify(s3Exception(503, "SlowDown")));
+        assertEquals(RetryPolicy.Failure.RETRYABLE, retryPolicy.classify(s3Exception(500, "InternalError")));
+        assertEquals(RetryPolicy.Failure.RETRYABLE, retryPolicy.classify(s3Exception(400, "RequestTimeout")));
+        assertEquals(RetryPolicy.Failure.FATAL, retryPolicy.classify(s3Exception(404, "NoSuchUpload")));
+
+        assertEquals(RetryPolicy.Failure.RETRYABLE, retryPolicy.classify(SdkClientException.builder()
+                .message("Unable to execute HTTP request").cause(new IOException("Connection reset")).build()));
+        assertEquals(RetryPolicy.Failure.FATAL, retryPolicy.classify(
+                software.amazon.awssdk.core.exception.AbortedException.builder().build()));
+    }
+
+    @Test
+    void otherFailuresAreOnlyRetriedWhenThePartCouldNotBeRead() {
+        assertEquals(RetryPolicy.Failure.RETRYABLE,
+                retryPolicy.classify(new UncheckedIOException(new IOException("Range ended early"))));
+        assertEquals(RetryPolicy.Failure.FATAL, retryPolicy.classify(new IllegalStateException("Upload has failed")));
+    }
+
+    @Test
+    void backoffIsJitteredUnderAnExponentialCeiling() {
+        retryPolicy.setBaseDelayMillis(100);
+        retryPolicy.setThrottledBaseDelayMillis(1000);
+        retryPolicy.setMaxDelayMillis(5000);
+
+        for (int i = 0; i < 1000; i++) {
+            assertBetween(0, 100, retryPolicy.backoffMillis(RetryPolicy.Failure.RETRYABLE, 1));
+            assertBetween(0, 400, retryPolicy.backoffMillis(RetryPolicy.Failure.RETRYABLE, 3));
+            assertBetween(0, 2000, retryPolicy.backoffMillis(RetryPolicy.Failure.THROTTLED, 2));
+            // the ceiling stops growing at the maximum delay, however many attempts failed
+            assertBetween(0, 5000, retryPolicy.backoffMillis(RetryPolicy.Failure.THROTTLED, 40));
+        }
+    }
+
+    @Test
+    void backoffIsSpreadOverTheWholeCeiling() {
+        retryPolicy.setBaseDelayMillis(1000);
+        long shortest = Long.MAX_VALUE;
+        long longest = 0;
+        for (int i = 0; i < 1000; i++) {
+            long backoffMillis = retryPolicy.backoffMillis(RetryPolicy.Failure.RETRYABLE, 1);
+            shortest = Math.min(shortest, backoffMillis);
+            longest = Math.max(longest, backoffMillis);
+        }
+
+        assertTrue(shortest < 100, "shortest backoff " + shortest);
+        assertTrue(longest > 900, "longest backoff " + longest);
+    }
+
+    @Test
+    void noRetryMakesASingleAttempt() {
+        assertEquals(1, RetryPolicy.noRetry().getMaxAttempts());
+    }
+
+    private static AmazonServiceException serviceException(int statusCode, String errorCode) {
+        AmazonServiceException serviceException = new AmazonServiceException(errorCode);
+        serviceException.setStatusCode(statusCode);
+        serviceException.setErrorCode(errorCode);
+        return serviceException;
+    }
+
+    private static S3Exception s3Exception(int statusCode, String errorCode) {
+        return (S3Exception) S3Exception.builder()
+                .statusCode(statusCode)
+                .awsErrorDetails(AwsErrorDetails.builder().errorCode(errorCode).build())
+                .build();
+    }
+
+    private static void assertBetween(long min, long max, long value) {
+        assertTrue(value >= min && value <= max, String.format("%d is not within [%d, %d]", value, min, max));
+    }
+}
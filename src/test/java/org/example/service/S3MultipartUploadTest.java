@@ -0,0 +1,612 @@
+package org.example.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.example.service.BytePayloads.payload;
+import static org.example.service.BytePayloads.randomBytes;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class S3MultipartUploadTest {
+    private static final int MB = 1024 * 1024;
+
+    private final ExecutorService clientThread = Executors.newSingleThreadExecutor();
+
+    @AfterEach
+    void shutdownClient() {
+        clientThread.shutdownNow();
+    }
+
+    @Test
+    void uploadIsCompletedOffTheClientThreadFinishingTheLastPart() throws Exception {
+        ClientThreadSink sink = new ClientThreadSink(-1);
+        byte[] object = randomBytes(12 * MB);
+
+        S3MultipartOutputStream outputStream = new S3MultipartOutputStream(new S3MultipartUpload("bucket", "key", sink, config()));
+        outputStream.write(object);
+        UploadResult result = outputStream.closeAsync().get(30, TimeUnit.SECONDS);
+
+        assertEquals(2, result.getPartCount());
+        assertArrayEquals(object, sink.delegate.getObject("bucket", "key"));
+    }
+
+    @Test
+    void uploadIsAbortedOffTheClientThreadFailingAPart() throws Exception {
+        ClientThreadSink sink = new ClientThreadSink(2);
+
+        S3MultipartOutputStream outputStream = new S3MultipartOutputStream(new S3MultipartUpload("bucket", "key", sink, config()));
+        outputStream.write(randomBytes(12 * MB));
+        CompletableFuture<UploadResult> completion = outputStream.closeAsync();
+
+        assertThrows(ExecutionException.class, () -> completion.get(30, TimeUnit.SECONDS));
+        assertTrue(sink.aborted.await(30, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void closeFailsWithTheFailureOfTheUploadEveryTime() throws Exception {
+        ClientThreadSink sink = new ClientThreadSink(2);
+
+        S3MultipartOutputStream outputStream = new S3MultipartOutputStream(new S3MultipartUpload("bucket", "key", sink, config()));
+        outputStream.write(randomBytes(12 * MB));
+        IOException failure = assertThrows(IOException.class, outputStream::close);
+        IOException laterFailure = assertThrows(IOException.class, outputStream::close);
+
+        assertNotNull(failure.getCause());
+        assertSame(failure.getCause(), laterFailure.getCause());
+    }
+
+    @Test
+    void writeFailsWithAnIOExceptionOnceAPartHasFailed() throws Exception {
+        ClientThreadSink sink = new ClientThreadSink(1);
+
+        S3MultipartOutputStream outputStream = new S3MultipartOutputStream(new S3MultipartUpload("bucket", "key", sink, config()));
+        // ships the first part, of 8 MB
+        outputStream.write(randomBytes(12 * MB));
+        assertTrue(sink.aborted.await(30, TimeUnit.SECONDS));
+        // fills the second part, which the failed upload refuses
+        IOException failure = assertThrows(IOException.class, () -> outputStream.write(randomBytes(6 * MB)));
+
+        assertNotNull(failure.getCause());
+    }
+
+    @Test
+    void fullPartGoesBackToThePoolWhenTheUploadCantBeInitiated() throws Exception {
+        InMemorySink sink = new InMemorySink() {
+            @Override
+            public String initiateUpload(String bucketName, String key, PartChecksum.Algorithm checksumAlgorithm) {
+                throw new IllegalStateException("S3 is unreachable");
+            }
+        };
+        S3MultipartUploadConfig config = config();
+        PartBufferPool partBufferPool = config.getPartBufferPool();
+
+        S3MultipartOutputStream outputStream = new S3MultipartOutputStream(new S3MultipartUpload("bucket", "key", sink, config));
+        // the upload is only initiated once the first part, of 8 MB, is full
+        assertThrows(IOException.class, () -> outputStream.write(randomBytes(12 * MB)));
+
+        assertTimeoutPreemptively(Duration.ofSeconds(10), () -> partBufferPool.reserve(partBufferPool.getMaxBuffers()));
+    }
+
+    @Test
+    void tryUploadPartAsyncGivesUpWhileTheInFlightPartsAreFull() throws Exception {
+        CountDownLatch partsAnswered = new CountDownLatch(1);
+        InMemorySink sink = new InMemorySink() {
+            @Override
+            public CompletableFuture<UploadedPart> uploadPart(String bucketName, String key, String uploadId, int partNumber,
+                                                              long offset, PartPayload payload, PartChecksum checksum,
+                                                              boolean isLastPart) {
+                try {
+                    partsAnswered.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return CompletableFuture.failedFuture(e);
+                }
+                return super.uploadPart(bucketName, key, uploadId, partNumber, offset, payload, checksum, isLastPart);
+            }
+        };
+        S3MultipartUploadConfig config = config();
+        config.setMaxInFlightParts(2);
+        UploadScheduler uploadScheduler = new UploadScheduler(4, UploadExecutionMode.PLATFORM_THREADS);
+        config.setUploadScheduler(uploadScheduler);
+        byte[] object = randomBytes(16 * MB);
+
+        try {
+            S3MultipartUpload multipartUpload = new S3MultipartUpload("bucket", "key", sink, config);
+            multipartUpload.initializeUpload();
+            multipartUpload.uploadPartAsync(payload(object, 0, 5 * MB));
+            multipartUpload.uploadPartAsync(payload(object, 5 * MB, 5 * MB));
+            PartPayload thirdPart = payload(object, 10 * MB, 5 * MB);
+
+            assertFalse(multipartUpload.tryUploadPartAsync(thirdPart, 100, TimeUnit.MILLISECONDS));
+            partsAnswered.countDown();
+            // the refused part still belongs to the caller, who hands it over again
+            assertTrue(multipartUpload.tryUploadPartAsync(thirdPart, 10, TimeUnit.SECONDS));
+            UploadResult result = multipartUpload.uploadFinalPartAsync(payload(object, 15 * MB, MB)).get(30, TimeUnit.SECONDS);
+
+            assertEquals(4, result.getPartCount());
+            assertArrayEquals(object, sink.getObject("bucket", "key"));
+        } finally {
+            partsAnswered.countDown();
+            uploadScheduler.shutdown();
+        }
+    }
+
+    @Test
+    void partsCompletingOutOfOrderAreAssembledInSubmissionOrder() throws Exception {
+        InMemorySink sink = new InMemorySink() {
+            @Override
+            public CompletableFuture<UploadedPart> uploadPart(String bucketName, String key, String uploadId, int partNumber,
+                                                              long offset, PartPayload payload, PartChecksum checksum,
+                                                              boolean isLastPart) {
+                try {
+                    // the earlier the part, the later it is stored
+                    TimeUnit.MILLISECONDS.sleep(100L * (5 - partNumber));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return CompletableFuture.failedFuture(e);
+                }
+                return super.uploadPart(bucketName, key, uploadId, partNumber, offset, payload, checksum, isLastPart);
+            }
+        };
+        S3MultipartUploadConfig config = config();
+        UploadScheduler uploadScheduler = new UploadScheduler(4, UploadExecutionMode.PLATFORM_THREADS);
+        config.setUploadScheduler(uploadScheduler);
+        byte[] object = randomBytes(18 * MB);
+
+        try {
+            S3MultipartUpload multipartUpload = new S3MultipartUpload("bucket", "key", sink, config);
+            multipartUpload.initializeUpload();
+            multipartUpload.uploadPartAsync(payload(object, 0, 5 * MB));
+            multipartUpload.uploadPartAsync(payload(object, 5 * MB, 5 * MB));
+            multipartUpload.uploadPartAsync(payload(object, 10 * MB, 5 * MB));
+            UploadResult result = multipartUpload.uploadFinalPartAsync(payload(object, 15 * MB, 3 * MB)).get(30, TimeUnit.SECONDS);
+
+            assertEquals(4, result.getPartCount());
+            assertEquals(18 * MB, result.getSize());
+            assertArrayEquals(object, sink.getObject("bucket", "key"));
+        } finally {
+            uploadScheduler.shutdown();
+        }
+    }
+
+    @Test
+    void partsOfConcurrentProducersKeepTheirOrder() throws Exception {
+        InMemorySink sink = new InMemorySink();
+        S3MultipartUploadConfig config = config();
+        UploadScheduler uploadScheduler = new UploadScheduler(4, UploadExecutionMode.PLATFORM_THREADS);
+        config.setUploadScheduler(uploadScheduler);
+        int producers = 3;
+        int partsPerProducer = 4;
+        ExecutorService producerThreads = Executors.newFixedThreadPool(producers);
+
+        try {
+            S3MultipartUpload multipartUpload = new S3MultipartUpload("bucket", "key", sink, config);
+            multipartUpload.initializeUpload();
+            List<CompletableFuture<Void>> produced = new ArrayList<>();
+            for (int producer = 0; producer < producers; producer++) {
+                int producerId = producer;
+                produced.add(CompletableFuture.runAsync(() -> {
+                    for (int sequence = 0; sequence < partsPerProducer; sequence++) {
+                        multipartUpload.uploadPartAsync(payload(taggedPart(producerId, sequence)));
+                    }
+                }, producerThreads));
+            }
+            CompletableFuture.allOf(produced.toArray(new CompletableFuture<?>[0])).get(30, TimeUnit.SECONDS);
+            UploadResult result = multipartUpload.uploadFinalPartAsync(payload(new byte[10])).get(30, TimeUnit.SECONDS);
+
+            assertEquals(producers * partsPerProducer + 1, result.getPartCount());
+            // every part is stored whole at the place its number gives it, after the earlier parts of its producer
+            byte[] storedObject = sink.getObject("bucket", "key");
+            int[] nextSequence = new int[producers];
+            for (int part = 0; part < producers * partsPerProducer; part++) {
+                int producerId = storedObject[part * 5 * MB];
+                assertArrayEquals(taggedPart(producerId, nextSequence[producerId]++),
+                        Arrays.copyOfRange(storedObject, part * 5 * MB, (part + 1) * 5 * MB));
+            }
+        } finally {
+            producerThreads.shutdownNow();
+            uploadScheduler.shutdown();
+        }
+    }
+
+    @Test
+    void failedPartCancelsTheQueuedPartsAndAbortsTheUpload() throws Exception {
+        CountDownLatch partsSubmitted = new CountDownLatch(1);
+        CountDownLatch aborted = new CountDownLatch(1);
+        List<Integer> sentParts = Collections.synchronizedList(new ArrayList<>());
+        InMemorySink sink = new InMemorySink() {
+            @Override
+            public CompletableFuture<UploadedPart> uploadPart(String bucketName, String key, String uploadId, int partNumber,
+                                                              long offset, PartPayload payload, PartChecksum checksum,
+                                                              boolean isLastPart) {
+                sentParts.add(partNumber);
+                if (partNumber == 1) {
+                    try {
+                        partsSubmitted.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return CompletableFuture.failedFuture(new IllegalStateException("part 1 failed"));
+                }
+                return super.uploadPart(bucketName, key, uploadId, partNumber, offset, payload, checksum, isLastPart);
+            }
+
+            @Override
+            public void abortUpload(String bucketName, String key, String uploadId) {
+                super.abortUpload(bucketName, key, uploadId);
+                aborted.countDown();
+            }
+        };
+        S3MultipartUploadConfig config = config();
+        // the other parts wait in the queue while the first one is sent
+        UploadScheduler uploadScheduler = new UploadScheduler(1, UploadExecutionMode.PLATFORM_THREADS);
+        config.setUploadScheduler(uploadScheduler);
+        byte[] part = randomBytes(5 * MB);
+        CountDownLatch partsReleased = new CountDownLatch(4);
+
+        try {
+            S3MultipartUpload multipartUpload = new S3MultipartUpload("bucket", "key", sink, config);
+            multipartUpload.initializeUpload();
+            for (int i = 0; i < 3; i++) {
+                multipartUpload.uploadPartAsync(releasedPayload(part, partsReleased));
+            }
+            CompletableFuture<UploadResult> completion = multipartUpload.uploadFinalPartAsync(releasedPayload(part, partsReleased));
+            partsSubmitted.countDown();
+
+            ExecutionException failure = assertThrows(ExecutionException.class, () -> completion.get(30, TimeUnit.SECONDS));
+            assertTrue(aborted.await(30, TimeUnit.SECONDS));
+            assertTrue(partsReleased.await(10, TimeUnit.SECONDS));
+            assertEquals(List.of(1), sentParts);
+            assertEquals("part 1 failed", failure.getCause().getCause().getMessage());
+        } finally {
+            partsSubmitted.countDown();
+            uploadScheduler.shutdown();
+        }
+    }
+
+    @Test
+    void objectEndingWithinTheFirstPartIsSentByASinglePutObject() throws Exception {
+        CountingSink sink = new CountingSink();
+        S3MultipartUploadConfig config = config();
+        PartBufferPool partBufferPool = config.getPartBufferPool();
+        byte[] object = randomBytes(3 * MB);
+
+        S3MultipartOutputStream outputStream = new S3MultipartOutputStream(new S3MultipartUpload("bucket", "key", sink, config));
+        outputStream.write(object);
+        UploadResult result = outputStream.closeAsync().get(30, TimeUnit.SECONDS);
+
+        assertEquals(0, result.getPartCount());
+        assertEquals(3 * MB, result.getSize());
+        assertEquals(1, sink.putObjects.get());
+        assertEquals(0, sink.initiatedUploads.get());
+        assertArrayEquals(object, sink.getObject("bucket", "key"));
+        // the part it was buffered in is back in the pool
+        assertTimeoutPreemptively(Duration.ofSeconds(10), () -> partBufferPool.reserve(partBufferPool.getMaxBuffers()));
+    }
+
+    @Test
+    void emptyObjectIsSentByASinglePutObject() throws Exception {
+        CountingSink sink = new CountingSink();
+
+        S3MultipartOutputStream outputStream = new S3MultipartOutputStream(new S3MultipartUpload("bucket", "key", sink, config()));
+        UploadResult result = outputStream.closeAsync().get(30, TimeUnit.SECONDS);
+
+        assertEquals(0, result.getPartCount());
+        assertEquals(1, sink.putObjects.get());
+        assertArrayEquals(new byte[0], sink.getObject("bucket", "key"));
+    }
+
+    @Test
+    void objectOutgrowingTheFirstPartIsUploadedInParts() throws Exception {
+        CountingSink sink = new CountingSink();
+        byte[] object = randomBytes(12 * MB);
+
+        S3MultipartOutputStream outputStream = new S3MultipartOutputStream(new S3MultipartUpload("bucket", "key", sink, config()));
+        outputStream.write(object);
+        UploadResult result = outputStream.closeAsync().get(30, TimeUnit.SECONDS);
+
+        assertEquals(2, result.getPartCount());
+        assertEquals(0, sink.putObjects.get());
+        assertEquals(1, sink.initiatedUploads.get());
+        assertArrayEquals(object, sink.getObject("bucket", "key"));
+    }
+
+    @Test
+    void singleRequestCanBeTurnedOff() throws Exception {
+        CountingSink sink = new CountingSink();
+        S3MultipartUploadConfig config = config();
+        config.setSingleRequestThreshold(0);
+        byte[] object = randomBytes(MB);
+
+        S3MultipartUpload multipartUpload = new S3MultipartUpload("bucket", "key", sink, config);
+        S3MultipartOutputStream outputStream = new S3MultipartOutputStream(multipartUpload);
+        outputStream.write(object);
+        UploadResult result = outputStream.closeAsync().get(30, TimeUnit.SECONDS);
+
+        assertEquals(1, result.getPartCount());
+        assertEquals(0, sink.putObjects.get());
+        assertArrayEquals(object, sink.getObject("bucket", "key"));
+        assertThrows(IllegalStateException.class, () -> multipartUpload.uploadSingleRequest(payload(object)));
+    }
+
+    @Test
+    void fileIsUploadedInMappedPartsOfTheConfiguredSize(@TempDir Path directory) throws Exception {
+        CountingSink sink = new CountingSink();
+        byte[] object = randomBytes(23 * MB);
+        Path file = Files.write(directory.resolve("object"), object);
+
+        UploadResult result = new S3MultipartUpload("bucket", "key", sink, config()).uploadFileAsync(file)
+                .get(30, TimeUnit.SECONDS);
+
+        assertEquals(5, result.getPartCount());
+        assertEquals(23 * MB, result.getSize());
+        assertArrayEquals(object, sink.getObject("bucket", "key"));
+    }
+
+    @Test
+    void smallFileIsSentByASinglePutObject(@TempDir Path directory) throws Exception {
+        CountingSink sink = new CountingSink();
+        byte[] object = randomBytes(MB);
+        Path file = Files.write(directory.resolve("object"), object);
+
+        UploadResult result = new S3MultipartUpload("bucket", "key", sink, config()).uploadFileAsync(file)
+                .get(30, TimeUnit.SECONDS);
+
+        assertEquals(0, result.getPartCount());
+        assertEquals(1, sink.putObjects.get());
+        assertEquals(0, sink.initiatedUploads.get());
+        assertArrayEquals(object, sink.getObject("bucket", "key"));
+    }
+
+    @Test
+    void hedgeWinningAgainstAFileSystemSinkLeavesTheUploadWorking(@TempDir Path directory) throws Exception {
+        SlowPartSink sink = new SlowPartSink(new FileSystemSink(directory), 3, 4);
+        S3MultipartUploadConfig config = config();
+        UploadScheduler uploadScheduler = new UploadScheduler(4, UploadExecutionMode.PLATFORM_THREADS);
+        config.setUploadScheduler(uploadScheduler);
+        HedgingPolicy hedgingPolicy = new HedgingPolicy();
+        hedgingPolicy.setMinSamples(1);
+        config.setHedgingPolicy(hedgingPolicy);
+        byte[] object = randomBytes(20 * MB);
+
+        try {
+            S3MultipartOutputStream outputStream = new S3MultipartOutputStream(new S3MultipartUpload("bucket", "key", sink, config));
+            outputStream.write(object);
+            UploadResult result = outputStream.closeAsync().get(30, TimeUnit.SECONDS);
+
+            assertEquals(4, result.getPartCount());
+            assertTrue(hedgingPolicy.getHedgeWins() >= 1);
+            assertArrayEquals(object, Files.readAllBytes(sink.delegate.getObjectPath("bucket", "key")));
+        } finally {
+            uploadScheduler.shutdown();
+        }
+    }
+
+    /**
+     * Part over the given bytes, counting the latch down once released.
+     */
+    private static PartPayload releasedPayload(byte[] bytes, CountDownLatch released) {
+        PartPayload payload = payload(bytes);
+        return new PartPayload() {
+            @Override
+            public long size() {
+                return payload.size();
+            }
+
+            @Override
+            public InputStream newInputStream() {
+                return payload.newInputStream();
+            }
+
+            @Override
+            public void release() {
+                released.countDown();
+            }
+        };
+    }
+
+    /**
+     * Part of 5 MB starting with the number of its producer and its rank among the parts of the producer.
+     */
+    private static byte[] taggedPart(int producerId, int sequence) {
+        byte[] part = randomBytes(5 * MB, producerId * 100L + sequence);
+        part[0] = (byte) producerId;
+        part[1] = (byte) sequence;
+        return part;
+    }
+
+    private static S3MultipartUploadConfig config() {
+        S3MultipartUploadConfig config = new S3MultipartUploadConfig();
+        config.setPartBufferPool(new PartBufferPool(MB, 16));
+        config.setPartSize(5L * MB);
+        config.setAdaptivePartSize(false);
+        config.setRetryPolicy(RetryPolicy.noRetry());
+        return config;
+    }
+
+    /**
+     * Blocking sink whose first request for a part stalls, and which holds another part back until that request
+     * has given up, so the part is sent after it whatever became of the request.
+     */
+    private static final class SlowPartSink implements ObjectSink {
+        private final FileSystemSink delegate;
+        private final int slowPartNumber;
+        private final int heldPartNumber;
+        private final AtomicBoolean stalled = new AtomicBoolean(false);
+        private final CountDownLatch slowRequestDone = new CountDownLatch(1);
+
+        private SlowPartSink(FileSystemSink delegate, int slowPartNumber, int heldPartNumber) {
+            this.delegate = delegate;
+            this.slowPartNumber = slowPartNumber;
+            this.heldPartNumber = heldPartNumber;
+        }
+
+        @Override
+        public String initiateUpload(String bucketName, String key, PartChecksum.Algorithm checksumAlgorithm) {
+            return delegate.initiateUpload(bucketName, key, checksumAlgorithm);
+        }
+
+        @Override
+        public CompletableFuture<UploadedPart> uploadPart(String bucketName, String key, String uploadId, int partNumber,
+                                                          long offset, PartPayload payload, PartChecksum checksum,
+                                                          boolean isLastPart) {
+            if (partNumber == slowPartNumber && stalled.compareAndSet(false, true)) {
+                try {
+                    stall(1000);
+                    return delegate.uploadPart(bucketName, key, uploadId, partNumber, offset, payload, checksum, isLastPart);
+                } finally {
+                    slowRequestDone.countDown();
+                }
+            }
+            if (partNumber == heldPartNumber) {
+                try {
+                    slowRequestDone.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return CompletableFuture.failedFuture(e);
+                }
+            }
+            return delegate.uploadPart(bucketName, key, uploadId, partNumber, offset, payload, checksum, isLastPart);
+        }
+
+        /**
+         * Waits like a slow network write, which does not stop when the thread is interrupted.
+         */
+        private static void stall(long millis) {
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis);
+            boolean interrupted = false;
+            while (System.nanoTime() < deadline) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(deadline - System.nanoTime());
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        @Override
+        public String completeUpload(String bucketName, String key, String uploadId, List<UploadedPart> uploadedParts,
+                                     List<PartChecksum> partChecksums) {
+            return delegate.completeUpload(bucketName, key, uploadId, uploadedParts, partChecksums);
+        }
+
+        @Override
+        public void abortUpload(String bucketName, String key, String uploadId) {
+            delegate.abortUpload(bucketName, key, uploadId);
+        }
+
+        @Override
+        public List<ListedPart> listParts(String bucketName, String key, String uploadId) {
+            return delegate.listParts(bucketName, key, uploadId);
+        }
+
+        @Override
+        public String putObject(String bucketName, String key, PartPayload payload, PartChecksum checksum) {
+            return delegate.putObject(bucketName, key, payload, checksum);
+        }
+    }
+
+    /**
+     * Sink answering every request on a single client thread, like the event loop of a non-blocking client: a
+     * blocking request made from that thread never gets its answer.
+     */
+    private final class ClientThreadSink implements ObjectSink {
+        private final InMemorySink delegate = new InMemorySink();
+        // part failing every attempt, -1 for none
+        private final int failingPartNumber;
+        private final CountDownLatch aborted = new CountDownLatch(1);
+
+        private ClientThreadSink(int failingPartNumber) {
+            this.failingPartNumber = failingPartNumber;
+        }
+
+        @Override
+        public String initiateUpload(String bucketName, String key, PartChecksum.Algorithm checksumAlgorithm) {
+            return delegate.initiateUpload(bucketName, key, checksumAlgorithm);
+        }
+
+        @Override
+        public CompletableFuture<UploadedPart> uploadPart(String bucketName, String key, String uploadId, int partNumber,
+                                                          long offset, PartPayload payload, PartChecksum checksum,
+                                                          boolean isLastPart) {
+            return CompletableFuture.supplyAsync(() -> {
+                if (partNumber == failingPartNumber) {
+                    throw new IllegalStateException("part " + partNumber + " failed");
+                }
+                return delegate.uploadPart(bucketName, key, uploadId, partNumber, offset, payload, checksum, isLastPart).join();
+            }, clientThread);
+        }
+
+        @Override
+        public String completeUpload(String bucketName, String key, String uploadId, List<UploadedPart> uploadedParts,
+                                     List<PartChecksum> partChecksums) {
+            return CompletableFuture.supplyAsync(() -> delegate.completeUpload(bucketName, key, uploadId, uploadedParts,
+                    partChecksums), clientThread).join();
+        }
+
+        @Override
+        public void abortUpload(String bucketName, String key, String uploadId) {
+            CompletableFuture.runAsync(() -> delegate.abortUpload(bucketName, key, uploadId), clientThread).join();
+            aborted.countDown();
+        }
+
+        @Override
+        public List<ListedPart> listParts(String bucketName, String key, String uploadId) {
+            return delegate.listParts(bucketName, key, uploadId);
+        }
+
+        @Override
+        public String putObject(String bucketName, String key, PartPayload payload, PartChecksum checksum) {
+            return delegate.putObject(bucketName, key, payload, checksum);
+        }
+    }
+
+    /**
+     * In-memory sink counting the uploads it was asked to start and the objects it was sent whole.
+     */
+    private static final class CountingSink extends InMemorySink {
+        private final AtomicInteger initiatedUploads = new AtomicInteger();
+        private final AtomicInteger putObjects = new AtomicInteger();
+
+        @Override
+        public String initiateUpload(String bucketName, String key, PartChecksum.Algorithm checksumAlgorithm) {
+            initiatedUploads.incrementAndGet();
+            return super.initiateUpload(bucketName, key, checksumAlgorithm);
+        }
+
+        @Override
+        public String putObject(String bucketName, String key, PartPayload payload, PartChecksum checksum) {
+            putObjects.incrementAndGet();
+            return super.putObject(bucketName, key, payload, checksum);
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package org.example.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class UploadSchedulerTest {
+
+    @Test
+    void virtualThreadsFallBackToPlatformThreadsOnOlderRuntimes() throws InterruptedException {
+        UploadScheduler uploadScheduler = new UploadScheduler(4, UploadExecutionMode.VIRTUAL_THREADS);
+        try {
+            UploadExecutionMode expectedMode = Runtime.version().feature() >= 21
+                    ? UploadExecutionMode.VIRTUAL_THREADS : UploadExecutionMode.PLATFORM_THREADS;
+            assertEquals(expectedMode, uploadScheduler.getExecutionMode());
+
+            UploadScheduler.TaskQueue taskQueue = uploadScheduler.newQueue();
+            CountDownLatch tasksRun = new CountDownLatch(8);
+            for (int i = 0; i < 8; i++) {
+                taskQueue.submit(tasksRun::countDown);
+            }
+            assertTrue(tasksRun.await(10, TimeUnit.SECONDS));
+        } finally {
+            uploadScheduler.shutdown();
+        }
+    }
+
+    @Test
+    void platformThreadConcurrencyIsCappedAtThePoolSize() {
+        UploadScheduler platformThreads = new UploadScheduler(4, UploadExecutionMode.PLATFORM_THREADS);
+        UploadScheduler nonBlocking = new UploadScheduler(4, UploadExecutionMode.NON_BLOCKING);
+        try {
+            platformThreads.setConcurrency(100);
+            nonBlocking.setConcurrency(100);
+            assertEquals(4, platformThreads.getConcurrency());
+            assertEquals(100, nonBlocking.getConcurrency());
+
+            platformThreads.setConcurrency(2);
+            assertEquals(2, platformThreads.getConcurrency());
+        } finally {
+            platformThreads.shutdown();
+            nonBlocking.shutdown();
+        }
+    }
+
+    @Test
+    void queuesTakeTurnsForTheSlots() throws InterruptedException {
+        UploadScheduler uploadScheduler = new UploadScheduler(1, UploadExecutionMode.PLATFORM_THREADS);
+        try {
+            UploadScheduler.TaskQueue first = uploadScheduler.newQueue();
+            UploadScheduler.TaskQueue second = uploadScheduler.newQueue();
+            CountDownLatch slotTaken = new CountDownLatch(1);
+            CountDownLatch slotFreed = new CountDownLatch(1);
+            first.submit(() -> {
+                slotTaken.countDown();
+                await(slotFreed);
+            });
+            assertTrue(slotTaken.await(10, TimeUnit.SECONDS));
+
+            // the first upload queues all its parts before the second one queues any
+            List<String> runOrder = Collections.synchronizedList(new ArrayList<>());
+            CountDownLatch tasksRun = new CountDownLatch(6);
+            for (int i = 1; i <= 3; i++) {
+                String name = "a" + i;
+                first.submit(() -> {
+                    runOrder.add(name);
+                    tasksRun.countDown();
+                });
+            }
+            for (int i = 1; i <= 3; i++) {
+                String name = "b" + i;
+                second.submit(() -> {
+                    runOrder.add(name);
+                    tasksRun.countDown();
+                });
+            }
+            slotFreed.countDown();
+
+            assertTrue(tasksRun.await(10, TimeUnit.SECONDS));
+            assertEquals(List.of("a1", "b1", "a2", "b2", "a3", "b3"), runOrder);
+        } finally {
+            uploadScheduler.shutdown();
+        }
+    }
+
+    @Test
+    void noMoreTasksRunAtOnceThanTheConcurrency() throws InterruptedException {
+        UploadScheduler uploadScheduler = new UploadScheduler(3, UploadExecutionMode.PLATFORM_THREADS);
+        try {
+            AtomicInteger running = new AtomicInteger();
+            AtomicInteger mostRunning = new AtomicInteger();
+            CountDownLatch tasksRun = new CountDownLatch(20);
+            for (int queue = 0; queue < 2; queue++) {
+                UploadScheduler.TaskQueue taskQueue = uploadScheduler.newQueue();
+                for (int i = 0; i < 10; i++) {
+                    taskQueue.submit(() -> {
+                        mostRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                        sleep(10);
+                        running.decrementAndGet();
+                        tasksRun.countDown();
+                    });
+                }
+            }
+
+            assertTrue(tasksRun.await(10, TimeUnit.SECONDS));
+            assertEquals(3, mostRunning.get());
+        } finally {
+            uploadScheduler.shutdown();
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            TimeUnit.MILLISECONDS.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}